@@ -0,0 +1,195 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements a transposition table that is kept on disk, so the
+ * results of deep searches survive the program. The table is a fixed size
+ * file that is memory-mapped. The operating system only reads the parts of
+ * the file that are actually probed, so opening a large file doesn't take
+ * longer than opening a small one. Changes are written back to disk by a
+ * background thread.
+ *
+ * The file starts with a header of 24 bytes: a magic number, the version of
+ * the file format, the size of the table and the version of the hash keys and
+ * evaluation of Search. A file whose header doesn't match, for instance one
+ * written by an older version, is cleared, since its entries would be found
+ * at the wrong place or hold scores that are no longer valid.
+ *
+ * Every entry takes 24 bytes: the hash key, the packed depth, score and bound
+ * as used by TranspositionTable, and the best move as returned by
+ * Move.getPath. The key is stored
+ * xor-ed with the other two values, so an entry that was only partially
+ * written, for instance because the program crashed, is ignored.
+ * @author Aswin van Woudenberg
+ */
+public class AnalysisCache {
+    private static final int MAGIC = 0x434B4143; // "CKAC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ENTRY_SIZE = 24;
+    private static final long FLUSH_INTERVAL = 10; // seconds
+
+    private Path path;
+    private int sizeBits;
+    private volatile MappedByteBuffer buffer;
+    private volatile boolean dirty;
+    private boolean opened;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * The constructor. The file is opened when it is first probed.
+     * @param path The file, which is created if it doesn't exist.
+     * @param sizeBits The base 2 logarithm of the number of entries, at most 26.
+     */
+    public AnalysisCache(Path path, int sizeBits) {
+        if (sizeBits < 1 || sizeBits > 26) {
+            throw new IllegalArgumentException("sizeBits must be between 1 and 26");
+        }
+        this.path = path;
+        this.sizeBits = sizeBits;
+    }
+
+    /**
+     * This method maps the file into memory the first time it is called. If
+     * the file can't be opened the cache stays turned off.
+     * @return The mapped file, or null if the file can't be opened.
+     */
+    private MappedByteBuffer buffer() {
+        MappedByteBuffer b = buffer;
+        if (b == null) {
+            synchronized (this) {
+                if (!opened) {
+                    opened = true;
+                    try {
+                        buffer = open();
+                    } catch (IOException ex) {
+                        System.err.println("The analysis cache " + path + " is turned off: " + ex);
+                        return null;
+                    }
+                    flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "AnalysisCache flusher");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.SECONDS);
+                    Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+                }
+                b = buffer;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * This method opens and maps the file. A file of the wrong size or with a
+     * header that doesn't match is cleared first.
+     * @return The mapped file
+     * @throws IOException If the file can't be opened or mapped
+     */
+    private MappedByteBuffer open() throws IOException {
+        long size = HEADER_SIZE + ((long)ENTRY_SIZE << sizeBits);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(sizeBits).putInt(Search.SCORES_VERSION).clear();
+            ByteBuffer existing = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() != size || channel.read(existing, 0) != HEADER_SIZE || !existing.flip().equals(header)) {
+                channel.truncate(0);
+                channel.write(header, 0);
+            }
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * This method looks up a position.
+     * @param key The hash key of the position
+     * @return The entry, which can be decoded with the depth, score and bound
+     * methods of TranspositionTable, or TranspositionTable.NO_ENTRY.
+     */
+    public long probe(long key) {
+        MappedByteBuffer b = buffer();
+        if (b == null) {
+            return TranspositionTable.NO_ENTRY;
+        }
+        int offset = offset(key);
+        long entry = b.getLong(offset+8);
+        long move = b.getLong(offset+16);
+        if ((b.getLong(offset) ^ entry ^ move) != key) {
+            return TranspositionTable.NO_ENTRY;
+        }
+        return entry;
+    }
+
+    /**
+     * This method looks up the best move found earlier for a position.
+     * @param key The hash key of the position
+     * @return The best move, or null if there is none.
+     */
+    public Move bestMove(long key) {
+        MappedByteBuffer b = buffer();
+        if (b == null) {
+            return null;
+        }
+        int offset = offset(key);
+        long entry = b.getLong(offset+8);
+        long move = b.getLong(offset+16);
+        if ((b.getLong(offset) ^ entry ^ move) != key) {
+            return null;
+        }
+        return Move.fromPath(move);
+    }
+
+    /**
+     * This method stores the result of a search. Just like TranspositionTable
+     * an entry for the same position is only replaced by a result of at least
+     * the same depth.
+     * @param key The hash key of the position
+     * @param depth The search depth
+     * @param score The score
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param best The best move, or null
+     */
+    public void store(long key, int depth, int score, int bound, Move best) {
+        long old = probe(key);
+        MappedByteBuffer b = buffer;
+        if (b == null || (old != TranspositionTable.NO_ENTRY && TranspositionTable.depth(old) > depth)) {
+            return;
+        }
+        int offset = offset(key);
+        long entry = TranspositionTable.entry(depth, score, bound);
+        long move = best == null ? 0 : best.getPath();
+        b.putLong(offset, key ^ entry ^ move);
+        b.putLong(offset+8, entry);
+        b.putLong(offset+16, move);
+        dirty = true;
+    }
+
+    /**
+     * This method writes all changes to disk. It is called periodically by a
+     * background thread and when the program exits.
+     */
+    public void flush() {
+        MappedByteBuffer b = buffer;
+        if (b != null && dirty) {
+            dirty = false;
+            b.force();
+        }
+    }
+
+    /**
+     * This method returns the offset of the entry for a position in the file.
+     * @param key The hash key of the position
+     * @return The offset in bytes
+     */
+    private int offset(long key) {
+        return HEADER_SIZE + ((int)key & ((1 << sizeBits) - 1)) * ENTRY_SIZE;
+    }
+}
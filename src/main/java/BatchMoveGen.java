@@ -0,0 +1,316 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class generates the moves of large sets of positions at once. The
+ * positions are packed as described by PackedPosition, and the results are
+ * written to arrays that the caller allocates. The work is split over a
+ * fork-join pool, and no objects are created per position: every task
+ * unpacks its positions into one scratch board and walks the tables of
+ * MoveGen, so the moves are the same and come in the same order.
+ *
+ * Results are written without gaps. First countMoves is called, then
+ * offsets computes where the results of every position start, and then
+ * generateMoves or generateSuccessors fills them in.
+ * @author Aswin van Woudenberg
+ */
+public class BatchMoveGen {
+    // Positions are split over tasks until a task has at most this many
+    private static final int THRESHOLD = 512;
+
+    private static final int COUNT = 0;
+    private static final int MOVES = 1;
+    static final int SUCCESSORS = 2;
+
+    private static final int WHITE_KING = Square.WHITE_KING.ordinal();
+    private static final int BLACK_KING = Square.BLACK_KING.ordinal();
+    private static final int WHITE_PAWN = Square.WHITE_PAWN.ordinal();
+    private static final int BLACK_PAWN = Square.BLACK_PAWN.ordinal();
+    private static final int EMPTY = Square.EMPTY.ordinal();
+    private static final int BORDER = Square.BORDER.ordinal();
+
+    private ForkJoinPool pool;
+
+    /**
+     * This constructor creates a batch move generator with its own pool.
+     * @param threads The number of threads
+     */
+    public BatchMoveGen(int threads) {
+        this(new ForkJoinPool(threads));
+    }
+
+    /**
+     * This constructor creates a batch move generator using a given pool.
+     * @param pool The fork-join pool
+     */
+    public BatchMoveGen(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * This method counts the possible moves of every position.
+     * @param positions The packed positions
+     * @param n The number of positions
+     * @param counts The array the number of moves of position i is written to
+     * at index i
+     */
+    public void countMoves(long positions[], int n, int counts[]) {
+        pool.invoke(new Task(COUNT, positions, 0, n, counts, null));
+    }
+
+    /**
+     * This method generates the possible moves of every position. The moves
+     * are packed by Move.pack.
+     * @param positions The packed positions
+     * @param n The number of positions
+     * @param offsets The index of the first move of every position, as
+     * computed by the offsets method
+     * @param moves The array the moves are written to
+     */
+    public void generateMoves(long positions[], int n, int offsets[], long moves[]) {
+        pool.invoke(new Task(MOVES, positions, 0, n, offsets, moves));
+    }
+
+    /**
+     * This method generates the positions after every possible move of every
+     * position.
+     * @param positions The packed positions
+     * @param n The number of positions
+     * @param offsets The index of the first successor of every position, as
+     * computed by the offsets method
+     * @param successors The array the packed successors are written to
+     */
+    public void generateSuccessors(long positions[], int n, int offsets[], long successors[]) {
+        pool.invoke(new Task(SUCCESSORS, positions, 0, n, offsets, successors));
+    }
+
+    /**
+     * This method computes where the results of every position start.
+     * @param counts The number of moves of every position
+     * @param n The number of positions
+     * @param offsets The array the offsets are written to
+     * @return The total number of moves
+     */
+    public static int offsets(int counts[], int n, int offsets[]) {
+        int total = 0;
+        for (int i=0; i<n; i++) {
+            offsets[i] = total;
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * This method returns the fork-join pool.
+     * @return The pool
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * This method stops the threads of the pool.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * This task handles a range of positions, splitting it while it is large.
+     */
+    private static class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private int mode;
+        private long positions[];
+        private int from;
+        private int to;
+        private int counts[];
+        private long out[];
+
+        /**
+         * The constructor
+         * @param mode COUNT, MOVES or SUCCESSORS
+         * @param positions The packed positions
+         * @param from The first position of the range
+         * @param to The end of the range, exclusive
+         * @param counts The counts, or the offsets when generating
+         * @param out The moves or successors, or null when counting
+         */
+        Task(int mode, long positions[], int from, int to, int counts[], long out[]) {
+            this.mode = mode;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.counts = counts;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to-from <= THRESHOLD) {
+                Generator g = new Generator(mode, out);
+                for (int i=from; i<to; i++) {
+                    if (mode == COUNT) {
+                        counts[i] = g.generate(positions, i, 0);
+                    } else {
+                        g.generate(positions, i, counts[i]);
+                    }
+                }
+            } else {
+                int middle = (from+to) >>> 1;
+                invokeAll(new Task(mode, positions, from, middle, counts, out),
+                        new Task(mode, positions, middle, to, counts, out));
+            }
+        }
+    }
+
+    /**
+     * This class generates the moves of one position at a time on a scratch
+     * board that is reused for every position. MonteCarloSearch uses it
+     * directly for its playouts.
+     */
+    static class Generator {
+        private int mode;
+        private long out[];
+        private int squares[] = new int[55];
+        private int path[] = new int[32];
+        private long black;
+        private long white;
+        private long kings;
+        private boolean whiteToMove;
+        private int offset;
+        private int count;
+
+        /**
+         * The constructor
+         * @param mode COUNT, MOVES or SUCCESSORS
+         * @param out The moves or successors, or null when counting
+         */
+        Generator(int mode, long out[]) {
+            this.mode = mode;
+            this.out = out;
+        }
+
+        /**
+         * This method generates the moves of a position.
+         * @param positions The packed positions
+         * @param index The index of the position
+         * @param offset The index the first result is written to
+         * @return The number of moves
+         */
+        int generate(long positions[], int index, int offset) {
+            black = positions[2*index] & 0xFFFFFFFFL;
+            white = positions[2*index] >>> 32;
+            kings = positions[2*index+1] & 0xFFFFFFFFL;
+            whiteToMove = (positions[2*index+1] >>> 32) != 0;
+            for (int i=0; i<55; i++) {
+                long bit = PackedPosition.BIT[i];
+                if (bit == 0) {
+                    squares[i] = BORDER;
+                } else if ((black & bit) != 0) {
+                    squares[i] = (kings & bit) != 0 ? BLACK_KING : BLACK_PAWN;
+                } else if ((white & bit) != 0) {
+                    squares[i] = (kings & bit) != 0 ? WHITE_KING : WHITE_PAWN;
+                } else {
+                    squares[i] = EMPTY;
+                }
+            }
+            this.offset = offset;
+            count = 0;
+            long own = whiteToMove ? white : black;
+            for (int i=10; i<45; i++) {
+                if ((own & PackedPosition.BIT[i]) != 0) {
+                    path[0] = i;
+                    jump(squares[i], 1, 0);
+                }
+            }
+            if (count == 0) {
+                for (int i=10; i<45; i++) {
+                    if ((own & PackedPosition.BIT[i]) != 0) {
+                        path[0] = i;
+                        for (int target : MoveGen.STEPS[squares[i]][i]) {
+                            if (squares[target] == EMPTY) {
+                                path[1] = target;
+                                emit(squares[i], 2, 0);
+                            }
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * This method follows all jumps that can extend the jumps in path.
+         * @param kind The ordinal of the jumping piece
+         * @param length The number of squares in path
+         * @param captured The squares captured so far
+         */
+        private void jump(int kind, int length, long captured) {
+            int index = path[length-1];
+            boolean extended = false;
+            if (length == 1 || !((kind == WHITE_PAWN || kind == BLACK_PAWN) && Board.isKingRow(index))) {
+                int over[] = MoveGen.JUMP_OVER[kind][index];
+                int to[] = MoveGen.JUMP_TO[kind][index];
+                long opponent = whiteToMove ? black : white;
+                for (int i=0; i<over.length; i++) {
+                    if ((opponent & PackedPosition.BIT[over[i]]) != 0 && (captured & (1L << over[i])) == 0
+                            && (squares[to[i]] == EMPTY || to[i] == path[0])) {
+                        path[length] = to[i];
+                        jump(kind, length+1, captured | (1L << over[i]));
+                        extended = true;
+                    }
+                }
+            }
+            if (!extended && length > 1) {
+                emit(kind, length, captured);
+            }
+        }
+
+        /**
+         * This method records the move in path.
+         * @param kind The ordinal of the moving piece
+         * @param length The number of squares in path
+         * @param captured The squares of the captured pieces
+         */
+        private void emit(int kind, int length, long captured) {
+            int i = offset + count++;
+            if (mode == MOVES) {
+                long packed = 0;
+                if (length <= 12) {
+                    packed = length;
+                    for (int k=0; k<length; k++) {
+                        packed |= (long)(Util.squareIndexToNotation(path[k])-1) << (4+5*k);
+                    }
+                }
+                out[i] = packed;
+            } else if (mode == SUCCESSORS) {
+                long from = PackedPosition.BIT[path[0]];
+                long to = PackedPosition.BIT[path[length-1]];
+                long removed = 0;
+                while (captured != 0) {
+                    removed |= PackedPosition.BIT[Long.numberOfTrailingZeros(captured)];
+                    captured &= captured-1;
+                }
+                // A king can capture in a circle and end where it started,
+                // so from and to may be the same square
+                long b = black, w = white, k = kings & ~removed;
+                if (whiteToMove) {
+                    w = (w & ~from) | to;
+                    b &= ~removed;
+                } else {
+                    b = (b & ~from) | to;
+                    w &= ~removed;
+                }
+                if ((k & from) != 0) {
+                    k = (k & ~from) | to;
+                } else if (Board.isKingRow(path[length-1])) {
+                    k |= to;
+                }
+                out[2*i] = b | w << 32;
+                out[2*i+1] = k | (whiteToMove ? 0 : 1L << 32);
+            }
+        }
+    }
+}
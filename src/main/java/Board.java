@@ -1,6 +1,5 @@
 
-import java.util.Observable;
-import java.util.Vector;
+import java.util.ArrayList;
 
 /**
  * This class represents a checkerboard. A checkerboard consists of 64 squares
@@ -23,13 +22,34 @@ import java.util.Vector;
  * 
  * @author Aswin van Woudenberg
  */
-public class Board extends Observable {
+public class Board {
     /**
      * The array of Piece's represent a checkerboard. An internal representation 
      * is used for easy Move generation.
      */
     private Square squares[] = new Square[55];
     
+    /**
+     * The listeners that are told about changes. It is created when the first 
+     * listener is added, so the many copies made while searching stay cheap.
+     */
+    private ArrayList<BoardListener> listeners;
+    
+    /**
+     * The squares of the rows where pawns become kings: 10 to 13 for black 
+     * and 41 to 44 for white.
+     */
+    private static final boolean KING_ROW[] = new boolean[55];
+    
+    static {
+        for (int i=10; i<14; i++) {
+            KING_ROW[i] = true;
+        }
+        for (int i=41; i<45; i++) {
+            KING_ROW[i] = true;
+        }
+    }
+    
     /**
      * This constructor simply initializes the board
      */
@@ -37,6 +57,47 @@ public class Board extends Observable {
         setupBoard();
     }
     
+    /**
+     * This constructor creates a board with specific contents. It is used 
+     * by the copy method and to unpack positions.
+     * @param squares The 55 squares of the internal representation, which 
+     * are not copied.
+     */
+    Board(Square squares[]) {
+        this.squares = squares;
+    }
+    
+    /**
+     * This method returns true if a square is on one of the rows where pawns 
+     * become kings.
+     * @param index The index of the square
+     * @return A boolean indicating whether a pawn reaching the square is promoted.
+     */
+    public static boolean isKingRow(int index) {
+        return KING_ROW[index];
+    }
+    
+    /**
+     * This method adds a listener that is told about every change of the board.
+     * @param l The listener
+     */
+    public void addBoardListener(BoardListener l) {
+        if (listeners == null) {
+            listeners = new ArrayList<BoardListener>();
+        }
+        listeners.add(l);
+    }
+    
+    /**
+     * This method removes a listener.
+     * @param l The listener
+     */
+    public void removeBoardListener(BoardListener l) {
+        if (listeners != null) {
+            listeners.remove(l);
+        }
+    }
+    
     /**
      * This method initializes the board
      */
@@ -52,63 +113,112 @@ public class Board extends Observable {
         squares[18] = Square.BORDER;
         squares[27] = Square.BORDER;
         squares[36] = Square.BORDER;
-        setChanged();
-        notifyObservers();
+        if (hasListeners()) {
+            int changed[] = new int[32];
+            for (int n=1; n<=32; n++) {
+                changed[n-1] = Util.notationToSquareIndex(n);
+            }
+            fireBoardChanged(new BoardChangeEvent(this, null, false, changed, new int[0]));
+        }
     }
     
-    public void undoMove(Board newBoard) {
-        for (int i=0; i<55; i++) {
-            squares[i] = newBoard.squareAt(i);
+    /**
+     * This method takes back a move, restoring the board to the state before 
+     * the move was executed.
+     * @param move The move to take back, which must be the last move executed.
+     * @param promoted True if the move promoted a pawn to a king.
+     * @param capturedKings A bit mask with bit i set if the piece captured by 
+     * the i-th jump was a king.
+     */
+    public void undoMove(Move move, boolean promoted, long capturedKings) {
+        int last = move.finalSquare();
+        Square sq = squares[last];
+        squares[last] = Square.EMPTY;
+        if (promoted) {
+            sq = (sq == Square.BLACK_KING) ? Square.BLACK_PAWN : Square.WHITE_PAWN;
+        }
+        squares[move.squareAt(0)] = sq;
+        if (move.includesJump()) {
+            PlayerColor opponent = sq.belongsTo().opponent();
+            for (int i=1; i<move.length(); i++) {
+                int r = (move.squareAt(i)+move.squareAt(i-1)) / 2;
+                boolean king = (capturedKings & (1L << (i-1))) != 0;
+                if (opponent == PlayerColor.BLACK) {
+                    squares[r] = king ? Square.BLACK_KING : Square.BLACK_PAWN;
+                } else {
+                    squares[r] = king ? Square.WHITE_KING : Square.WHITE_PAWN;
+                }
+            }
+        }
+        if (hasListeners()) {
+            fireMoveEvent(move, true);
         }
-        setChanged();
-        notifyObservers();
     }
     
     /**
-     * This method executes a move updating the checkerboard.
+     * This method executes a move updating the checkerboard. The listeners are 
+     * told once, after the whole move is executed.
      * @param move The move to be executed.
      */
     public void executeMove(Move move) {
         int start = move.squareAt(0);
+        int last = move.finalSquare();
         Square sq = squares[start];
         squares[start] = Square.EMPTY;
-        if (!move.includesJump()) {
-            squares[move.squareAt(1)] = sq;
-            setChanged();
-            notifyObservers();
-        } else {
-            Vector<Integer> remove = new Vector<Integer>();
+        if (move.includesJump()) {
             for (int i=1; i<move.length(); i++) {
-                int r = Math.abs(move.squareAt(i)+move.squareAt(i-1)) / 2;
-                remove.add(r);
-                squares[move.squareAt(i)] = sq;
-                setChanged();
-                notifyObservers();
-                if (i<(move.length()-1)) {
-                    squares[move.squareAt(i)] = Square.EMPTY;
-                }
-            }
-            for (int i : remove) {
-                squares[i] = Square.EMPTY;
-                setChanged();
-                notifyObservers();
+                squares[(move.squareAt(i)+move.squareAt(i-1)) / 2] = Square.EMPTY;
             }
         }
-        int last = move.squareAt(move.length()-1);
-        if (last<14 || last>40) {
+        squares[last] = sq;
+        if (KING_ROW[last]) {
             switch(sq) {
                 case BLACK_PAWN: 
                     squares[last] = Square.BLACK_KING; 
-                    setChanged();
-                    notifyObservers();
                     break;
                 case WHITE_PAWN:
                     squares[last] = Square.WHITE_KING; 
-                    setChanged();
-                    notifyObservers();
                     break;
             }
         }
+        if (hasListeners()) {
+            fireMoveEvent(move, false);
+        }
+    }
+    
+    /**
+     * This method returns true if there are listeners to tell about changes.
+     * @return A boolean indicating whether there are listeners.
+     */
+    private boolean hasListeners() {
+        return listeners != null && !listeners.isEmpty();
+    }
+    
+    /**
+     * This method tells the listeners about a move executed or taken back.
+     * @param move The move
+     * @param undo True if the move was taken back
+     */
+    private void fireMoveEvent(Move move, boolean undo) {
+        int captured[] = new int[move.includesJump() ? move.length()-1 : 0];
+        for (int i=0; i<captured.length; i++) {
+            captured[i] = (move.squareAt(i+1)+move.squareAt(i)) / 2;
+        }
+        int changed[] = new int[captured.length+2];
+        changed[0] = move.squareAt(0);
+        changed[1] = move.finalSquare();
+        System.arraycopy(captured, 0, changed, 2, captured.length);
+        fireBoardChanged(new BoardChangeEvent(this, move, undo, changed, captured));
+    }
+    
+    /**
+     * This method sends an event to all listeners.
+     * @param e The event
+     */
+    private void fireBoardChanged(BoardChangeEvent e) {
+        for (BoardListener l : new ArrayList<BoardListener>(listeners)) {
+            l.boardChanged(e);
+        }
     }
     
     /**
@@ -144,8 +254,6 @@ public class Board extends Observable {
      * @return The return value is a copy of this move object.
      */
     public Board copy() {
-        Board b = new Board();
-	b.squares = (Square[])squares.clone();
-	return b;
+	return new Board((Square[])squares.clone());
     }
 }
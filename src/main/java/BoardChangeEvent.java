@@ -0,0 +1,72 @@
+import java.util.EventObject;
+
+/**
+ * This class describes a change of a Board. It is sent to the BoardListeners
+ * once for every move executed or taken back, and when the board is set up.
+ * @author Aswin van Woudenberg
+ */
+public class BoardChangeEvent extends EventObject {
+    private static final long serialVersionUID = 1L;
+
+    private Move move;
+    private boolean undo;
+    private int changedSquares[];
+    private int capturedSquares[];
+
+    /**
+     * The constructor
+     * @param source The board that changed
+     * @param move The move executed or taken back, or null if the board was set up
+     * @param undo True if the move was taken back
+     * @param changedSquares The squares whose contents changed
+     * @param capturedSquares The squares of the pieces captured by the move,
+     * or restored when it was taken back
+     */
+    public BoardChangeEvent(Board source, Move move, boolean undo, int changedSquares[], int capturedSquares[]) {
+        super(source);
+        this.move = move;
+        this.undo = undo;
+        this.changedSquares = changedSquares;
+        this.capturedSquares = capturedSquares;
+    }
+
+    /**
+     * This method returns the board that changed.
+     * @return The board
+     */
+    public Board getBoard() {
+        return (Board)getSource();
+    }
+
+    /**
+     * This method returns the move that was executed or taken back.
+     * @return The move, or null if the board was set up.
+     */
+    public Move getMove() {
+        return move;
+    }
+
+    /**
+     * This method returns true if the move was taken back.
+     * @return A boolean indicating whether the move was taken back.
+     */
+    public boolean isUndo() {
+        return undo;
+    }
+
+    /**
+     * This method returns the squares whose contents changed.
+     * @return An array with the squares
+     */
+    public int[] getChangedSquares() {
+        return changedSquares;
+    }
+
+    /**
+     * This method returns the squares of the captured pieces.
+     * @return An array with the squares, empty if the move wasn't a capture.
+     */
+    public int[] getCapturedSquares() {
+        return capturedSquares;
+    }
+}
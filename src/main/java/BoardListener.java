@@ -0,0 +1,14 @@
+import java.util.EventListener;
+
+/**
+ * This interface is implemented by classes that want to be told when a Board
+ * changes.
+ * @author Aswin van Woudenberg
+ */
+public interface BoardListener extends EventListener {
+    /**
+     * This method is called once for every change of the board.
+     * @param e The description of the change
+     */
+    void boardChanged(BoardChangeEvent e);
+}
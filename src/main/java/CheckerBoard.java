@@ -1,8 +1,8 @@
 import java.awt.Color;
 import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
 import java.util.HashSet;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.Set;
 import javax.swing.JPanel;
 
@@ -10,11 +10,44 @@ import javax.swing.JPanel;
  * This class is responsible for painting the checkerboard.
  * @author Aswin van Woudenberg
  */
-public class CheckerBoard extends JPanel implements Observer {
+public class CheckerBoard extends JPanel implements BoardListener {
+    /**
+     * The index values of the internal board representation by y and x coordinate.
+     */
+    private static final int INDEX_ARR[][] = new int[][] { 
+        {0,10,0,11,0,12,0,13},
+        {14,0,15,0,16,0,17,0},
+        {0,19,0,20,0,21,0,22},
+        {23,0,24,0,25,0,26,0},
+        {0,28,0,29,0,30,0,31},
+        {32,0,33,0,34,0,35,0},
+        {0,37,0,38,0,39,0,40},
+        {41,0,42,0,43,0,44,0} };
+    
+    /**
+     * The x and y coordinates by index value, the inverse of INDEX_ARR.
+     */
+    private static final int SQUARE_X[] = new int[55];
+    private static final int SQUARE_Y[] = new int[55];
+    
+    static {
+        for (int y=0; y<8; y++) {
+            for (int x=0; x<8; x++) {
+                if (INDEX_ARR[y][x] != 0) {
+                    SQUARE_X[INDEX_ARR[y][x]] = x;
+                    SQUARE_Y[INDEX_ARR[y][x]] = y;
+                }
+            }
+        }
+    }
+    
     private boolean inverted;
     private Board board;
     private Color selectedColor;
     private HashSet<Integer> selectedFields;
+    private BufferedImage sprites[];
+    private int spriteWidth;
+    private int spriteHeight;
     
     /**
      * The constructor
@@ -22,6 +55,7 @@ public class CheckerBoard extends JPanel implements Observer {
     public CheckerBoard() {
         selectedFields = new HashSet<Integer>();
         selectedColor = new Color(255,128,0);
+        sprites = new BufferedImage[Square.values().length*2];
     }
     
     /**
@@ -30,7 +64,9 @@ public class CheckerBoard extends JPanel implements Observer {
      * @param field The field to select
      */
     public void selectField(int field) {
-        selectedFields.add(field);
+        if (selectedFields.add(field)) {
+            repaintSquare(field);
+        }
     }
     
     /**
@@ -46,13 +82,18 @@ public class CheckerBoard extends JPanel implements Observer {
      * @param field The field to unselect
      */
     public void unselectField(int field) {
-        selectedFields.remove(field);
+        if (selectedFields.remove(field)) {
+            repaintSquare(field);
+        }
     }
     
     /**
      * This method unselects all selected fields.
      */
     public void unselectAllFields() {
+        for (int field : selectedFields) {
+            repaintSquare(field);
+        }
         selectedFields.clear();
     }
     
@@ -80,6 +121,7 @@ public class CheckerBoard extends JPanel implements Observer {
      */
     public void setInverted(boolean value) {
         inverted = value;
+        repaint();
     }
     
     /**
@@ -91,59 +133,118 @@ public class CheckerBoard extends JPanel implements Observer {
     }
     
     /**
-     * This overridden method draws the checkerboard.
+     * This overridden method draws the checkerboard. Only the squares that 
+     * intersect the clip area are drawn, and pieces are copied from images 
+     * rendered beforehand.
      * @param g The graphics object.
      */
     @Override
     public void paintComponent(Graphics g) {
         int squareWidth = getWidth() / 8;
         int squareHeight = getHeight() / 8;
+        if (squareWidth<=0 || squareHeight<=0) {
+            return;
+        }
+        EngineEvents.RepaintEvent event = new EngineEvents.RepaintEvent();
+        event.begin();
+        boolean rendered = squareWidth!=spriteWidth || squareHeight!=spriteHeight;
+        if (rendered) {
+            renderSprites(squareWidth, squareHeight);
+        }
+        
+        Rectangle clip = g.getClipBounds();
+        int minX = 0, minY = 0, maxX = 7, maxY = 7;
+        if (clip != null) {
+            minX = Math.max(0, clip.x / squareWidth);
+            minY = Math.max(0, clip.y / squareHeight);
+            maxX = Math.min(7, (clip.x + clip.width - 1) / squareWidth);
+            maxY = Math.min(7, (clip.y + clip.height - 1) / squareHeight);
+        }
 
-        for (int y=0; y<8; y++) {
-            for (int x=0; x<8; x++) {
+        for (int y=minY; y<=maxY; y++) {
+            for (int x=minX; x<=maxX; x++) {
                 if ((x+y)%2 == 0) {
                     g.setColor(Color.WHITE);
                     g.fillRect(x*squareWidth, y*squareHeight, squareWidth, squareHeight);            
                 } else {
-                    if (isSelected(calcIndex(x,y))) {
-                        g.setColor(selectedColor);
+                    int index = calcIndex(x,y);
+                    boolean selected = isSelected(index);
+                    Square sq = (board!=null) ? board.squareAt(index) : Square.EMPTY;
+                    if (sq.isPiece()) {
+                        g.drawImage(sprites[sprite(sq, selected)], x*squareWidth, y*squareHeight, null);
                     } else {
-                        g.setColor(Color.GRAY);
+                        g.setColor(selected ? selectedColor : Color.GRAY);
+                        g.fillRect(x*squareWidth, y*squareHeight, squareWidth, squareHeight);
                     }
-                    g.fillRect(x*squareWidth, y*squareHeight, squareWidth, squareHeight);
-                    if (board!=null) {
-                        switch(board.squareAt(calcIndex(x,y))) {
-                            case WHITE_KING:
-                                g.setColor(Color.WHITE);
-                                g.fillOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.setColor(Color.BLACK);
-                                g.drawOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.fillOval(x*squareWidth+9, y*squareHeight+9, squareWidth-19, squareHeight-19);
-                                break;
-                            case BLACK_KING:
-                                g.setColor(Color.BLACK);
-                                g.fillOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.setColor(Color.WHITE);
-                                g.drawOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.fillOval(x*squareWidth+9, y*squareHeight+9, squareWidth-19, squareHeight-19);
-                                break;
-                            case WHITE_PAWN:
-                                g.setColor(Color.WHITE);
-                                g.fillOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.setColor(Color.BLACK);
-                                g.drawOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                break;
-                            case BLACK_PAWN:
-                                g.setColor(Color.BLACK);
-                                g.fillOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                g.setColor(Color.WHITE);
-                                g.drawOval(x*squareWidth+2, y*squareHeight+2, squareWidth-5, squareHeight-5);
-                                break;
-                        }
-                    }           
                 }
             }
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.squares = (maxX-minX+1)*(maxY-minY+1);
+            event.spritesRendered = rendered;
+            event.commit();
+        }
+    }
+    
+    /**
+     * This method draws the images of the pieces for a specific square size. 
+     * The images include the background of the square, so they can be copied 
+     * without blending.
+     * @param squareWidth The width of a square
+     * @param squareHeight The height of a square
+     */
+    private void renderSprites(int squareWidth, int squareHeight) {
+        for (Square sq : Square.values()) {
+            if (!sq.isPiece()) {
+                continue;
+            }
+            for (boolean selected : new boolean[]{false, true}) {
+                BufferedImage image = new BufferedImage(squareWidth, squareHeight, BufferedImage.TYPE_INT_RGB);
+                Graphics g = image.getGraphics();
+                g.setColor(selected ? selectedColor : Color.GRAY);
+                g.fillRect(0, 0, squareWidth, squareHeight);
+                Color fill = sq.belongsTo(PlayerColor.WHITE) ? Color.WHITE : Color.BLACK;
+                Color line = sq.belongsTo(PlayerColor.WHITE) ? Color.BLACK : Color.WHITE;
+                g.setColor(fill);
+                g.fillOval(2, 2, squareWidth-5, squareHeight-5);
+                g.setColor(line);
+                g.drawOval(2, 2, squareWidth-5, squareHeight-5);
+                if (sq.isKing()) {
+                    g.fillOval(9, 9, squareWidth-19, squareHeight-19);
+                }
+                g.dispose();
+                sprites[sprite(sq, selected)] = image;
+            }
+        }
+        spriteWidth = squareWidth;
+        spriteHeight = squareHeight;
+    }
+    
+    /**
+     * This method returns the index of the image of a piece.
+     * @param sq The piece
+     * @param selected True if the square is selected
+     * @return The index in the sprites array
+     */
+    private static int sprite(Square sq, boolean selected) {
+        return sq.ordinal()*2 + (selected ? 1 : 0);
+    }
+    
+    /**
+     * This method schedules a repaint of a single square.
+     * @param index The index value of the square
+     */
+    private void repaintSquare(int index) {
+        int squareWidth = getWidth() / 8;
+        int squareHeight = getHeight() / 8;
+        int x = SQUARE_X[index];
+        int y = SQUARE_Y[index];
+        if (inverted) {
+            x = 7-x;
+            y = 7-y;
+        }
+        repaint(x*squareWidth, y*squareHeight, squareWidth, squareHeight);
     }
 
     /**
@@ -154,16 +255,15 @@ public class CheckerBoard extends JPanel implements Observer {
     public int getFieldByPixelCoord(int mx, int my) {
         int squareWidth = getWidth() / 8;
         int squareHeight = getHeight() / 8;
-
-        for (int y=0; y<8; y++) {
-            for (int x=0; x<8; x++) {
-                if (mx>=x*squareWidth && mx<(x+1)*squareWidth &&
-                        my>=y*squareHeight && my<(y+1)*squareHeight ) {
-                    return calcIndex(x,y);
-                }
-            }
+        if (mx<0 || my<0 || squareWidth<=0 || squareHeight<=0) {
+            return 0;
+        }
+        int x = mx / squareWidth;
+        int y = my / squareHeight;
+        if (x>7 || y>7) {
+            return 0;
         }
-        return 0;
+        return calcIndex(x,y);
     }
     
     /**
@@ -174,33 +274,21 @@ public class CheckerBoard extends JPanel implements Observer {
      * @return The index value
      */
     private int calcIndex(int x, int y) {
-        int indexArr[][] = new int[][] { 
-            {0,10,0,11,0,12,0,13},
-            {14,0,15,0,16,0,17,0},
-            {0,19,0,20,0,21,0,22},
-            {23,0,24,0,25,0,26,0},
-            {0,28,0,29,0,30,0,31},
-            {32,0,33,0,34,0,35,0},
-            {0,37,0,38,0,39,0,40},
-            {41,0,42,0,43,0,44,0} };
-        int indexArrInv[][] = new int[][] {
-            {0,44,0,43,0,42,0,41},
-            {40,0,39,0,38,0,37,0},
-            {0,35,0,34,0,33,0,32},
-            {31,0,30,0,29,0,28,0},
-            {0,26,0,25,0,24,0,23},
-            {22,0,21,0,20,0,19,0},
-            {0,17,0,16,0,15,0,14},
-            {13,0,12,0,11,0,10,0} };
         if (inverted) {
-            return indexArrInv[y][x];
+            return INDEX_ARR[7-y][7-x];
         }
-        return indexArr[y][x];
+        return INDEX_ARR[y][x];
     }
         
-    public void update(Observable o, Object arg) {
-        if (o == board) {
-            repaint();
+    /**
+     * This method is called when the board changes. Only the squares that 
+     * changed are repainted.
+     * @param e The description of the change
+     */
+    @Override
+    public void boardChanged(BoardChangeEvent e) {
+        for (int index : e.getChangedSquares()) {
+            repaintSquare(index);
         }
     }
 
@@ -1,25 +1,44 @@
 import java.awt.Cursor;
+import java.awt.Font;
 import java.awt.Toolkit;
-import java.util.HashSet;
-import java.util.Observable;
-import java.util.Observer;
-import java.util.Set;
+import java.io.IOException;
+import java.util.Stack;
 import java.util.Vector;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  * This class implements the Swing UI of the checkers program.
  * @author Aswin van Woudenberg
  */
-public class Checkers extends JFrame implements Observer {
+public class Checkers extends JFrame implements GameListener {
     private CheckersGame checkersGame;
-    private Vector<Move> possibleMoves;
+    private MoveTrie moveTrie;
+    private Stack<Integer> selectedPath;
+    private Stack<MoveTrie> selectedNodes;
     private boolean gameHasEndedDialogShown;
+    private GameDatabase database;
+    private JDialog explorerDialog;
+    private ExplorerPanel explorerPanel;
+    private EngineExecutor analysisExecutor;
+    private JDialog analysisDialog;
+    private JTextArea analysisText;
+    private Timer clockTimer;
+    private Vector<JRadioButtonMenuItem> levelMenuItems;
+    private Vector<Level> levels;
     
     /** Creates new form Checkers */
     public Checkers() {
         initComponents();
+        selectedPath = new Stack<Integer>();
+        selectedNodes = new Stack<MoveTrie>();
         
         // adjust the form so that checkerBoard is 400x400
         setSize(getWidth()-(checkerBoard.getWidth()-400), 
@@ -28,10 +47,18 @@ public class Checkers extends JFrame implements Observer {
         checkersGame = new CheckersGame();
         checkersGame.setLevel(9); // set Master level
         checkerBoard.setBoard(checkersGame.getBoard());
-        checkersGame.getBoard().addObserver(checkerBoard);
-        checkersGame.addObserver(this);
-        update(checkersGame,null);
+        checkersGame.getBoard().addBoardListener(checkerBoard);
+        addLevels();
+        checkersGame.addGameListener(this);
+        gameChanged(new GameChangeEvent(checkersGame));
         
+        // The clocks are shown ten times a second
+        clockTimer = new Timer(100, new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                updateClocks();
+            }
+        });
+        clockTimer.start();
     }
     
     /** This method is called from within the constructor to
@@ -43,11 +70,14 @@ public class Checkers extends JFrame implements Observer {
     private void initComponents() {
 
         checkerBoard = new CheckerBoard();
+        blackClockLabel = new javax.swing.JLabel();
+        whiteClockLabel = new javax.swing.JLabel();
         menuBar = new javax.swing.JMenuBar();
         gameMenu = new javax.swing.JMenu();
         newMenuItem = new javax.swing.JMenuItem();
         separator1 = new javax.swing.JSeparator();
         undoMenuItem = new javax.swing.JMenuItem();
+        redoMenuItem = new javax.swing.JMenuItem();
         separator2 = new javax.swing.JSeparator();
         playersMenu = new javax.swing.JMenu();
         blackMenu = new javax.swing.JMenu();
@@ -57,14 +87,15 @@ public class Checkers extends JFrame implements Observer {
         whiteHumanMenuItem = new javax.swing.JRadioButtonMenuItem();
         whiteComputerMenuItem = new javax.swing.JRadioButtonMenuItem();
         invertedMenuItem = new javax.swing.JCheckBoxMenuItem();
+        explorerMenuItem = new javax.swing.JMenuItem();
+        bookMenuItem = new javax.swing.JCheckBoxMenuItem();
+        analysisMenuItem = new javax.swing.JMenuItem();
         separator3 = new javax.swing.JSeparator();
         levelMenu = new javax.swing.JMenu();
-        beginnerMenuItem = new javax.swing.JRadioButtonMenuItem();
-        noviceMenuItem = new javax.swing.JRadioButtonMenuItem();
-        averageMenuItem = new javax.swing.JRadioButtonMenuItem();
-        goodMenuItem = new javax.swing.JRadioButtonMenuItem();
-        expertMenuItem = new javax.swing.JRadioButtonMenuItem();
-        masterMenuItem = new javax.swing.JRadioButtonMenuItem();
+        timeMenu = new javax.swing.JMenu();
+        noClockMenuItem = new javax.swing.JRadioButtonMenuItem();
+        blitzMenuItem = new javax.swing.JRadioButtonMenuItem();
+        rapidMenuItem = new javax.swing.JRadioButtonMenuItem();
         separator4 = new javax.swing.JSeparator();
         exitMenuItem = new javax.swing.JMenuItem();
 
@@ -99,6 +130,11 @@ public class Checkers extends JFrame implements Observer {
             .addGap(0, 400, Short.MAX_VALUE)
         );
 
+        blackClockLabel.setText("Black 0:00");
+
+        whiteClockLabel.setHorizontalAlignment(javax.swing.SwingConstants.TRAILING);
+        whiteClockLabel.setText("White 0:00");
+
         gameMenu.setMnemonic('g');
         gameMenu.setText("Game");
 
@@ -122,6 +158,16 @@ public class Checkers extends JFrame implements Observer {
             }
         });
         gameMenu.add(undoMenuItem);
+
+        redoMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_Y, java.awt.event.InputEvent.CTRL_MASK));
+        redoMenuItem.setMnemonic('r');
+        redoMenuItem.setText("Redo");
+        redoMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                redoMenuItemActionPerformed(evt);
+            }
+        });
+        gameMenu.add(redoMenuItem);
         gameMenu.add(separator2);
 
         playersMenu.setMnemonic('p');
@@ -186,67 +232,72 @@ public class Checkers extends JFrame implements Observer {
             }
         });
         gameMenu.add(invertedMenuItem);
-        gameMenu.add(separator3);
 
-        levelMenu.setMnemonic('l');
-        levelMenu.setText("Level");
-
-        beginnerMenuItem.setMnemonic('b');
-        beginnerMenuItem.setText("Beginner");
-        beginnerMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        explorerMenuItem.setMnemonic('o');
+        explorerMenuItem.setText("Opening Explorer...");
+        explorerMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                beginnerMenuItemActionPerformed(evt);
+                explorerMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(beginnerMenuItem);
+        gameMenu.add(explorerMenuItem);
 
-        noviceMenuItem.setMnemonic('o');
-        noviceMenuItem.setText("Novice");
-        noviceMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        bookMenuItem.setMnemonic('b');
+        bookMenuItem.setText("Use Opening Book");
+        bookMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                noviceMenuItemActionPerformed(evt);
+                bookMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(noviceMenuItem);
+        gameMenu.add(bookMenuItem);
 
-        averageMenuItem.setMnemonic('a');
-        averageMenuItem.setText("Average");
-        averageMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        analysisMenuItem.setMnemonic('a');
+        analysisMenuItem.setText("Analyse Game...");
+        analysisMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                averageMenuItemActionPerformed(evt);
+                analysisMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(averageMenuItem);
+        gameMenu.add(analysisMenuItem);
+        gameMenu.add(separator3);
+
+        levelMenu.setMnemonic('l');
+        levelMenu.setText("Level");
+
+        gameMenu.add(levelMenu);
 
-        goodMenuItem.setMnemonic('g');
-        goodMenuItem.setText("Good");
-        goodMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        timeMenu.setMnemonic('t');
+        timeMenu.setText("Time Control");
+
+        noClockMenuItem.setMnemonic('n');
+        noClockMenuItem.setSelected(true);
+        noClockMenuItem.setText("No Clock");
+        noClockMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                goodMenuItemActionPerformed(evt);
+                noClockMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(goodMenuItem);
+        timeMenu.add(noClockMenuItem);
 
-        expertMenuItem.setMnemonic('e');
-        expertMenuItem.setText("Expert");
-        expertMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        blitzMenuItem.setMnemonic('3');
+        blitzMenuItem.setText("3 Minutes + 2 Seconds");
+        blitzMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                expertMenuItemActionPerformed(evt);
+                blitzMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(expertMenuItem);
+        timeMenu.add(blitzMenuItem);
 
-        masterMenuItem.setMnemonic('m');
-        masterMenuItem.setSelected(true);
-        masterMenuItem.setText("Master");
-        masterMenuItem.addActionListener(new java.awt.event.ActionListener() {
+        rapidMenuItem.setMnemonic('1');
+        rapidMenuItem.setText("10 Minutes + 5 Seconds");
+        rapidMenuItem.addActionListener(new java.awt.event.ActionListener() {
             public void actionPerformed(java.awt.event.ActionEvent evt) {
-                masterMenuItemActionPerformed(evt);
+                rapidMenuItemActionPerformed(evt);
             }
         });
-        levelMenu.add(masterMenuItem);
+        timeMenu.add(rapidMenuItem);
 
-        gameMenu.add(levelMenu);
+        gameMenu.add(timeMenu);
         gameMenu.add(separator4);
 
         exitMenuItem.setMnemonic('x');
@@ -269,11 +320,21 @@ public class Checkers extends JFrame implements Observer {
             .addGroup(layout.createSequentialGroup()
                 .addComponent(checkerBoard, javax.swing.GroupLayout.PREFERRED_SIZE, 400, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addGap(0, 0, Short.MAX_VALUE))
+            .addGroup(layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(blackClockLabel)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                .addComponent(whiteClockLabel)
+                .addContainerGap())
         );
         layout.setVerticalGroup(
             layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(layout.createSequentialGroup()
                 .addComponent(checkerBoard, javax.swing.GroupLayout.PREFERRED_SIZE, 400, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(blackClockLabel)
+                    .addComponent(whiteClockLabel))
                 .addGap(0, 0, Short.MAX_VALUE))
         );
 
@@ -298,32 +359,73 @@ public class Checkers extends JFrame implements Observer {
 
     private void invertedMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_invertedMenuItemActionPerformed
         checkerBoard.setInverted(invertedMenuItem.isSelected());
-        checkerBoard.repaint();
     }//GEN-LAST:event_invertedMenuItemActionPerformed
 
-    private void noviceMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_noviceMenuItemActionPerformed
-        checkersGame.setLevel(2);
-    }//GEN-LAST:event_noviceMenuItemActionPerformed
-
-    private void averageMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_averageMenuItemActionPerformed
-        checkersGame.setLevel(4);
-}//GEN-LAST:event_averageMenuItemActionPerformed
-
-    private void beginnerMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_beginnerMenuItemActionPerformed
-        checkersGame.setLevel(1);
-    }//GEN-LAST:event_beginnerMenuItemActionPerformed
-
-    private void goodMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_goodMenuItemActionPerformed
-        checkersGame.setLevel(6);
-    }//GEN-LAST:event_goodMenuItemActionPerformed
+    private void explorerMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_explorerMenuItemActionPerformed
+        if (explorerDialog == null) {
+            if (!openDatabase()) {
+                return;
+            }
+            explorerPanel = new ExplorerPanel(database);
+            explorerDialog = new JDialog(this, "Opening Explorer", false);
+            explorerDialog.add(explorerPanel);
+            explorerDialog.setSize(420, 300);
+            explorerDialog.setLocationRelativeTo(this);
+        }
+        explorerPanel.showPosition(checkersGame.getBoard(), checkersGame.getCurrentPlayerColor());
+        explorerDialog.setVisible(true);
+    }//GEN-LAST:event_explorerMenuItemActionPerformed
 
-    private void expertMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_expertMenuItemActionPerformed
-        checkersGame.setLevel(8);
-    }//GEN-LAST:event_expertMenuItemActionPerformed
+    private void bookMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_bookMenuItemActionPerformed
+        if (bookMenuItem.isSelected() && openDatabase()) {
+            checkersGame.setOpeningBook(new OpeningBook(database));
+        } else {
+            checkersGame.setOpeningBook(null);
+        }
+    }//GEN-LAST:event_bookMenuItemActionPerformed
 
-    private void masterMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_masterMenuItemActionPerformed
-        checkersGame.setLevel(9);
-    }//GEN-LAST:event_masterMenuItemActionPerformed
+    private void analysisMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_analysisMenuItemActionPerformed
+        Vector<Move> moves = checkersGame.getMoves();
+        if (moves.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "There are no moves to analyse.", "Checkers", JOptionPane.PLAIN_MESSAGE);
+            return;
+        }
+        if (analysisDialog == null) {
+            // The positions are searched on all cores, below the priority 
+            // of the user interface
+            analysisExecutor = new EngineExecutor(Runtime.getRuntime().availableProcessors(), 
+                    Thread.NORM_PRIORITY - 1);
+            analysisText = new JTextArea();
+            analysisText.setEditable(false);
+            analysisText.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            analysisDialog = new JDialog(this, "Game Analysis", false);
+            analysisDialog.add(new JScrollPane(analysisText));
+            analysisDialog.setSize(560, 400);
+            analysisDialog.setLocationRelativeTo(this);
+        }
+        GameAnalysis analysis = new GameAnalysis(analysisExecutor, checkersGame.getCurrentLevel());
+        analysis.setDrawRule(checkersGame.getDrawRule());
+        analysisText.setText("Analysing " + moves.size() + " moves...");
+        analysisMenuItem.setEnabled(false);
+        analysisDialog.setVisible(true);
+        analysis.analyse(moves).whenCompleteAsync((result, ex) -> {
+            analysisMenuItem.setEnabled(true);
+            analysisText.setText(ex == null ? GameAnalysis.report(result) : "The analysis failed: " + ex);
+            analysisText.setCaretPosition(0);
+        }, SwingUtilities::invokeLater);
+    }//GEN-LAST:event_analysisMenuItemActionPerformed
+
+    private void noClockMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_noClockMenuItemActionPerformed
+        checkersGame.setTimeControl(0, 0);
+    }//GEN-LAST:event_noClockMenuItemActionPerformed
+
+    private void blitzMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_blitzMenuItemActionPerformed
+        checkersGame.setTimeControl(3*60*1000, 2*1000);
+    }//GEN-LAST:event_blitzMenuItemActionPerformed
+
+    private void rapidMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_rapidMenuItemActionPerformed
+        checkersGame.setTimeControl(10*60*1000, 5*1000);
+    }//GEN-LAST:event_rapidMenuItemActionPerformed
 
     private void exitMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_exitMenuItemActionPerformed
         if (checkersGame.isInitialState()) {
@@ -357,27 +459,30 @@ public class Checkers extends JFrame implements Observer {
     }//GEN-LAST:event_newMenuItemActionPerformed
 
     private void checkerBoardMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_checkerBoardMouseClicked
-        if (checkersGame.getCurrentPlayerType() == PlayerType.HUMAN) {
+        if (checkersGame.getCurrentPlayerType() == PlayerType.HUMAN && moveTrie != null) {
             int index = checkerBoard.getFieldByPixelCoord(evt.getX(), evt.getY());
             if (index!=0) {
-                if (checkerBoard.isSelected(index)) {
-                    if (possibleUnselectSquares().contains(index)) {
+                if (!selectedPath.isEmpty() && selectedPath.peek() == index) {
+                    // Only the last selected square can be unselected
+                    selectedPath.pop();
+                    selectedNodes.pop();
+                    if (!selectedPath.contains(index)) {
                         checkerBoard.unselectField(index);
                     }
                 } else {
-                    if (possibleSelectSquares().contains(index)) {
+                    MoveTrie node = selectedNodes.isEmpty() ? moveTrie : selectedNodes.peek();
+                    MoveTrie next = node.select(index);
+                    if (next != null) {
                         checkerBoard.selectField(index);
+                        selectedPath.push(index);
+                        selectedNodes.push(next);
                         // Check if a move is complete now..
-                        for (final Move m : possibleMoves) {
-                            if (m.getSquares().containsAll(checkerBoard.getSelectedFields()) && 
-                                    checkerBoard.getSelectedFields().containsAll(m.getSquares())) {
-                                checkerBoard.unselectAllFields();
-                                checkersGame.executeMove(m);
-                            }
+                        if (next.getMove() != null) {
+                            clearSelection();
+                            checkersGame.executeMove(next.getMove());
                         }
                     }
                 }
-                checkerBoard.repaint();
             }
         }
     }//GEN-LAST:event_checkerBoardMouseClicked
@@ -385,43 +490,109 @@ public class Checkers extends JFrame implements Observer {
     private void undoMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_undoMenuItemActionPerformed
         checkersGame.undoMove();
     }//GEN-LAST:event_undoMenuItemActionPerformed
+
+    private void redoMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_redoMenuItemActionPerformed
+        checkersGame.redoMove();
+    }//GEN-LAST:event_redoMenuItemActionPerformed
     
     /**
-     * Return in a set all index numbers of squares that can be selected. This 
-     * method is to be called from the checkBoardMouseClicked event handler.
-     * @return Set containing all selectable squares.
+     * This method fills the level menu with the configured levels (see 
+     * Level.load), the levels with a fixed depth first and those with a node 
+     * or time budget after a separator. When they can't be read, the menu 
+     * only has the current level.
      */
-    private Set possibleSelectSquares() {
-        HashSet<Integer> squares = new HashSet<Integer>();
-        Set<Integer> selectedFields = checkerBoard.getSelectedFields();
-        for (Move m : possibleMoves) {
-            if (m.getSquares().containsAll(selectedFields) && m.length() > selectedFields.size()) {
-                squares.add(m.squareAt(selectedFields.size()));
+    private void addLevels() {
+        levelMenuItems = new Vector<JRadioButtonMenuItem>();
+        levels = new Vector<Level>();
+        Vector<Level> loaded;
+        try {
+            loaded = Level.load();
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "The levels can't be read: " + ex.getMessage(), 
+                    "Checkers", JOptionPane.ERROR_MESSAGE);
+            loaded = new Vector<Level>();
+            loaded.add(checkersGame.getCurrentLevel());
+        }
+        String mnemonics = "";
+        for (boolean fixedDepth : new boolean[]{true, false}) {
+            boolean first = true;
+            for (final Level level : loaded) {
+                if (level.isFixedDepth() != fixedDepth) {
+                    continue;
+                }
+                if (first && !levels.isEmpty()) {
+                    levelMenu.addSeparator();
+                }
+                first = false;
+                JRadioButtonMenuItem item = new JRadioButtonMenuItem(level.getName());
+                // The first letter of the name that no other level uses
+                for (char c : level.getName().toLowerCase().toCharArray()) {
+                    if (Character.isLetter(c) && mnemonics.indexOf(c) < 0) {
+                        item.setMnemonic(c);
+                        mnemonics += c;
+                        break;
+                    }
+                }
+                item.addActionListener(new java.awt.event.ActionListener() {
+                    public void actionPerformed(java.awt.event.ActionEvent evt) {
+                        checkersGame.setLevel(level);
+                    }
+                });
+                levelMenu.add(item);
+                levelMenuItems.add(item);
+                levels.add(level);
             }
         }
-        return squares;
     }
     
     /**
-     * Return in a set all index numbers of squares that can be unselected. This 
-     * method is to be called from the checkBoardMouseClicked event handler.
-     * @return Set containing all unselectable squares.
+     * This method returns true if a level of the menu is the level of the 
+     * game. The game starts with a level of its own, which is the same as a 
+     * level of the menu with the same fixed depth.
+     * @param level The level of the menu
+     * @return A boolean indicating whether the game plays at the level.
      */
-    private Set possibleUnselectSquares() {
-        HashSet<Integer> squares = new HashSet<Integer>();
-        Set<Integer> selectedFields = checkerBoard.getSelectedFields();
-        for (Move m : possibleMoves) {
-            if (m.getSquares().containsAll(selectedFields) && selectedFields.size()>0) {
-                squares.add(m.squareAt(selectedFields.size()-1));
-            }
+    private boolean isCurrentLevel(Level level) {
+        Level current = checkersGame.getCurrentLevel();
+        return current == level || (current.isFixedDepth() && level.isFixedDepth() 
+                && current.getDepth() == level.getDepth());
+    }
+    
+    /**
+     * This method shows the time left on the clocks, and ends the game when 
+     * the player to move has run out of time.
+     */
+    private void updateClocks() {
+        GameClock clock = checkersGame.getClock();
+        boolean visible = clock != null;
+        if (visible != blackClockLabel.isVisible()) {
+            blackClockLabel.setVisible(visible);
+            whiteClockLabel.setVisible(visible);
+            pack();
+        }
+        if (visible) {
+            blackClockLabel.setText("Black " + GameClock.format(clock.getRemaining(PlayerColor.BLACK)));
+            whiteClockLabel.setText("White " + GameClock.format(clock.getRemaining(PlayerColor.WHITE)));
+            checkersGame.checkTime();
         }
-        return squares;
     }
     
     /**
+     * This method unselects all squares selected by the human player.
+     */
+    private void clearSelection() {
+        selectedPath.clear();
+        selectedNodes.clear();
+        checkerBoard.unselectAllFields();
+    }
+    
+    /**
+     * When the system property checkers.jfr names a file, a flight 
+     * recording with the events of EngineEvents is written to it.
      * @param args the command line arguments
      */
     public static void main(String args[]) {
+        EngineEvents.startRecording();
         java.awt.EventQueue.invokeLater(new Runnable() {
             public void run() {
                 new Checkers().setVisible(true);
@@ -430,45 +601,76 @@ public class Checkers extends JFrame implements Observer {
     }
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JRadioButtonMenuItem averageMenuItem;
-    private javax.swing.JRadioButtonMenuItem beginnerMenuItem;
+    private javax.swing.JMenuItem analysisMenuItem;
+    private javax.swing.JLabel blackClockLabel;
     private javax.swing.JRadioButtonMenuItem blackComputerMenuItem;
     private javax.swing.JRadioButtonMenuItem blackHumanMenuItem;
     private javax.swing.JMenu blackMenu;
+    private javax.swing.JRadioButtonMenuItem blitzMenuItem;
+    private javax.swing.JCheckBoxMenuItem bookMenuItem;
     private CheckerBoard checkerBoard;
     private javax.swing.JMenuItem exitMenuItem;
-    private javax.swing.JRadioButtonMenuItem expertMenuItem;
+    private javax.swing.JMenuItem explorerMenuItem;
     private javax.swing.JMenu gameMenu;
-    private javax.swing.JRadioButtonMenuItem goodMenuItem;
     private javax.swing.JCheckBoxMenuItem invertedMenuItem;
     private javax.swing.JMenu levelMenu;
-    private javax.swing.JRadioButtonMenuItem masterMenuItem;
     private javax.swing.JMenuBar menuBar;
     private javax.swing.JMenuItem newMenuItem;
-    private javax.swing.JRadioButtonMenuItem noviceMenuItem;
+    private javax.swing.JRadioButtonMenuItem noClockMenuItem;
     private javax.swing.JMenu playersMenu;
+    private javax.swing.JRadioButtonMenuItem rapidMenuItem;
+    private javax.swing.JMenuItem redoMenuItem;
     private javax.swing.JSeparator separator1;
     private javax.swing.JSeparator separator2;
     private javax.swing.JSeparator separator3;
     private javax.swing.JSeparator separator4;
+    private javax.swing.JMenu timeMenu;
     private javax.swing.JMenuItem undoMenuItem;
+    private javax.swing.JLabel whiteClockLabel;
     private javax.swing.JRadioButtonMenuItem whiteComputerMenuItem;
     private javax.swing.JRadioButtonMenuItem whiteHumanMenuItem;
     private javax.swing.JMenu whiteMenu;
     // End of variables declaration//GEN-END:variables
 
-    public void update(Observable o, Object arg) {
-        if (o == checkersGame) {
+    /**
+     * This method asks for the game database used by the opening explorer
+     * and the opening book, unless one was opened before.
+     * @return A boolean indicating whether a game database is open.
+     */
+    private boolean openDatabase() {
+        if (database == null) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setDialogTitle("Open game database");
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return false;
+            }
+            try {
+                database = new GameDatabase(chooser.getSelectedFile().toPath());
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), "Checkers", JOptionPane.ERROR_MESSAGE);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void gameChanged(GameChangeEvent e) {
+        if (e.getGame() == checkersGame) {
             // Update undo menu
             undoMenuItem.setEnabled(!checkersGame.isInitialState());
+            redoMenuItem.setEnabled(checkersGame.canRedo());
             
             // Update level menu
-            beginnerMenuItem.setSelected(checkersGame.getLevel()==1);
-            noviceMenuItem.setSelected(checkersGame.getLevel()==2);
-            averageMenuItem.setSelected(checkersGame.getLevel()==4);
-            goodMenuItem.setSelected(checkersGame.getLevel()==6);
-            expertMenuItem.setSelected(checkersGame.getLevel()==8);
-            masterMenuItem.setSelected(checkersGame.getLevel()==9);
+            for (int i=0; i<levelMenuItems.size(); i++) {
+                levelMenuItems.elementAt(i).setSelected(isCurrentLevel(levels.elementAt(i)));
+            }
+            
+            // Update time control menu
+            GameClock clock = checkersGame.getClock();
+            noClockMenuItem.setSelected(clock==null);
+            blitzMenuItem.setSelected(clock!=null && clock.getInitial()==3*60*1000);
+            rapidMenuItem.setSelected(clock!=null && clock.getInitial()==10*60*1000);
+            updateClocks();
             
             // Update playertype menu
             whiteHumanMenuItem.setSelected(checkersGame.getPlayerType(PlayerColor.WHITE)==PlayerType.HUMAN);
@@ -476,20 +678,38 @@ public class Checkers extends JFrame implements Observer {
             blackHumanMenuItem.setSelected(checkersGame.getPlayerType(PlayerColor.BLACK)==PlayerType.HUMAN);
             blackComputerMenuItem.setSelected(checkersGame.getPlayerType(PlayerColor.BLACK)==PlayerType.COMPUTER);
             
+            // Update the opening book menu
+            bookMenuItem.setSelected(checkersGame.getOpeningBook()!=null);
+            
+            // Update the opening explorer
+            if (explorerDialog != null && explorerDialog.isVisible()) {
+                explorerPanel.showPosition(checkersGame.getBoard(), checkersGame.getCurrentPlayerColor());
+            }
+            
             if (!checkersGame.isGameOver()) {
                 gameHasEndedDialogShown = false;
                 // Update the mouse cursor and generate vector of possible moves
                 if (checkersGame.getCurrentPlayerType()==PlayerType.HUMAN) {
                     checkerBoard.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-                    possibleMoves = checkersGame.generatePossibleMoves();
+                    Vector<Move> possibleMoves = checkersGame.generatePossibleMoves();
                     //possibleMoves = MoveGen.generatePossibleMoves(checkersGame.getBoard(), checkersGame.getCurrentPlayerColor());
+                    moveTrie = new MoveTrie(possibleMoves);
+                    clearSelection();
                 } else {
                     checkerBoard.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+                    moveTrie = null;
+                    clearSelection();
                 }
             } else {
                 checkerBoard.setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+                moveTrie = null;
                 if (!gameHasEndedDialogShown) {
-                    if (checkersGame.isWinner(PlayerColor.BLACK)) {
+                    if (checkersGame.isDraw()) {
+                        JOptionPane.showMessageDialog(this, "This game is a draw.", "Checkers", JOptionPane.PLAIN_MESSAGE);
+                    } else if (checkersGame.isLostOnTime()) {
+                        String winner = checkersGame.isWinner(PlayerColor.BLACK) ? "Black" : "White";
+                        JOptionPane.showMessageDialog(this, winner + " has won this game on time.", "Checkers", JOptionPane.PLAIN_MESSAGE);
+                    } else if (checkersGame.isWinner(PlayerColor.BLACK)) {
                         JOptionPane.showMessageDialog(this, "Black has won this game.", "Checkers", JOptionPane.PLAIN_MESSAGE);
                     } else {
                         JOptionPane.showMessageDialog(this, "White has won this game.", "Checkers", JOptionPane.PLAIN_MESSAGE);
@@ -1,32 +1,125 @@
-import java.util.Observable;
-import java.util.Stack;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import javax.swing.SwingUtilities;
 
 /**
  * This class manages a checkers game.
  * @author Aswin van Woudenberg
  */
-public class CheckersGame extends Observable {
+public class CheckersGame {
+    // The analysis cache file holds 2^CACHE_SIZE_BITS entries of 24 bytes
+    private static final int CACHE_SIZE_BITS = 22;
+    
+    // The number of completed searches remembered for undo and replay
+    private static final int RESULT_CACHE_CAPACITY = 1024;
+    
+    // The game is a draw after this many moves per player without a capture 
+    // or a pawn move
+    private static final int DRAW_MOVES = 40;
+    
+    // The deepest iteration of a search with a clock
+    private static final int CLOCK_MAX_DEPTH = 30;
+    
+    // The computer thinks on one thread, so a cancelled search has stopped 
+    // before the next one starts, at a little below normal priority so the 
+    // user interface stays responsive
+    private static final int ENGINE_THREADS = 1;
+    private static final int ENGINE_PRIORITY = Thread.NORM_PRIORITY - 1;
+    
     private Board board;
     private Search search;
+    private Search analysis;
+    private AnalysisCache cache;
+    private SearchResultCache results;
+    private OpeningBook book;
     private PlayerType players[];
     private PlayerColor currentPlayer;
-    private Stack<Board> history;
-    private CheckersSearchWorker worker;
+    private UndoLog history;
+    private PositionHistory positions;
+    private EngineExecutor engine;
+    private Executor delivery;
+    private CompletableFuture<Move> worker;
+    private volatile ProgressListener progress;
     private boolean gameHasEnded;
+    private GameClock clock;
+    private Level level;
+    private PlayerColor flagged;
+    private ArrayList<GameListener> listeners;
     
     /**
-     * The constructor.
+     * The constructor. When the system property checkers.cache names a file, 
+     * that file is used as analysis cache. The system property 
+     * checkers.engine.priority sets the priority of the thread the computer 
+     * thinks on. Its moves are played on the event dispatch thread.
      */
     public CheckersGame() {
+        this(new EngineExecutor(ENGINE_THREADS, 
+                Integer.getInteger("checkers.engine.priority", ENGINE_PRIORITY)), 
+                SwingUtilities::invokeLater);
+    }
+    
+    /**
+     * This constructor lets the computer think on an executor and play its 
+     * moves on a thread of choice, which is useful without a user interface.
+     * @param engine The executor the computer thinks on, with one thread, 
+     * since the searches of the game share one Search object.
+     * @param delivery The executor the moves of the computer are played on, 
+     * which must run them one at a time in order, like the event dispatch 
+     * thread.
+     */
+    public CheckersGame(EngineExecutor engine, Executor delivery) {
+        this.engine = engine;
+        this.delivery = delivery;
         board = new Board();
         search = new Search();
+        String cacheFile = System.getProperty("checkers.cache");
+        if (cacheFile != null) {
+            cache = new AnalysisCache(Paths.get(cacheFile), CACHE_SIZE_BITS);
+            search.setAnalysisCache(cache);
+        }
         players = new PlayerType[2];
         players[0] = PlayerType.HUMAN;
         players[1] = PlayerType.COMPUTER;
         currentPlayer = PlayerColor.BLACK;
-        history = new Stack<Board>();
+        history = new UndoLog();
+        positions = new PositionHistory();
+        positions.setDrawPlies(2*DRAW_MOVES);
+        positions.push(Zobrist.hashKey(board, currentPlayer), true);
+        results = new SearchResultCache(RESULT_CACHE_CAPACITY);
+        level = Level.ofDepth(search.getSearchDepth());
         gameHasEnded = false;
+        listeners = new ArrayList<GameListener>();
+    }
+    
+    /**
+     * This method adds a listener that is told about every change of the 
+     * game, on the thread the game is played on.
+     * @param l The listener
+     */
+    public void addGameListener(GameListener l) {
+        listeners.add(l);
+    }
+    
+    /**
+     * This method removes a listener.
+     * @param l The listener
+     */
+    public void removeGameListener(GameListener l) {
+        listeners.remove(l);
+    }
+    
+    /**
+     * This method tells the listeners that the game changed.
+     */
+    private void fireGameChanged() {
+        GameChangeEvent e = new GameChangeEvent(this);
+        for (GameListener l : new ArrayList<GameListener>(listeners)) {
+            l.gameChanged(e);
+        }
     }
     
     /**
@@ -37,6 +130,47 @@ public class CheckersGame extends Observable {
         return gameHasEnded;
     }
     
+    /**
+     * This method returns true if the game ended in a draw, because the same 
+     * position occurred three times or because of the move-count draw rule.
+     * @return A boolean indicating whether the game is a draw.
+     */
+    public boolean isDraw() {
+        return flagged==null && (positions.repetitions(2)>=2 || positions.isMoveLimitReached());
+    }
+    
+    /**
+     * This method sets the move-count draw rule.
+     * @param moves The number of moves per player without a capture or a pawn 
+     * move after which the game is a draw, or 0 to not use the rule.
+     */
+    public void setDrawRule(int moves) {
+        positions.setDrawPlies(2*moves);
+        fireGameChanged();
+    }
+    
+    /**
+     * This method returns the move-count draw rule.
+     * @return The number of moves per player without a capture or a pawn 
+     * move after which the game is a draw, or 0 if the rule isn't used.
+     */
+    public int getDrawRule() {
+        return positions.getDrawPlies()/2;
+    }
+    
+    /**
+     * This method returns the moves played from the start position up to 
+     * the current position, without the moves that were taken back.
+     * @return A vector with the moves
+     */
+    public Vector<Move> getMoves() {
+        Vector<Move> moves = new Vector<Move>();
+        for (int i=0; i<history.size(); i++) {
+            moves.add(history.moveAt(i));
+        }
+        return moves;
+    }
+    
     /**
      * Method that returns if the board is in it's initial state.
      * @return Boolean indicating the initial state.
@@ -77,11 +211,17 @@ public class CheckersGame extends Observable {
             worker = null;
         }
         gameHasEnded = false;
+        flagged = null;
         board.setupBoard();
         currentPlayer = PlayerColor.BLACK;
         history.clear();
-        setChanged();
-        notifyObservers();
+        positions.clear();
+        positions.push(Zobrist.hashKey(board, currentPlayer), true);
+        if (clock != null) {
+            clock.reset();
+            clock.start(currentPlayer);
+        }
+        fireGameChanged();
         doComputerMoveIfNeeded();
     }
     
@@ -90,59 +230,147 @@ public class CheckersGame extends Observable {
      * situation.
      * @return A vector with all possible moves.
      */
-    public Vector generatePossibleMoves() {
-        Vector possibleMoves = MoveGen.generatePossibleMoves(board, currentPlayer);
+    public Vector<Move> generatePossibleMoves() {
+        Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, currentPlayer);
         if (possibleMoves.isEmpty()) {
             gameHasEnded = true;
-            setChanged();
-            notifyObservers();
+            if (clock != null) {
+                clock.stop();
+            }
+            fireGameChanged();
         }
         return possibleMoves;
     }
     
     /**
-     * Execute a move and give turn to the opponent.
+     * Execute a move and give turn to the opponent. How long this takes, 
+     * including the updates of the listeners, is recorded as an event (see 
+     * EngineEvents).
      * @param m The move to be executed.
      */
     public void executeMove(Move m) {
+        EngineEvents.MoveAppliedEvent event = new EngineEvents.MoveAppliedEvent();
+        event.begin();
+        PlayerColor pc = currentPlayer;
+        PlayerType pt = getCurrentPlayerType();
+        applyMove(m);
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = String.valueOf(m);
+            event.player = pc.toString();
+            event.playerType = pt.toString();
+            event.commit();
+        }
+    }
+    
+    /**
+     * This method executes a move for executeMove, which records how long 
+     * it takes.
+     * @param m The move to be executed, or null if there are none.
+     */
+    private void applyMove(Move m) {
         if (m!=null) {
-            history.push(board.copy());
+            if (clock != null) {
+                if (checkTime()) {
+                    return;
+                }
+                clock.press(currentPlayer);
+            }
+            history.push(board, m);
+            pushPosition(m);
             board.executeMove(m);
             currentPlayer = currentPlayer.opponent();
-            setChanged();
-            notifyObservers();
+            gameHasEnded = isDraw();
+            if (gameHasEnded && clock != null) {
+                clock.stop();
+            }
+            fireGameChanged();
             doComputerMoveIfNeeded();
         } else {
             gameHasEnded = true;
-            setChanged();
-            notifyObservers();
+            if (clock != null) {
+                clock.stop();
+            }
+            fireGameChanged();
         }
     }
     
+    /**
+     * Take back the last move.
+     */
     public void undoMove() {
-        if (!history.empty()) {
+        if (!history.isEmpty()) {
             if (worker != null && !worker.isDone()) {
                 // Cancel current search to begin a new one.
                 // You want only one search at a time.
                 worker.cancel(true);
                 worker = null;
             }
-            Board b = history.pop();
-            board.undoMove(b);
+            history.undo(board);
+            positions.pop();
             currentPlayer = currentPlayer.opponent();
             gameHasEnded = false;
-            setChanged();
-            notifyObservers();
+            flagged = null;
+            if (clock != null) {
+                clock.start(currentPlayer);
+            }
+            fireGameChanged();
             doComputerMoveIfNeeded();
         }
     }
     
+    /**
+     * Play the last move that was taken back again.
+     */
+    public void redoMove() {
+        if (history.canRedo()) {
+            if (worker != null && !worker.isDone()) {
+                // Cancel current search to begin a new one.
+                // You want only one search at a time.
+                worker.cancel(true);
+                worker = null;
+            }
+            Move m = history.redo();
+            pushPosition(m);
+            board.executeMove(m);
+            currentPlayer = currentPlayer.opponent();
+            gameHasEnded = isDraw();
+            if (clock != null) {
+                clock.start(currentPlayer);
+            }
+            fireGameChanged();
+            doComputerMoveIfNeeded();
+        }
+    }
+    
+    /**
+     * This method adds the position reached by a move to the positions of 
+     * the game. It must be called before the move is executed.
+     * @param m The move
+     */
+    private void pushPosition(Move m) {
+        positions.push(positions.lastKey() ^ Zobrist.moveKey(board, m), 
+                PositionHistory.isIrreversible(board, m));
+    }
+    
+    /**
+     * This method returns true if there is a move that was taken back and can 
+     * be played again.
+     * @return A boolean indicating whether a move can be redone.
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+    
     /**
      * This method returns true if a certain player has won this game.
      * @param pc The PlayerColor, BLACK or WHITE
      * @return A boolean indicating if a player has won.
      */
     public boolean isWinner(PlayerColor pc) {
+        if (flagged != null) {
+            return flagged==pc.opponent();
+        }
         if (getCurrentPlayerColor()==pc.opponent() && gameHasEnded) {
             if (MoveGen.generatePossibleMoves(board, pc.opponent()).isEmpty()) {
                 return true;
@@ -157,6 +385,9 @@ public class CheckersGame extends Observable {
      * @return A boolean indicating if the player has lost.
      */
     public boolean isLoser(PlayerColor pc) {
+        if (flagged != null) {
+            return flagged==pc;
+        }
         if (getCurrentPlayerColor()==pc && gameHasEnded) {
             if (MoveGen.generatePossibleMoves(board, pc).isEmpty()) {
                 return true;
@@ -167,13 +398,177 @@ public class CheckersGame extends Observable {
     
     /**
      * This method checks if the current player is the computer, and if this is 
-     * the case, it find a good move.
+     * the case, it find a good move. The move is played unless the search is 
+     * cancelled before it arrives.
      */
     private void doComputerMoveIfNeeded() {
         if (getCurrentPlayerType()==PlayerType.COMPUTER && !gameHasEnded) {
-            worker = new CheckersSearchWorker(search, this);
-            worker.execute();
+            final CompletableFuture<Move> future = findComputerMove();
+            worker = future;
+            future.whenCompleteAsync((m, ex) -> {
+                if (worker != future) {
+                    return;
+                }
+                worker = null;
+                if (ex == null) {
+                    executeMove(m);
+                } else if (!(ex instanceof CancellationException)) {
+                    ex.printStackTrace();
+                }
+            }, delivery);
+        }
+    }
+    
+    /**
+     * This method sets the listener that is told about every depth the 
+     * computer completes while it thinks. It is called on the search thread.
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progress = listener;
+    }
+    
+    /**
+     * This method finds the computer's move for the current board situation. 
+     * It runs on the thread the game is played on, which copies the board, 
+     * the player, the positions and the level and searches the copies on the 
+     * EngineExecutor, so the search never reads the state of the game. When 
+     * the same position was searched before at the same level, for instance 
+     * before an undo, the earlier result is returned instantly. Such a 
+     * result is not used when the position could be part of a repetition, 
+     * because the earlier search may have known other positions of the game. 
+     * Results of levels with a node or time budget aren't remembered either. 
+     * When an opening book is set and has a move for the position, no search 
+     * is done at all.
+     * @return A future for the move to play.
+     */
+    CompletableFuture<Move> findComputerMove() {
+        final Board b = board.copy();
+        final PlayerColor pc = currentPlayer;
+        final PositionHistory h = positions.copy();
+        final Level level = this.level;
+        final ProgressListener listener = progress;
+        if (book != null) {
+            Move m = book.getMove(b, pc);
+            if (m != null) {
+                return CompletableFuture.completedFuture(m);
+            }
+        }
+        if (clock != null) {
+            final TimeManager tm = new TimeManager(clock, pc);
+            return engine.submit(() -> {
+                search.setProgressListener(listener);
+                search.setDeadline(tm.getDeadline());
+                try {
+                    return search.getComputerMove(b, pc, h, CLOCK_MAX_DEPTH, tm);
+                } finally {
+                    search.setProgressListener(null);
+                }
+            });
+        }
+        if (!level.isFixedDepth()) {
+            return engine.submit(search, b, pc, h, level, listener);
+        }
+        final int depth = level.getDepth();
+        boolean cycles = h.getReversiblePlies()>=4;
+        Move m = cycles ? null : results.get(b, pc, depth);
+        if (m != null) {
+            return CompletableFuture.completedFuture(m);
+        }
+        CompletableFuture<Move> future = engine.submit(search, b, pc, h, level, listener);
+        if (!cycles) {
+            future.thenAccept(move -> results.put(b, pc, depth, move));
+        }
+        return future;
+    }
+    
+    /**
+     * This method returns the cache of completed searches, which keeps 
+     * statistics on its hits and evictions.
+     * @return The search result cache
+     */
+    public SearchResultCache getSearchResultCache() {
+        return results;
+    }
+    
+    /**
+     * This method sets the time control. With a clock the computer uses 
+     * iterative deepening and a TimeManager decides how long it thinks, so 
+     * the level is not used. Both clocks are set to the initial time.
+     * @param initial The time of every player in milliseconds, or 0 to play 
+     * without a clock.
+     * @param increment The time added for every move in milliseconds
+     */
+    public void setTimeControl(long initial, long increment) {
+        if (worker != null && !worker.isDone()) {
+            // Cancel current search to begin a new one.
+            // You want only one search at a time.
+            worker.cancel(true);
+            worker = null;
+        }
+        clock = initial > 0 ? new GameClock(initial, increment) : null;
+        if (flagged != null) {
+            flagged = null;
+            gameHasEnded = isDraw();
+        }
+        if (clock != null && !gameHasEnded) {
+            clock.start(currentPlayer);
+        }
+        fireGameChanged();
+        doComputerMoveIfNeeded();
+    }
+    
+    /**
+     * This method returns the clock of the game.
+     * @return The clock, or null when playing without one.
+     */
+    public GameClock getClock() {
+        return clock;
+    }
+    
+    /**
+     * This method ends the game when the player to move has run out of 
+     * time. It should be called regularly while a clock runs.
+     * @return A boolean indicating whether the player to move lost on time.
+     */
+    public boolean checkTime() {
+        if (clock == null || gameHasEnded || !clock.isFlagged(currentPlayer)) {
+            return false;
         }
+        if (worker != null && !worker.isDone()) {
+            worker.cancel(true);
+            worker = null;
+        }
+        clock.stop();
+        flagged = currentPlayer;
+        gameHasEnded = true;
+        fireGameChanged();
+        return true;
+    }
+    
+    /**
+     * This method returns true if the game was lost on time.
+     * @return A boolean indicating whether a player ran out of time.
+     */
+    public boolean isLostOnTime() {
+        return flagged != null;
+    }
+    
+    /**
+     * This method sets the opening book the computer plays from.
+     * @param book The opening book, or null to always search.
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+        fireGameChanged();
+    }
+    
+    /**
+     * This method returns the opening book the computer plays from.
+     * @return The opening book, or null if there is none.
+     */
+    public OpeningBook getOpeningBook() {
+        return book;
     }
     
     /**
@@ -181,24 +576,61 @@ public class CheckersGame extends Observable {
      * @param depth The searchdepth a.k.a. level.
      */
     public void setLevel(int depth) {
+        setLevel(Level.ofDepth(depth));
+    }
+    
+    /**
+     * This method sets the level, which can be a fixed depth or a node or 
+     * time budget per move.
+     * @param level The level
+     */
+    public void setLevel(Level level) {
         if (worker != null && !worker.isDone()) {
             // Cancel current search to begin a new one.
             // You want only one search at a time.
             worker.cancel(true);
             worker = null;
         }
-        search.setSearchDepth(depth);
-        setChanged();
-        notifyObservers();
+        this.level = level;
+        if (level.isFixedDepth()) {
+            search.setSearchDepth(level.getDepth());
+        }
+        fireGameChanged();
         doComputerMoveIfNeeded();
     }
     
     /**
      * Get the searchdepth
-     * @return The searchdepth a.k.a. level.
+     * @return The searchdepth a.k.a. level, or 0 if the level has a node or 
+     * time budget.
      */
     public int getLevel() {
-        return search.getSearchDepth();
+        return level.isFixedDepth() ? level.getDepth() : 0;
+    }
+    
+    /**
+     * This method returns the level.
+     * @return The level
+     */
+    public Level getCurrentLevel() {
+        return level;
+    }
+    
+    /**
+     * This method analyses the current board situation and returns the best 
+     * moves for the current player, each with a score and the line of play 
+     * that is expected to follow. It uses a separate search, so it can be 
+     * called while the computer is thinking.
+     * @param k The number of moves wanted.
+     * @return A vector with at most k scored moves, ordered from best to worst.
+     */
+    public Vector<ScoredMove> getBestMoves(int k) {
+        if (analysis == null) {
+            analysis = new Search();
+            analysis.setAnalysisCache(cache);
+        }
+        analysis.setSearchDepth(search.getSearchDepth());
+        return analysis.getBestMoves(board.copy(), currentPlayer, k, positions.copy());
     }
     
     /**
@@ -235,8 +667,7 @@ public class CheckersGame extends Observable {
                 players[1] = pt;
                 break;
         }
-        setChanged();
-        notifyObservers();
+        fireGameChanged();
         doComputerMoveIfNeeded();
     }
     
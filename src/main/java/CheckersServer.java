@@ -0,0 +1,318 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class hosts many checkers games in one process and makes them
+ * available over HTTP on the loopback interface. The following requests are
+ * supported:
+ *
+ *   POST   /sessions                  start a new game
+ *   GET    /sessions/{id}             get the state of a game
+ *   DELETE /sessions/{id}             end a game
+ *   POST   /sessions/{id}/move?move=m play move m, like 11-15 or 15x24x31
+ *   POST   /sessions/{id}/search?depth=d&timeout=t
+ *                                     let the computer find and play a move
+ *   POST   /sessions/{id}/search?level=l&timeout=t
+ *                                     the same at a level, like Quick
+ *   GET    /stats                     get the server statistics
+ *
+ * Responses are plain text with one property per line. Searches are run by
+ * a SearchExecutor. When its queue is full the server answers 503, and when
+ * a search misses its deadline it answers 504. Requests never block a server
+ * thread while a search is running.
+ *
+ * The levels are read by Level.load. A level with a node or time budget
+ * gives every search about the same response time, which a depth doesn't.
+ * @author Aswin van Woudenberg
+ */
+public class CheckersServer {
+    private static final int MAX_DEPTH = 12;
+    private static final int DEFAULT_DEPTH = 6;
+    private static final long DEFAULT_TIMEOUT = 5000; // milliseconds
+    private static final int MAX_SESSIONS = 100000;
+    private static final long MAX_IDLE = 30 * 60 * 1000; // milliseconds
+
+    private HttpServer server;
+    private ExecutorService requestExecutor;
+    private ScheduledExecutorService reaper;
+    private SessionManager sessions;
+    private SearchExecutor searchExecutor;
+    private Vector<Level> levels;
+
+    /**
+     * The constructor
+     * @param port The port to listen on, or 0 for any free port
+     * @param threads The number of search threads
+     * @param queueCapacity The maximum number of searches waiting for a thread
+     * @throws IOException when the port can't be opened
+     */
+    public CheckersServer(int port, int threads, int queueCapacity) throws IOException {
+        sessions = new SessionManager(MAX_SESSIONS);
+        levels = Level.load();
+        searchExecutor = new SearchExecutor(threads, queueCapacity);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.createContext("/sessions", this::handleSessions);
+        server.createContext("/stats", this::handleStats);
+        requestExecutor = Executors.newFixedThreadPool(Math.max(2, threads));
+        server.setExecutor(requestExecutor);
+        reaper = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * This method starts the server.
+     */
+    public void start() {
+        server.start();
+        reaper.scheduleWithFixedDelay(() -> sessions.removeIdleSessions(MAX_IDLE), 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * This method stops the server.
+     */
+    public void stop() {
+        server.stop(0);
+        reaper.shutdownNow();
+        requestExecutor.shutdownNow();
+        searchExecutor.shutdown();
+    }
+
+    /**
+     * This method returns the port the server listens on.
+     * @return The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * This method handles the requests for /sessions and the paths below it.
+     * @param ex The request
+     */
+    private void handleSessions(HttpExchange ex) {
+        try {
+            String method = ex.getRequestMethod();
+            String path[] = ex.getRequestURI().getPath().split("/");
+            // The context also matches paths like /sessionsfoo, so path[1]
+            // must be "sessions" itself. path[0] is empty.
+            if (path.length < 2 || !path[1].equals("sessions")) {
+                respond(ex, 404, "error=not found\n");
+                return;
+            }
+            if (path.length == 2) {
+                if (!method.equals("POST")) {
+                    respond(ex, 405, "error=method not allowed\n");
+                    return;
+                }
+                GameSession session = sessions.createSession();
+                if (session == null) {
+                    respond(ex, 503, "error=too many sessions\n");
+                } else {
+                    respond(ex, 201, session.toString());
+                }
+                return;
+            }
+            GameSession session;
+            try {
+                session = sessions.getSession(Long.parseLong(path[2]));
+            } catch (NumberFormatException e) {
+                session = null;
+            }
+            if (session == null || path.length > 4) {
+                respond(ex, 404, "error=not found\n");
+                return;
+            }
+            if (path.length == 3) {
+                if (method.equals("GET")) {
+                    session.touch();
+                    respond(ex, 200, session.toString());
+                } else if (method.equals("DELETE")) {
+                    sessions.removeSession(session.getId());
+                    respond(ex, 200, "");
+                } else {
+                    respond(ex, 405, "error=method not allowed\n");
+                }
+            } else if (!method.equals("POST")) {
+                respond(ex, 405, "error=method not allowed\n");
+            } else if (path[3].equals("move")) {
+                handleMove(ex, session, parameters(ex));
+            } else if (path[3].equals("search")) {
+                handleSearch(ex, session, parameters(ex));
+            } else {
+                respond(ex, 404, "error=not found\n");
+            }
+        } catch (RuntimeException e) {
+            respond(ex, 500, "error=" + e + "\n");
+        }
+    }
+
+    /**
+     * This method plays a move sent by the client.
+     * @param ex The request
+     * @param session The game
+     * @param params The request parameters
+     */
+    private void handleMove(HttpExchange ex, GameSession session, Map<String, String> params) {
+        String notation = params.get("move");
+        int moveCount = session.getMoveCount();
+        Move m = notation == null ? null : Util.findMove(session.generatePossibleMoves(), notation);
+        if (m == null || !session.executeMove(m, moveCount)) {
+            respond(ex, 400, "error=illegal move\n");
+        } else {
+            respond(ex, 200, "move=" + m + "\n" + session.toString());
+        }
+    }
+
+    /**
+     * This method queues a search for the computer's move. The response is
+     * sent by the search thread once the move is found.
+     * @param ex The request
+     * @param session The game
+     * @param params The request parameters
+     */
+    private void handleSearch(final HttpExchange ex, final GameSession session, Map<String, String> params) {
+        Level level;
+        long timeout;
+        try {
+            if (params.containsKey("level")) {
+                level = Level.find(levels, params.get("level"));
+                if (level == null) {
+                    respond(ex, 400, "error=unknown level\n");
+                    return;
+                }
+            } else {
+                level = Level.ofDepth(Math.min(MAX_DEPTH, Integer.parseInt(params.getOrDefault("depth", "" + DEFAULT_DEPTH))));
+            }
+            timeout = Long.parseLong(params.getOrDefault("timeout", "" + DEFAULT_TIMEOUT));
+        } catch (NumberFormatException e) {
+            respond(ex, 400, "error=bad parameter\n");
+            return;
+        }
+        if (session.isGameOver()) {
+            respond(ex, 409, "error=game over\n");
+            return;
+        }
+        if (!session.startSearch()) {
+            respond(ex, 409, "error=already searching\n");
+            return;
+        }
+        final int moveCount = session.getMoveCount();
+        try {
+            searchExecutor.submit(session.getBoard(), session.getCurrentPlayerColor(), level, timeout)
+                    .whenComplete((m, e) -> {
+                        session.endSearch();
+                        if (e instanceof TimeoutException) {
+                            respond(ex, 504, "error=deadline exceeded\n");
+                        } else if (e != null) {
+                            respond(ex, 500, "error=" + e + "\n");
+                        } else if (!session.executeMove(m, moveCount)) {
+                            respond(ex, 409, "error=position changed during search\n");
+                        } else {
+                            respond(ex, 200, "move=" + m + "\n" + session.toString());
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            session.endSearch();
+            respond(ex, 503, "error=busy\n");
+        }
+    }
+
+    /**
+     * This method sends the server statistics.
+     * @param ex The request
+     */
+    private void handleStats(HttpExchange ex) {
+        if (!ex.getRequestURI().getPath().equals("/stats")) {
+            respond(ex, 404, "error=not found\n");
+            return;
+        }
+        respond(ex, 200, "sessions=" + sessions.getSessionCount() + "\n"
+                + "queued=" + searchExecutor.getQueueSize() + "\n"
+                + "active=" + searchExecutor.getActiveCount() + "\n"
+                + "completed=" + searchExecutor.getCompletedCount() + "\n"
+                + "rejected=" + searchExecutor.getRejectedCount() + "\n"
+                + "timedout=" + searchExecutor.getTimedOutCount() + "\n");
+    }
+
+    /**
+     * This method parses the query string and, for POST requests, the body of
+     * a request as name=value pairs separated by ampersands.
+     * @param ex The request
+     * @return A map with the parameters
+     */
+    private static Map<String, String> parameters(HttpExchange ex) {
+        Map<String, String> params = new HashMap<String, String>();
+        String query = ex.getRequestURI().getRawQuery();
+        String body = "";
+        try (InputStream in = ex.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            // No body
+        }
+        for (String s : new String[]{query, body}) {
+            if (s == null || s.isEmpty()) {
+                continue;
+            }
+            for (String pair : s.trim().split("&")) {
+                int i = pair.indexOf('=');
+                if (i > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, i), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(i+1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * This method sends a response and closes the request.
+     * @param ex The request
+     * @param code The HTTP status code
+     * @param body The response body
+     */
+    private static void respond(HttpExchange ex, int code, String body) {
+        byte bytes[] = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            ex.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            ex.sendResponseHeaders(code, bytes.length == 0 ? -1 : bytes.length);
+            if (bytes.length > 0) {
+                try (OutputStream out = ex.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            // The client went away
+        } finally {
+            ex.close();
+        }
+    }
+
+    /**
+     * @param args The port, the number of search threads and the queue
+     * capacity, all optional
+     * @throws IOException when the port can't be opened
+     */
+    public static void main(String args[]) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2]) : threads * 64;
+        CheckersServer server = new CheckersServer(port, threads, queueCapacity);
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort() + "/");
+    }
+}
@@ -0,0 +1,395 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class splits the root of a search over worker processes, which may
+ * run on other machines (see SearchWorker). Every worker scores whole root
+ * moves with its own Search, so the result is the same as that of one
+ * Search that searches the moves one after another.
+ *
+ * The search deepens iteratively, and every iteration tries the moves in the
+ * order of the scores of the iteration before. The first move is scored with
+ * a full window, which gives a score to beat. The other moves wait in a
+ * queue, and every worker takes the next move as soon as it is done with the
+ * last one, so a worker that finishes early takes over moves the others
+ * would have searched. Those moves only need to be shown worse than the
+ * best score so far, so they get a null window at that score. A move that
+ * turns out better is searched again with a window from the best score,
+ * which may have risen in the meantime, upwards.
+ *
+ * Positions travel packed as described by PackedPosition and moves as their
+ * index in the order of MoveGen, which is the same in every process.
+ *
+ * Usage: DistributedSearch [depth] [workers]
+ *   starts the given number of workers on this machine and compares the
+ *   time of a search with one Search in this process to that of the workers.
+ * Usage: DistributedSearch depth host:port...
+ *   does the same with workers that are already running.
+ * @author Aswin van Woudenberg
+ */
+public class DistributedSearch {
+    private static final int INFINITY = Search.INFINITY;
+
+    private Vector<Connection> connections;
+    private ExecutorService pool;
+    private long nodes;
+
+    // The state of the iteration being searched
+    private int bestScore;
+    private int bestIndex;
+
+    /**
+     * The constructor connects to the workers.
+     * @param workers The addresses of the workers
+     * @throws IOException when a worker can't be reached
+     */
+    public DistributedSearch(Vector<InetSocketAddress> workers) throws IOException {
+        connections = new Vector<Connection>();
+        for (InetSocketAddress address : workers) {
+            connections.add(new Connection(address));
+        }
+        pool = Executors.newFixedThreadPool(connections.size());
+    }
+
+    /**
+     * This method calculates the best move with iterative deepening.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current
+     * position, or null if they are unknown.
+     * @param depth The depth of the last iteration.
+     * @return The best move with its score, or null if there are no moves.
+     * @throws IOException when a worker fails
+     */
+    public ScoredMove search(Board board, PlayerColor pc, PositionHistory history, int depth) throws IOException {
+        Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+        if (possibleMoves.isEmpty()) {
+            return null;
+        }
+        if (history == null || history.size() == 0) {
+            history = new PositionHistory();
+            history.push(Zobrist.hashKey(board, pc), true);
+        }
+        long position[] = new long[2];
+        PackedPosition.pack(board, pc, position, 0);
+        nodes = 0;
+
+        int count = possibleMoves.size();
+        int order[] = new int[count];
+        int scores[] = new int[count];
+        for (int i=0; i<count; i++) {
+            order[i] = i;
+        }
+        for (int d=1; d<=depth; d++) {
+            searchRoot(position, history, order, scores, d);
+            sortByScore(order, scores);
+        }
+        return new ScoredMove(possibleMoves.elementAt(bestIndex), bestScore, null);
+    }
+
+    /**
+     * This method searches all moves of the root to a depth.
+     * @param position The packed root position
+     * @param history The positions of the game, ending with the root
+     * @param order The indices of the moves in the order to search them
+     * @param scores The array the score of every move is written to, which
+     * is an upper bound for the moves that aren't the best
+     * @param depth The search depth
+     * @throws IOException when a worker fails
+     */
+    private void searchRoot(final long position[], final PositionHistory history, int order[],
+            final int scores[], final int depth) throws IOException {
+        // The first move gives a score to beat
+        Connection first = connections.elementAt(0);
+        bestIndex = order[0];
+        bestScore = first.score(position, bestIndex, depth, -INFINITY, INFINITY, history);
+        scores[bestIndex] = bestScore;
+
+        final ConcurrentLinkedQueue<Integer> queue = new ConcurrentLinkedQueue<Integer>();
+        for (int i=1; i<order.length; i++) {
+            queue.add(order[i]);
+        }
+        Vector<Future<?>> futures = new Vector<Future<?>>();
+        for (final Connection c : connections) {
+            futures.add(pool.submit(() -> {
+                Integer index;
+                while ((index = queue.poll()) != null) {
+                    int beat = getBestScore();
+                    int score = c.score(position, index, depth, beat, beat+1, history);
+                    if (score > beat) {
+                        // Better than the best at the time; find out how much
+                        score = c.score(position, index, depth, getBestScore(), INFINITY, history);
+                    }
+                    update(index, score, scores);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Search interrupted", ex);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException ? (IOException)ex.getCause()
+                    : new IOException("Search failed", ex.getCause());
+        }
+    }
+
+    /**
+     * This method returns the best score of the iteration so far.
+     * @return The score
+     */
+    private synchronized int getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * This method records the score of a move.
+     * @param index The index of the move
+     * @param score The score
+     * @param scores The scores of all moves
+     */
+    private synchronized void update(int index, int score, int scores[]) {
+        scores[index] = score;
+        if (score > bestScore) {
+            bestScore = score;
+            bestIndex = index;
+        }
+    }
+
+    /**
+     * This method sorts move indices from the highest score to the lowest,
+     * keeping the order of moves with equal scores.
+     * @param order The indices of the moves
+     * @param scores The score of every move
+     */
+    private static void sortByScore(int order[], int scores[]) {
+        for (int i=1; i<order.length; i++) {
+            int index = order[i];
+            int j = i;
+            while (j > 0 && scores[order[j-1]] < scores[index]) {
+                order[j] = order[j-1];
+                j--;
+            }
+            order[j] = index;
+        }
+    }
+
+    /**
+     * This method returns the number of nodes the workers searched for the
+     * last search.
+     * @return The number of nodes
+     */
+    public synchronized long getNodeCount() {
+        return nodes;
+    }
+
+    /**
+     * This method adds to the node count.
+     * @param n The number of nodes
+     */
+    private synchronized void addNodes(long n) {
+        nodes += n;
+    }
+
+    /**
+     * This method closes the connections to the workers, which keep running.
+     */
+    public void close() {
+        pool.shutdown();
+        for (Connection c : connections) {
+            c.close();
+        }
+    }
+
+    /**
+     * This class is the connection to one worker.
+     */
+    private class Connection {
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        /**
+         * The constructor
+         * @param address The address of the worker
+         * @throws IOException when the worker can't be reached
+         */
+        private Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * This method lets the worker score a move of the root.
+         * @param position The packed root position
+         * @param moveIndex The index of the move in the order of MoveGen
+         * @param depth The search depth
+         * @param lowest The low cut-off value
+         * @param highest The high cut-off value
+         * @param history The positions of the game, ending with the root
+         * @return The score of the move
+         * @throws IOException when the worker fails
+         */
+        private int score(long position[], int moveIndex, int depth, int lowest, int highest,
+                PositionHistory history) throws IOException {
+            SearchWorker.writeRequest(out, position, moveIndex, depth, lowest, highest, history);
+            int score = in.readShort();
+            addNodes(in.readLong());
+            return score;
+        }
+
+        /**
+         * This method tells the worker the coordinator is done and closes
+         * the connection.
+         */
+        private void close() {
+            try {
+                out.writeByte(SearchWorker.QUIT);
+                out.flush();
+                socket.close();
+            } catch (IOException ex) {
+                // The worker is gone already
+            }
+        }
+    }
+
+    /**
+     * This method starts worker processes on this machine, with the class
+     * path of this process.
+     * @param n The number of workers
+     * @param addresses The vector the addresses of the workers are added to
+     * @return A vector with the processes
+     * @throws IOException when a worker can't be started
+     */
+    public static Vector<Process> startLocalWorkers(int n, Vector<InetSocketAddress> addresses) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Vector<Process> processes = new Vector<Process>();
+        for (int i=0; i<n; i++) {
+            ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "SearchWorker");
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            Process p = builder.start();
+            processes.add(p);
+            // The worker prints its port when it is ready
+            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getInputStream()));
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Worker " + i + " didn't start");
+            }
+            addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(line.trim())));
+        }
+        return processes;
+    }
+
+    /**
+     * This method creates the positions of the benchmark, after random
+     * openings, leaving out positions with fewer than three moves.
+     * @param n The number of positions
+     * @param colors The vector the player to move of every position is
+     * added to
+     * @return A vector with the boards
+     */
+    private static Vector<Board> benchmarkPositions(int n, Vector<PlayerColor> colors) {
+        Vector<Board> boards = new Vector<Board>();
+        Random random = new Random(1);
+        while (boards.size() < n) {
+            Board board = new Board();
+            PlayerColor pc = PlayerColor.BLACK;
+            for (int ply=0; ply<8; ply++) {
+                Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+                if (possibleMoves.isEmpty()) {
+                    break;
+                }
+                board.executeMove(possibleMoves.elementAt(random.nextInt(possibleMoves.size())));
+                pc = pc.opponent();
+            }
+            if (MoveGen.generatePossibleMoves(board, pc).size() >= 3) {
+                boards.add(board);
+                colors.add(pc);
+            }
+        }
+        return boards;
+    }
+
+    /**
+     * The main method
+     * @param args The depth and the number of local workers, or the depth
+     * and the addresses of running workers
+     * @throws Exception when a worker fails
+     */
+    public static void main(String args[]) throws Exception {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        Vector<InetSocketAddress> addresses = new Vector<InetSocketAddress>();
+        Vector<Process> processes = new Vector<Process>();
+        if (args.length > 1 && args[1].contains(":")) {
+            for (int i=1; i<args.length; i++) {
+                int colon = args[i].lastIndexOf(':');
+                addresses.add(new InetSocketAddress(args[i].substring(0, colon),
+                        Integer.parseInt(args[i].substring(colon+1))));
+            }
+        } else {
+            int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            processes = startLocalWorkers(workers, addresses);
+        }
+
+        Vector<PlayerColor> colors = new Vector<PlayerColor>();
+        Vector<Board> boards = benchmarkPositions(4, colors);
+        double localTotal = 0;
+        double distributedTotal = 0;
+        DistributedSearch distributed = new DistributedSearch(addresses);
+        System.out.printf("depth %d, %d workers%n", depth, addresses.size());
+        try {
+            for (int i=0; i<boards.size(); i++) {
+                Board board = boards.elementAt(i);
+                PlayerColor pc = colors.elementAt(i);
+
+                final int localScore[] = new int[1];
+                Search search = new Search();
+                long start = System.nanoTime();
+                Move localMove = search.getComputerMove(board, pc, null, depth, (d, best, score, n) -> {
+                    localScore[0] = score;
+                    return true;
+                });
+                double local = (System.nanoTime() - start) / 1e9;
+
+                start = System.nanoTime();
+                ScoredMove sm = distributed.search(board, pc, null, depth);
+                double remote = (System.nanoTime() - start) / 1e9;
+                localTotal += local;
+                distributedTotal += remote;
+                System.out.printf("position %d  one process %s %d %.2f s  workers %s %d %.2f s  %d nodes  speedup %.2f%s%n",
+                        i, localMove, localScore[0], local, sm.getMove(), sm.getScore(), remote,
+                        distributed.getNodeCount(), local / remote,
+                        sm.getScore() == localScore[0] ? "" : "  SCORES DIFFER");
+            }
+            System.out.printf("total  one process %.2f s  workers %.2f s  speedup %.2f%n",
+                    localTotal, distributedTotal, localTotal / distributedTotal);
+        } finally {
+            distributed.close();
+            for (Process p : processes) {
+                p.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * The interface of a computer player. Search, the alpha-beta engine, and
+ * MonteCarloSearch implement it, so games and tournaments can use either.
+ * @author Aswin van Woudenberg
+ */
+public interface Engine {
+    /**
+     * This method calculates the move to make next. It should not be called
+     * when the game has already ended.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @return The move, or null if there are no moves.
+     */
+    Move getComputerMove(Board board, PlayerColor pc);
+
+    /**
+     * This method calculates the move to make next at a level, which limits
+     * the depth, the nodes or the time of the search.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current
+     * position, or null if they are unknown.
+     * @param level The level
+     * @return The move, or null if there are no moves.
+     */
+    Move getComputerMove(Board board, PlayerColor pc, PositionHistory history, Level level);
+
+    /**
+     * This method stops a running search, which then returns the best move
+     * found so far, whatever its level. It can be called from any thread.
+     * It only affects a search that is running: every search starts
+     * unstopped, so a stop that comes before the search starts is ignored.
+     */
+    void stop();
+}
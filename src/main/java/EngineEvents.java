@@ -0,0 +1,227 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class holds the Java Flight Recorder events of the engine and the
+ * user interface, so engine latency can be related to garbage collection
+ * and CPU load in a recording.
+ *
+ * All events are disabled unless a recording enables them, and a disabled
+ * event costs no more than an object the JIT compiler removes, so the code
+ * that emits them doesn't check whether anyone listens. Events that would
+ * occur for every node, such as the probes of the transposition table, are
+ * counted by the search and reported with the search event instead.
+ *
+ * The settings in the resource checkers.jfc enable them. They can be used
+ * with -XX:StartFlightRecording:settings=checkers.jfc after copying the file
+ * from the jar, or by setting the system property checkers.jfr to the file
+ * to record to, in which case startRecording adds them to the default
+ * settings of the JDK.
+ * @author Aswin van Woudenberg
+ */
+public class EngineEvents {
+    private static final String SETTINGS = "/checkers.jfc";
+
+    /**
+     * This class is the event of a search, from start to end.
+     */
+    @Name("checkers.Search")
+    @Label("Search")
+    @Category({"Checkers", "Engine"})
+    @Description("A search for the best move")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class SearchEvent extends Event {
+        @Label("Kind")
+        @Description("fixed depth, iterative, best moves or move score")
+        String kind;
+
+        @Label("Player")
+        String player;
+
+        @Label("Depth")
+        @Description("The depth of the last completed iteration")
+        int depth;
+
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Best Move")
+        String bestMove;
+
+        @Label("Score")
+        int score;
+
+        @Label("Outcome")
+        @Description("completed, stopped or cancelled")
+        String outcome;
+
+        @Label("Table Probes")
+        long tableProbes;
+
+        @Label("Table Hits")
+        long tableHits;
+
+        @Label("Cache Probes")
+        long cacheProbes;
+
+        @Label("Cache Hits")
+        long cacheHits;
+    }
+
+    /**
+     * This class is the event of one iteration of an iterative search.
+     */
+    @Name("checkers.Iteration")
+    @Label("Search Iteration")
+    @Category({"Checkers", "Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class IterationEvent extends Event {
+        @Label("Depth")
+        int depth;
+
+        @Label("Nodes")
+        @Description("The nodes of the search so far")
+        long nodes;
+
+        @Label("Best Move")
+        String bestMove;
+
+        @Label("Score")
+        int score;
+    }
+
+    /**
+     * This class is the event of a search that was cancelled by interrupting
+     * its thread, as the game does when a move is taken back while the
+     * computer thinks.
+     */
+    @Name("checkers.SearchCancelled")
+    @Label("Search Cancelled")
+    @Category({"Checkers", "Engine"})
+    @Enabled(false)
+    public static class CancelEvent extends Event {
+        @Label("Nodes")
+        long nodes;
+
+        @Label("Depth")
+        @Description("The depth of the last completed iteration")
+        int depth;
+    }
+
+    /**
+     * This class is the event of a lookup in the opening book.
+     */
+    @Name("checkers.BookProbe")
+    @Label("Book Probe")
+    @Category({"Checkers", "Engine"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class BookProbeEvent extends Event {
+        @Label("Candidates")
+        @Description("The number of moves that could be chosen")
+        int candidates;
+
+        @Label("Move")
+        @Description("The chosen move, or null when the book has none")
+        String move;
+    }
+
+    /**
+     * This class is the event of executing a move in the game, on the event
+     * dispatch thread, including the updates of its listeners.
+     */
+    @Name("checkers.MoveApplied")
+    @Label("Move Applied")
+    @Category({"Checkers", "User Interface"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class MoveAppliedEvent extends Event {
+        @Label("Move")
+        String move;
+
+        @Label("Player")
+        String player;
+
+        @Label("Player Type")
+        String playerType;
+    }
+
+    /**
+     * This class is the event of painting the board.
+     */
+    @Name("checkers.Repaint")
+    @Label("Board Repaint")
+    @Category({"Checkers", "User Interface"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RepaintEvent extends Event {
+        @Label("Squares")
+        @Description("The number of squares painted")
+        int squares;
+
+        @Label("Sprites Rendered")
+        @Description("True if the images of the pieces were rendered again")
+        boolean spritesRendered;
+    }
+
+    /**
+     * This method starts a recording when the system property checkers.jfr
+     * names a file. The recording uses the default settings of the JDK with
+     * the events of this class added, and is written to the file when the
+     * program exits.
+     * @return The recording, or null if none was started.
+     */
+    public static Recording startRecording() {
+        String file = System.getProperty("checkers.jfr");
+        if (file == null) {
+            return null;
+        }
+        try {
+            Map<String, String> settings = new HashMap<String, String>(
+                    Configuration.getConfiguration("default").getSettings());
+            settings.putAll(getConfiguration().getSettings());
+            Recording recording = new Recording(settings);
+            recording.setName("checkers");
+            recording.setDestination(Paths.get(file));
+            recording.setToDisk(true);
+            recording.setDumpOnExit(true);
+            recording.start();
+            return recording;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * This method reads the settings that enable the events of this class.
+     * @return The configuration
+     * @throws IOException when the resource can't be read
+     * @throws ParseException when the resource isn't a valid settings file
+     */
+    public static Configuration getConfiguration() throws IOException, ParseException {
+        try (InputStream in = EngineEvents.class.getResourceAsStream(SETTINGS)) {
+            if (in == null) {
+                throw new IOException("No resource " + SETTINGS);
+            }
+            return Configuration.create(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+}
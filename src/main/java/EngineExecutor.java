@@ -0,0 +1,144 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class runs the searches of the computer player on threads of its own,
+ * instead of on the shared pool of SwingWorker, which has no priority
+ * control and runs other tasks too. The number of threads and their priority
+ * are chosen when it is created. A game searches on one thread, so a search
+ * that is cancelled has finished before the next one starts with the same
+ * Search object.
+ *
+ * Searches return a CompletableFuture. Cancelling it with cancel(true)
+ * interrupts the search, which stops it within a few thousand nodes. Results
+ * are completed on the search thread; a user interface that wants them on
+ * the event dispatch thread can use thenAcceptAsync with
+ * SwingUtilities::invokeLater, while progress is reported on the search
+ * thread, so it doesn't flood the event queue.
+ * @author Aswin van Woudenberg
+ */
+public class EngineExecutor {
+    private static final AtomicInteger executors = new AtomicInteger();
+
+    private ExecutorService pool;
+    private int threads;
+    private int priority;
+
+    /**
+     * The constructor
+     * @param threads The number of search threads
+     * @param priority The priority of the threads, from Thread.MIN_PRIORITY
+     * to Thread.MAX_PRIORITY
+     */
+    public EngineExecutor(int threads, int priority) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+            throw new IllegalArgumentException("priority must be between "
+                    + Thread.MIN_PRIORITY + " and " + Thread.MAX_PRIORITY);
+        }
+        this.threads = threads;
+        this.priority = priority;
+        final int id = executors.incrementAndGet();
+        final AtomicInteger count = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "EngineExecutor-" + id + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(this.priority);
+            return t;
+        });
+    }
+
+    /**
+     * This method returns the number of search threads.
+     * @return The number of threads
+     */
+    public int getThreadCount() {
+        return threads;
+    }
+
+    /**
+     * This method returns the priority of the search threads.
+     * @return The priority
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * This method queues a task, usually one that finds a move. Cancelling
+     * the returned future interrupts the task when it is running.
+     * @param <T> The type of the result
+     * @param task The task
+     * @return A future for the result
+     * @throws java.util.concurrent.RejectedExecutionException when the
+     * executor was shut down
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        final FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            protected void done() {
+                try {
+                    result.complete(get());
+                } catch (ExecutionException ex) {
+                    result.completeExceptionally(ex.getCause());
+                } catch (CancellationException | InterruptedException ex) {
+                    result.cancel(false);
+                }
+            }
+        };
+        result.whenComplete((m, ex) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        pool.execute(future);
+        return result;
+    }
+
+    /**
+     * This method queues a search for the move to play at a level. The board
+     * and history are copied, so the caller may change them.
+     * @param search The search, which must not be used by other threads
+     * until the future is done
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current
+     * position, or null if they are unknown.
+     * @param level The level
+     * @param listener The listener told about every completed depth on the
+     * search thread, or null.
+     * @return A future for the move, which is null if there are no moves.
+     */
+    public CompletableFuture<Move> submit(final Search search, Board board, final PlayerColor pc,
+            PositionHistory history, final Level level, final ProgressListener listener) {
+        final Board b = board.copy();
+        final PositionHistory h = history == null ? null : history.copy();
+        return submit(() -> {
+            search.setProgressListener(listener);
+            try {
+                return search.getComputerMove(b, pc, h, level);
+            } finally {
+                search.setProgressListener(null);
+            }
+        });
+    }
+
+    /**
+     * This method stops all threads. Searches that are running are
+     * interrupted and queued searches are cancelled.
+     */
+    public void shutdown() {
+        for (Runnable r : pool.shutdownNow()) {
+            ((FutureTask<?>)r).cancel(false);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import java.awt.BorderLayout;
+import java.util.Vector;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class shows which moves were played in a position of a game database,
+ * how often, and with what results.
+ * @author Aswin van Woudenberg
+ */
+public class ExplorerPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String COLUMNS[] = {
+        "Move", "Games", "Black wins", "Draws", "White wins", "Score"
+    };
+
+    private GameDatabase database;
+    private Vector<MoveStatistics> moves;
+    private PlayerColor player;
+    private JLabel summary;
+    private MoveTableModel model;
+
+    /**
+     * The constructor
+     * @param database The game database
+     */
+    public ExplorerPanel(GameDatabase database) {
+        super(new BorderLayout());
+        this.database = database;
+        moves = new Vector<MoveStatistics>();
+        player = PlayerColor.BLACK;
+        summary = new JLabel(" ");
+        model = new MoveTableModel();
+        JTable table = new JTable(model);
+        table.setAutoCreateRowSorter(true);
+        add(summary, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+
+    /**
+     * This method shows the moves played in a position.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     */
+    public void showPosition(Board board, PlayerColor pc) {
+        moves = database.lookup(board, pc);
+        player = pc;
+        int games = 0;
+        for (MoveStatistics s : moves) {
+            games += s.getGames();
+        }
+        summary.setText(games + " of " + database.getGameCount() + " games reached this position");
+        model.fireTableDataChanged();
+    }
+
+    /**
+     * This class presents the statistics of the moves as a table.
+     */
+    private class MoveTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public int getRowCount() {
+            return moves.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 0: return String.class;
+                case 5: return Double.class;
+                default: return Integer.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            MoveStatistics s = moves.elementAt(row);
+            switch (column) {
+                case 0: return Util.moveToNotation(s.getMove());
+                case 1: return s.getGames();
+                case 2: return s.getBlackWins();
+                case 3: return s.getDraws();
+                case 4: return s.getWhiteWins();
+                default: return Math.round(s.getScore(player) * 1000) / 10.0;
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class analyses a game after it has ended, to show where the players
+ * went wrong. Every position of the game is searched at a level, and the
+ * move that was played is compared with the best move. A move that loses at
+ * least the blunder threshold is a blunder.
+ *
+ * The positions are searched in parallel on the threads of an
+ * EngineExecutor. Every position is searched with a Search that no other
+ * position uses at the same time, but they share one transposition table,
+ * so what is found for one position helps to search the positions that
+ * follow it. Every position has its own history of the game, but the
+ * search doesn't store scores that depend on it, such as draws by
+ * repetition (see Search), so a draw found through the history of one
+ * position doesn't change the scores of another. With a thread for every
+ * position the analysis takes about as long as the slowest position.
+ *
+ * The played move is searched first at the root, so its score and that of
+ * the best move come from the same depth, even when the level's budget
+ * stops the search in the middle of a depth.
+ *
+ * Usage: GameAnalysis [millis] [threads] [seed]
+ *   plays a game of the computer against itself and analyses it with one
+ *   thread and with the given number of threads, the given time per position.
+ * @author Aswin van Woudenberg
+ */
+public class GameAnalysis {
+    /**
+     * The default blunder threshold, about a pawn.
+     */
+    public static final int DEFAULT_BLUNDER_THRESHOLD = 100;
+
+    // The shared transposition table has 2^TABLE_SIZE_BITS entries
+    private static final int TABLE_SIZE_BITS = 20;
+
+    // A position with one move is only searched to score it
+    private static final int FORCED_DEPTH = 8;
+
+    private EngineExecutor executor;
+    private TranspositionTable table;
+    private Level level;
+    private int drawPlies;
+    private int blunderThreshold;
+
+    /**
+     * The constructor
+     * @param executor The executor the positions are searched on
+     * @param level The level every position is searched at
+     */
+    public GameAnalysis(EngineExecutor executor, Level level) {
+        this.executor = executor;
+        this.level = level;
+        table = new TranspositionTable(TABLE_SIZE_BITS);
+        blunderThreshold = DEFAULT_BLUNDER_THRESHOLD;
+    }
+
+    /**
+     * This method sets the move-count draw rule of the game.
+     * @param moves The number of moves per player without a capture or a pawn
+     * move after which the game is a draw, or 0 to not use the rule.
+     */
+    public void setDrawRule(int moves) {
+        drawPlies = 2*moves;
+    }
+
+    /**
+     * This method sets how much worse than the best move a move must be to
+     * count as a blunder.
+     * @param threshold The difference in score
+     */
+    public void setBlunderThreshold(int threshold) {
+        blunderThreshold = threshold;
+    }
+
+    /**
+     * This method analyses a game that started from the start position.
+     * Cancelling the returned future cancels the searches.
+     * @param moves The moves of the game
+     * @return A future for the analysis of every position in which a move
+     * was played, in the order of the game
+     */
+    public CompletableFuture<Vector<PositionAnalysis>> analyse(Vector<Move> moves) {
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        PositionHistory history = new PositionHistory();
+        history.setDrawPlies(drawPlies);
+        history.push(Zobrist.hashKey(board, pc), true);
+
+        // The searches of this analysis, each used by one position at a time
+        final ConcurrentLinkedQueue<Search> searches = new ConcurrentLinkedQueue<Search>();
+        final Vector<CompletableFuture<PositionAnalysis>> parts = new Vector<CompletableFuture<PositionAnalysis>>();
+        for (int ply=0; ply<moves.size(); ply++) {
+            final int p = ply;
+            final Board b = board.copy();
+            final PlayerColor color = pc;
+            final PositionHistory h = history.copy();
+            final Move played = moves.elementAt(ply);
+            parts.add(executor.submit(() -> {
+                Search search = searches.poll();
+                if (search == null) {
+                    search = new Search(table);
+                }
+                try {
+                    return analysePosition(search, p, b, color, h, played);
+                } finally {
+                    searches.add(search);
+                }
+            }));
+
+            history.push(history.lastKey() ^ Zobrist.moveKey(board, played),
+                    PositionHistory.isIrreversible(board, played));
+            board.executeMove(played);
+            pc = pc.opponent();
+        }
+
+        final CompletableFuture<Vector<PositionAnalysis>> result = CompletableFuture
+                .allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    Vector<PositionAnalysis> analysis = new Vector<PositionAnalysis>();
+                    for (CompletableFuture<PositionAnalysis> f : parts) {
+                        analysis.add(f.join());
+                    }
+                    return analysis;
+                });
+        result.whenComplete((a, ex) -> {
+            if (result.isCancelled()) {
+                for (CompletableFuture<PositionAnalysis> f : parts) {
+                    f.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * This method analyses one position, on a thread of the executor.
+     * @param search The search, which no other position uses meanwhile
+     * @param ply The number of moves played before the position
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param history The positions of the game, ending with this one
+     * @param played The move that was played
+     * @return The analysis
+     */
+    private PositionAnalysis analysePosition(final Search search, int ply, Board board, PlayerColor pc,
+            PositionHistory history, Move played) {
+        final ScoredMove last[] = new ScoredMove[1];
+        final int completed[] = new int[1];
+        final int playedScore[] = new int[1];
+        search.setFirstMove(played);
+        search.setProgressListener((depth, sm, nodes) -> {
+            last[0] = sm;
+            completed[0] = depth;
+            playedScore[0] = search.getFirstMoveScore();
+        });
+        try {
+            search.getComputerMove(board, pc, history, level);
+        } finally {
+            search.setProgressListener(null);
+            search.setFirstMove(null);
+        }
+
+        ScoredMove best = last[0];
+        int depth = completed[0];
+        if (best == null) {
+            // The move was forced
+            depth = level.isFixedDepth() ? level.getDepth() : FORCED_DEPTH;
+            playedScore[0] = search.getMoveScore(board, pc, history, played, depth,
+                    -Search.INFINITY, Search.INFINITY);
+            best = new ScoredMove(played, playedScore[0], new Vector<Move>());
+            best.getPrincipalVariation().add(played);
+        } else if (played.equals(best.getMove())) {
+            playedScore[0] = best.getScore();
+        }
+        return new PositionAnalysis(ply, pc, played, playedScore[0], best, depth,
+                best.getScore() - playedScore[0] >= blunderThreshold);
+    }
+
+    /**
+     * This method returns the score curve of an analysed game: the score of
+     * every position for black.
+     * @param analysis The analysis of the positions of the game
+     * @return An array with a score for every position
+     */
+    public static int[] scoreCurve(Vector<PositionAnalysis> analysis) {
+        int curve[] = new int[analysis.size()];
+        for (int i=0; i<curve.length; i++) {
+            curve[i] = analysis.elementAt(i).getBlackScore();
+        }
+        return curve;
+    }
+
+    /**
+     * This method returns the blunders of an analysed game.
+     * @param analysis The analysis of the positions of the game
+     * @return A vector with the analysis of the positions in which a blunder
+     * was played
+     */
+    public static Vector<PositionAnalysis> blunders(Vector<PositionAnalysis> analysis) {
+        Vector<PositionAnalysis> blunders = new Vector<PositionAnalysis>();
+        for (PositionAnalysis a : analysis) {
+            if (a.isBlunder()) {
+                blunders.add(a);
+            }
+        }
+        return blunders;
+    }
+
+    /**
+     * This method writes the analysis of a game as text: a line for every
+     * move, followed by the blunders.
+     * @param analysis The analysis of the positions of the game
+     * @return The text
+     */
+    public static String report(Vector<PositionAnalysis> analysis) {
+        StringBuilder sb = new StringBuilder();
+        for (PositionAnalysis a : analysis) {
+            sb.append(String.format("%+6d  %s%n", a.getBlackScore(), a));
+        }
+        Vector<PositionAnalysis> blunders = blunders(analysis);
+        sb.append(String.format("%nBlunders: %d%n", blunders.size()));
+        for (PositionAnalysis a : blunders) {
+            sb.append(String.format("%s%n", a));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * This method plays a game of the computer against itself from random
+     * opening moves.
+     * @param random The source of the opening moves
+     * @param depth The search depth
+     * @return The moves of the game
+     */
+    private static Vector<Move> playGame(Random random, int depth) {
+        Vector<Move> moves = new Vector<Move>();
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        PositionHistory history = new PositionHistory();
+        history.setDrawPlies(80);
+        history.push(Zobrist.hashKey(board, pc), true);
+        Search search = new Search();
+        search.setSearchDepth(depth);
+        while (moves.size() < 200 && history.repetitions(2) < 2 && !history.isMoveLimitReached()) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                break;
+            }
+            Move move = moves.size() < 6 ? possibleMoves.elementAt(random.nextInt(possibleMoves.size()))
+                    : search.getComputerMove(board, pc, history);
+            moves.add(move);
+            history.push(history.lastKey() ^ Zobrist.moveKey(board, move),
+                    PositionHistory.isIrreversible(board, move));
+            board.executeMove(move);
+            pc = pc.opponent();
+        }
+        return moves;
+    }
+
+    /**
+     * The main method
+     * @param args The time per position in milliseconds, the number of
+     * threads and the seed of the game
+     * @throws InterruptedException when interrupted
+     * @throws ExecutionException when the analysis fails
+     */
+    public static void main(String args[]) throws InterruptedException, ExecutionException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 200;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        Vector<Move> moves = playGame(new Random(seed), 4);
+        Level level = new Level(millis + " ms", 0, 0, millis);
+        System.out.printf("%d moves, %d ms per position%n", moves.size(), millis);
+        Vector<PositionAnalysis> analysis = null;
+        for (int n : new int[]{1, threads}) {
+            EngineExecutor executor = new EngineExecutor(n, Thread.NORM_PRIORITY);
+            GameAnalysis gameAnalysis = new GameAnalysis(executor, level);
+            gameAnalysis.setDrawRule(40);
+            long start = System.nanoTime();
+            analysis = gameAnalysis.analyse(moves).get();
+            System.out.printf("%d threads: %.1f s%n", n, (System.nanoTime() - start) / 1e9);
+            executor.shutdown();
+        }
+        System.out.println();
+        System.out.print(report(analysis));
+    }
+}
@@ -0,0 +1,26 @@
+import java.util.EventObject;
+
+/**
+ * This class describes a change of a CheckersGame. It is sent to the
+ * GameListeners, which read the new state from the game.
+ * @author Aswin van Woudenberg
+ */
+public class GameChangeEvent extends EventObject {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The constructor
+     * @param source The game that changed
+     */
+    public GameChangeEvent(CheckersGame source) {
+        super(source);
+    }
+
+    /**
+     * This method returns the game that changed.
+     * @return The game
+     */
+    public CheckersGame getGame() {
+        return (CheckersGame)getSource();
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * This class implements a chess clock for both players. Every player starts
+ * with the same time and gets an increment for every move made. At most one
+ * of the clocks runs at a time. The clock is used from the event dispatch
+ * thread as well as from the search, so all methods are synchronized.
+ * @author Aswin van Woudenberg
+ */
+public class GameClock {
+    private long initial;
+    private long increment;
+    private long remaining[];
+    private PlayerColor running;
+    private long startedAt;
+
+    /**
+     * The constructor. Both clocks are stopped.
+     * @param initial The time of every player at the start in milliseconds
+     * @param increment The time added for every move in milliseconds
+     */
+    public GameClock(long initial, long increment) {
+        this.initial = initial;
+        this.increment = increment;
+        remaining = new long[2];
+        reset();
+    }
+
+    /**
+     * This method returns the index of a player in the remaining array.
+     * @param pc The PlayerColor
+     * @return The index
+     */
+    private static int index(PlayerColor pc) {
+        return pc == PlayerColor.BLACK ? 0 : 1;
+    }
+
+    /**
+     * This method stops the clocks and gives both players the initial time.
+     */
+    public synchronized void reset() {
+        remaining[0] = initial;
+        remaining[1] = initial;
+        running = null;
+    }
+
+    /**
+     * This method starts the clock of a player and stops the other one,
+     * without giving an increment.
+     * @param pc The PlayerColor whose clock should run
+     */
+    public synchronized void start(PlayerColor pc) {
+        stop();
+        running = pc;
+        startedAt = System.nanoTime();
+    }
+
+    /**
+     * This method stops the running clock, if any.
+     */
+    public synchronized void stop() {
+        if (running != null) {
+            remaining[index(running)] -= (System.nanoTime() - startedAt) / 1000000;
+            running = null;
+        }
+    }
+
+    /**
+     * This method is called when a player has made a move. The clock of the
+     * player stops, the player gets the increment and the clock of the
+     * opponent starts.
+     * @param pc The PlayerColor who made the move
+     */
+    public synchronized void press(PlayerColor pc) {
+        stop();
+        remaining[index(pc)] += increment;
+        start(pc.opponent());
+    }
+
+    /**
+     * This method returns the time a player has left, including the time
+     * used since the clock started.
+     * @param pc The PlayerColor
+     * @return The time in milliseconds, which is negative when the time is
+     * up.
+     */
+    public synchronized long getRemaining(PlayerColor pc) {
+        long r = remaining[index(pc)];
+        if (running == pc) {
+            r -= (System.nanoTime() - startedAt) / 1000000;
+        }
+        return r;
+    }
+
+    /**
+     * This method returns true if a player has no time left.
+     * @param pc The PlayerColor
+     * @return A boolean indicating whether the player has lost on time.
+     */
+    public boolean isFlagged(PlayerColor pc) {
+        return getRemaining(pc) <= 0;
+    }
+
+    /**
+     * This method returns the player whose clock is running.
+     * @return The PlayerColor, or null if both clocks are stopped.
+     */
+    public synchronized PlayerColor getRunning() {
+        return running;
+    }
+
+    /**
+     * This method returns the time every player starts with.
+     * @return The time in milliseconds
+     */
+    public long getInitial() {
+        return initial;
+    }
+
+    /**
+     * This method returns the time added for every move.
+     * @return The time in milliseconds
+     */
+    public long getIncrement() {
+        return increment;
+    }
+
+    /**
+     * This method formats a time as minutes and seconds, with tenths of a
+     * second when less than twenty seconds are left.
+     * @param millis The time in milliseconds
+     * @return The formatted time, like 4:59 or 0:09.7
+     */
+    public static String format(long millis) {
+        millis = Math.max(millis, 0);
+        long seconds = millis / 1000;
+        String text = String.format("%d:%02d", seconds / 60, seconds % 60);
+        if (millis < 20000) {
+            text += "." + (millis / 100) % 10;
+        }
+        return text;
+    }
+}
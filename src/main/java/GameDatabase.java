@@ -0,0 +1,172 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Vector;
+
+/**
+ * This class answers which moves were played in a position of a collection
+ * of games, how often, and with what results. It reads an index file built
+ * by GameDatabaseBuilder. The file is mapped into memory outside the Java
+ * heap, and a lookup is a binary search on the hash key of the position.
+ *
+ * The file starts with a header of HEADER_SIZE bytes: the 4 bytes "CKDB", the
+ * format version as int, the number of records and the number of games as
+ * longs. It is followed by records of RECORD_SIZE bytes, sorted by key and
+ * then by move:
+ *
+ *  bytes  0-7   the hash key of the position
+ *  bytes  8-15  the move, as returned by Move.getPath
+ *  bytes 16-19  the number of games
+ *  bytes 20-23  the number of those games won by black
+ *  bytes 24-27  the number of those games won by white
+ *  bytes 28-31  the number of those games that were drawn
+ *
+ * Positions are stored in their canonical form (see Symmetry), so when white
+ * is to move the key, the move and the colours of the results are those of
+ * the mirror image of the position.
+ * @author Aswin van Woudenberg
+ */
+public class GameDatabase implements Closeable {
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 32;
+    static final int MAGIC = 0x434B4442; // "CKDB"
+    static final int VERSION = 3;
+
+    // Every mapping of the file holds 2^SEGMENT_BITS records
+    private static final int SEGMENT_BITS = 25;
+
+    private FileChannel channel;
+    private MappedByteBuffer segments[];
+    private long records;
+    private long games;
+
+    /**
+     * The constructor opens an index file.
+     * @param file The index file
+     * @throws IOException when the file can't be read or isn't an index
+     */
+    public GameDatabase(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a game database");
+        }
+        records = header.getLong();
+        games = header.getLong();
+        int count = (int)((records + (1L << SEGMENT_BITS) - 1) >>> SEGMENT_BITS);
+        segments = new MappedByteBuffer[count];
+        for (int s=0; s<count; s++) {
+            long first = (long)s << SEGMENT_BITS;
+            long size = Math.min(1L << SEGMENT_BITS, records - first) * RECORD_SIZE;
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * RECORD_SIZE, size);
+        }
+    }
+
+    /**
+     * This method returns the hash key positions are indexed by, which is
+     * the same for a position and its mirror image.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @return The key
+     */
+    public static long key(Board board, PlayerColor pc) {
+        return Zobrist.canonicalKey(board, pc);
+    }
+
+    /**
+     * This method returns a long of a record.
+     * @param record The index of the record
+     * @param offset The offset of the long within the record
+     * @return The long
+     */
+    private long getLong(long record, int offset) {
+        return segments[(int)(record >>> SEGMENT_BITS)].getLong(
+                (int)(record & ((1L << SEGMENT_BITS) - 1)) * RECORD_SIZE + offset);
+    }
+
+    /**
+     * This method returns an int of a record.
+     * @param record The index of the record
+     * @param offset The offset of the int within the record
+     * @return The int
+     */
+    private int getInt(long record, int offset) {
+        return segments[(int)(record >>> SEGMENT_BITS)].getInt(
+                (int)(record & ((1L << SEGMENT_BITS) - 1)) * RECORD_SIZE + offset);
+    }
+
+    /**
+     * This method finds the moves played in a position, the most played
+     * move first. Moves that aren't legal in the position, which can only
+     * happen when two positions have the same key, are left out.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @return A vector with the statistics of every move, empty if the
+     * position doesn't occur in the games.
+     */
+    public Vector<MoveStatistics> lookup(Board board, PlayerColor pc) {
+        Vector<MoveStatistics> result = new Vector<MoveStatistics>();
+        long key = key(board, pc);
+        long low = 0, high = records;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getLong(middle, 0) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        boolean mirrored = !Symmetry.isCanonical(pc);
+        for (long r=low; r<records && getLong(r, 0) == key; r++) {
+            Move m = Symmetry.fromCanonical(Move.fromPath(getLong(r, 8)), pc);
+            if (m != null && MoveGen.isLegalMove(board, pc, m)) {
+                int blackWins = getInt(r, mirrored ? 24 : 20);
+                int whiteWins = getInt(r, mirrored ? 20 : 24);
+                result.add(new MoveStatistics(m, getInt(r, 16), blackWins, whiteWins, getInt(r, 28)));
+            }
+        }
+        Collections.sort(result, new Comparator<MoveStatistics>() {
+            @Override
+            public int compare(MoveStatistics a, MoveStatistics b) {
+                return Integer.compare(b.getGames(), a.getGames());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * This method returns the number of records, one for every different
+     * move in every different position.
+     * @return The number of records
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * This method returns the number of games the index was built from.
+     * @return The number of games
+     */
+    public long getGameCount() {
+        return games;
+    }
+
+    /**
+     * This method closes the file. The mappings are released when they are
+     * garbage collected.
+     * @throws IOException when the file can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
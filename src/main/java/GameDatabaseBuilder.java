@@ -0,0 +1,653 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class builds the index file of a GameDatabase from a PDN file. The
+ * PDN file is split into chunks of about CHUNK_SIZE bytes at the start of a
+ * game, and the chunks are indexed in parallel. Every chunk is written to a
+ * sorted run file in a work directory. A run file only gets its final name
+ * when it is complete, so when building is interrupted, it can be started
+ * again and only the missing chunks are indexed. Finally the runs are merged
+ * into the index file and deleted.
+ *
+ * Every game has to start with a tag, like [Event "..."].
+ *
+ * Usage: GameDatabaseBuilder games.pdn index.ckdb [work directory] [threads]
+ * @author Aswin van Woudenberg
+ */
+public class GameDatabaseBuilder {
+    private static final long CHUNK_SIZE = 8L << 20;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final byte BLACK_WINS = 1;
+    private static final byte WHITE_WINS = 2;
+    private static final byte DRAW = 3;
+
+    private Path pdn;
+    private Path workDirectory;
+    private int threads;
+    private int chunks;
+    private int resumed;
+
+    /**
+     * The constructor
+     * @param pdn The PDN file with the games
+     * @param workDirectory The directory for the run files
+     * @param threads The number of threads
+     */
+    public GameDatabaseBuilder(Path pdn, Path workDirectory, int threads) {
+        this.pdn = pdn;
+        this.workDirectory = workDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * This method checks whether a file is a run file of the current format.
+     * @param file The file
+     * @return A boolean indicating whether the run can be merged
+     */
+    private static boolean isRunFile(Path file) {
+        try {
+            new RunReader(file).close();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * This method builds the index file.
+     * @param index The index file
+     * @throws IOException when a file can't be read or written, or a game
+     * can't be read
+     * @throws InterruptedException when interrupted while waiting for the
+     * chunks
+     */
+    public void build(Path index) throws IOException, InterruptedException {
+        Files.createDirectories(workDirectory);
+        long boundaries[] = chunkBoundaries();
+        chunks = boundaries.length - 1;
+        resumed = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Vector<Future<Void>> futures = new Vector<Future<Void>>();
+        for (int k=0; k<chunks; k++) {
+            if (Files.exists(runFile(k))) {
+                if (isRunFile(runFile(k))) {
+                    resumed++;
+                    continue;
+                }
+                // A run of an earlier format is indexed again
+                Files.delete(runFile(k));
+            }
+            final int chunk = k;
+            final long from = boundaries[k], to = boundaries[k+1];
+            futures.add(pool.submit(() -> {
+                indexChunk(chunk, from, to);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException ex) {
+            pool.shutdownNow();
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException)ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+        merge(index);
+        for (int k=0; k<chunks; k++) {
+            Files.delete(runFile(k));
+        }
+    }
+
+    /**
+     * This method returns the number of chunks of the last build.
+     * @return The number of chunks
+     */
+    public int getChunkCount() {
+        return chunks;
+    }
+
+    /**
+     * This method returns the number of chunks of the last build that were
+     * already indexed by an earlier build.
+     * @return The number of chunks
+     */
+    public int getResumedCount() {
+        return resumed;
+    }
+
+    /**
+     * This method returns the run file of a chunk.
+     * @param chunk The number of the chunk
+     * @return The path of the run file
+     */
+    private Path runFile(int chunk) {
+        return workDirectory.resolve("run-" + chunk + ".ckdb");
+    }
+
+    /**
+     * This method splits the PDN file into chunks that start at the start of
+     * a game: a line starting with [ that doesn't follow another such line.
+     * The boundaries only depend on the file, so an interrupted build finds
+     * the same chunks again.
+     * @return The offsets of the chunks, followed by the file size
+     * @throws IOException when the file can't be read
+     */
+    private long[] chunkBoundaries() throws IOException {
+        Vector<Long> boundaries = new Vector<Long>();
+        boundaries.add(0L);
+        try (FileChannel fc = FileChannel.open(pdn, StandardOpenOption.READ)) {
+            long size = fc.size();
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            long nominal = CHUNK_SIZE;
+            while (nominal < size) {
+                // Start at the beginning of the line that holds the nominal offset
+                long pos = Math.max(boundaries.lastElement(), nominal - buffer.capacity());
+                long found = -1;
+                boolean previousIsTag = true;
+                boolean lineStart = pos == 0;
+                while (found < 0 && pos < size) {
+                    buffer.clear();
+                    int n = fc.read(buffer, pos);
+                    for (int i=0; i<n && found<0; i++, pos++) {
+                        byte b = buffer.get(i);
+                        if (lineStart && b != '\n' && b != '\r') {
+                            boolean tag = b == '[';
+                            if (tag && !previousIsTag && pos >= nominal) {
+                                found = pos;
+                            }
+                            previousIsTag = tag;
+                            lineStart = false;
+                        }
+                        if (b == '\n') {
+                            lineStart = true;
+                        }
+                    }
+                }
+                if (found < 0) {
+                    break;
+                }
+                boundaries.add(found);
+                nominal = found + CHUNK_SIZE;
+            }
+            boundaries.add(size);
+        }
+        long result[] = new long[boundaries.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = boundaries.elementAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * This method indexes the games of a chunk and writes them to its run
+     * file.
+     * @param chunk The number of the chunk
+     * @param from The offset of the chunk
+     * @param to The end of the chunk
+     * @throws IOException when a file can't be read or written, or a game
+     * can't be read
+     */
+    private void indexChunk(int chunk, long from, long to) throws IOException {
+        long keys[] = new long[1 << 16];
+        long moves[] = new long[1 << 16];
+        byte results[] = new byte[1 << 16];
+        int n = 0;
+        long gameCount = 0;
+        try (FileChannel fc = FileChannel.open(pdn, StandardOpenOption.READ)) {
+            PdnReader reader = new PdnReader(new RangeChannel(fc, from, to));
+            PdnGame game;
+            while ((game = reader.next()) != null) {
+                gameCount++;
+                byte result = resultCode(game.getResult());
+                Board board = game.getStartBoard();
+                PlayerColor pc = game.getStartColor();
+                long key = Zobrist.hashKey(board, pc);
+                for (Move m : game.getMoves()) {
+                    if (n == keys.length) {
+                        keys = Arrays.copyOf(keys, 2*n);
+                        moves = Arrays.copyOf(moves, 2*n);
+                        results = Arrays.copyOf(results, 2*n);
+                    }
+                    // Positions with white to move are stored as their mirror image
+                    keys[n] = Zobrist.canonicalKey(key, pc);
+                    moves[n] = Symmetry.toCanonical(m, pc).getPath();
+                    results[n] = Symmetry.isCanonical(pc) ? result : mirror(result);
+                    n++;
+                    key ^= Zobrist.moveKey(board, m);
+                    board.executeMove(m);
+                    pc = pc.opponent();
+                }
+            }
+        }
+        sort(keys, moves, results, 0, n-1);
+
+        Path tmp = workDirectory.resolve("run-" + chunk + ".tmp");
+        try (RunWriter writer = new RunWriter(tmp)) {
+            int i = 0;
+            while (i < n) {
+                int games = 0, blackWins = 0, whiteWins = 0, draws = 0;
+                int j = i;
+                for (; j<n && keys[j]==keys[i] && moves[j]==moves[i]; j++) {
+                    games++;
+                    if (results[j] == BLACK_WINS) {
+                        blackWins++;
+                    } else if (results[j] == WHITE_WINS) {
+                        whiteWins++;
+                    } else if (results[j] == DRAW) {
+                        draws++;
+                    }
+                }
+                writer.write(keys[i], moves[i], games, blackWins, whiteWins, draws);
+                i = j;
+            }
+            writer.setGameCount(gameCount);
+        }
+        Files.move(tmp, runFile(chunk), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method returns the code of a PDN result.
+     * @param result The result, like 1-0
+     * @return BLACK_WINS, WHITE_WINS, DRAW or 0 if the result is unknown.
+     */
+    private static byte resultCode(String result) {
+        switch (result) {
+            case "1-0": return BLACK_WINS;
+            case "0-1": return WHITE_WINS;
+            case "1/2-1/2": return DRAW;
+            default: return 0;
+        }
+    }
+
+    /**
+     * This method returns the result of a game for its mirror image.
+     * @param result BLACK_WINS, WHITE_WINS, DRAW or 0
+     * @return The result with the colours swapped
+     */
+    private static byte mirror(byte result) {
+        switch (result) {
+            case BLACK_WINS: return WHITE_WINS;
+            case WHITE_WINS: return BLACK_WINS;
+            default: return result;
+        }
+    }
+
+    /**
+     * This method sorts entries by key and then by move with quicksort.
+     * @param keys The keys
+     * @param moves The moves
+     * @param results The results
+     * @param low The first entry to sort
+     * @param high The last entry to sort
+     */
+    private static void sort(long keys[], long moves[], byte results[], int low, int high) {
+        while (low < high) {
+            if (high - low < 16) {
+                for (int i=low+1; i<=high; i++) {
+                    for (int j=i; j>low && compare(keys, moves, j-1, keys[j], moves[j]) > 0; j--) {
+                        swap(keys, moves, results, j-1, j);
+                    }
+                }
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle], pivotMove = moves[middle];
+            int i = low, j = high;
+            while (i <= j) {
+                while (compare(keys, moves, i, pivotKey, pivotMove) < 0) {
+                    i++;
+                }
+                while (compare(keys, moves, j, pivotKey, pivotMove) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, moves, results, i++, j--);
+                }
+            }
+            // Recurse into the smaller part to bound the stack depth
+            if (j - low < high - i) {
+                sort(keys, moves, results, low, j);
+                low = i;
+            } else {
+                sort(keys, moves, results, i, high);
+                high = j;
+            }
+        }
+    }
+
+    /**
+     * This method compares an entry with a key and move.
+     * @param keys The keys
+     * @param moves The moves
+     * @param i The entry
+     * @param key The key
+     * @param move The move
+     * @return A negative number, zero or a positive number when the entry is
+     * smaller, equal or larger.
+     */
+    private static int compare(long keys[], long moves[], int i, long key, long move) {
+        int c = Long.compare(keys[i], key);
+        return c != 0 ? c : Long.compare(moves[i], move);
+    }
+
+    /**
+     * This method swaps two entries.
+     * @param keys The keys
+     * @param moves The moves
+     * @param results The results
+     * @param i The first entry
+     * @param j The second entry
+     */
+    private static void swap(long keys[], long moves[], byte results[], int i, int j) {
+        long k = keys[i]; keys[i] = keys[j]; keys[j] = k;
+        long m = moves[i]; moves[i] = moves[j]; moves[j] = m;
+        byte r = results[i]; results[i] = results[j]; results[j] = r;
+    }
+
+    /**
+     * This method merges the run files into the index file. Records of the
+     * same position and move in different runs are added up.
+     * @param index The index file
+     * @throws IOException when a file can't be read or written
+     */
+    private void merge(Path index) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>();
+        long gameCount = 0;
+        Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        try (RunWriter writer = new RunWriter(tmp)) {
+            for (int k=0; k<chunks; k++) {
+                RunReader reader = new RunReader(runFile(k));
+                gameCount += reader.gameCount;
+                if (reader.next()) {
+                    queue.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!queue.isEmpty()) {
+                RunReader first = queue.poll();
+                long key = first.key, move = first.move;
+                int games = 0, blackWins = 0, whiteWins = 0, draws = 0;
+                RunReader r = first;
+                while (r != null) {
+                    games += r.games;
+                    blackWins += r.blackWins;
+                    whiteWins += r.whiteWins;
+                    draws += r.draws;
+                    if (r.next()) {
+                        queue.add(r);
+                    } else {
+                        r.close();
+                    }
+                    RunReader peek = queue.peek();
+                    r = (peek != null && peek.key == key && peek.move == move) ? queue.poll() : null;
+                }
+                writer.write(key, move, games, blackWins, whiteWins, draws);
+            }
+            writer.setGameCount(gameCount);
+        } finally {
+            for (RunReader r : queue) {
+                r.close();
+            }
+        }
+        Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This class writes records in the format of GameDatabase.
+     */
+    private static class RunWriter implements AutoCloseable {
+        private FileChannel channel;
+        private ByteBuffer buffer;
+        private long records;
+        private long gameCount;
+
+        /**
+         * The constructor creates the file and leaves room for the header.
+         * @param file The file
+         * @throws IOException when the file can't be created
+         */
+        RunWriter(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            channel.position(GameDatabase.HEADER_SIZE);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        /**
+         * This method writes a record.
+         * @param key The hash key of the position
+         * @param move The packed move
+         * @param games The number of games
+         * @param blackWins The number of games won by black
+         * @param whiteWins The number of games won by white
+         * @param draws The number of drawn games
+         * @throws IOException when the file can't be written
+         */
+        void write(long key, long move, int games, int blackWins, int whiteWins, int draws) throws IOException {
+            if (buffer.remaining() < GameDatabase.RECORD_SIZE) {
+                flush();
+            }
+            buffer.putLong(key).putLong(move).putInt(games);
+            buffer.putInt(blackWins).putInt(whiteWins).putInt(draws);
+            records++;
+        }
+
+        /**
+         * This method sets the number of games written to the header.
+         * @param gameCount The number of games
+         */
+        void setGameCount(long gameCount) {
+            this.gameCount = gameCount;
+        }
+
+        /**
+         * This method writes the buffer to the file.
+         * @throws IOException when the file can't be written
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * This method writes the header and closes the file.
+         * @throws IOException when the file can't be written
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+            buffer.putInt(GameDatabase.MAGIC).putInt(GameDatabase.VERSION);
+            buffer.putLong(records).putLong(gameCount).putLong(0);
+            buffer.flip();
+            long pos = 0;
+            while (buffer.hasRemaining()) {
+                pos += channel.write(buffer, pos);
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * This class reads the records of a run file one at a time.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        private FileChannel channel;
+        private ByteBuffer buffer;
+        private long remaining;
+        long gameCount;
+        long key;
+        long move;
+        int games;
+        int blackWins;
+        int whiteWins;
+        int draws;
+
+        /**
+         * The constructor opens a run file and reads its header.
+         * @param file The file
+         * @throws IOException when the file can't be read
+         */
+        RunReader(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0);
+            fill(GameDatabase.HEADER_SIZE);
+            if (buffer.getInt() != GameDatabase.MAGIC || buffer.getInt() != GameDatabase.VERSION) {
+                channel.close();
+                throw new IOException(file + " is not a run file");
+            }
+            remaining = buffer.getLong();
+            gameCount = buffer.getLong();
+            buffer.getLong();
+        }
+
+        /**
+         * This method makes sure the buffer holds a number of bytes.
+         * @param n The number of bytes
+         * @throws IOException when the file ends too soon
+         */
+        private void fill(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                buffer.compact();
+                while (buffer.position() < n) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("Run file ends too soon");
+                    }
+                }
+                buffer.flip();
+            }
+        }
+
+        /**
+         * This method reads the next record.
+         * @return False if there are no more records
+         * @throws IOException when the file can't be read
+         */
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            fill(GameDatabase.RECORD_SIZE);
+            key = buffer.getLong();
+            move = buffer.getLong();
+            games = buffer.getInt();
+            blackWins = buffer.getInt();
+            whiteWins = buffer.getInt();
+            draws = buffer.getInt();
+            return true;
+        }
+
+        /**
+         * This method closes the file.
+         * @throws IOException when the file can't be closed
+         */
+        void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public int compareTo(RunReader o) {
+            int c = Long.compare(key, o.key);
+            return c != 0 ? c : Long.compare(move, o.move);
+        }
+    }
+
+    /**
+     * This class reads a range of a file channel.
+     */
+    private static class RangeChannel implements ReadableByteChannel {
+        private FileChannel channel;
+        private long position;
+        private long end;
+
+        /**
+         * The constructor
+         * @param channel The file channel
+         * @param from The offset of the range
+         * @param to The end of the range
+         */
+        RangeChannel(FileChannel channel, long from, long to) {
+            this.channel = channel;
+            position = from;
+            end = to;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int limit = dst.limit();
+            if (dst.remaining() > end - position) {
+                dst.limit(dst.position() + (int)(end - position));
+            }
+            int n = channel.read(dst, position);
+            dst.limit(limit);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * The main method
+     * @param args The PDN file, the index file, the work directory and the
+     * number of threads
+     * @throws Exception when building fails
+     */
+    public static void main(String args[]) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: GameDatabaseBuilder games.pdn index.ckdb [work directory] [threads]");
+            System.exit(1);
+        }
+        Path index = Paths.get(args[1]);
+        Path work = args.length > 2 ? Paths.get(args[2]) : index.resolveSibling(index.getFileName() + ".work");
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        GameDatabaseBuilder builder = new GameDatabaseBuilder(Paths.get(args[0]), work, threads);
+        long start = System.nanoTime();
+        builder.build(index);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        try (GameDatabase db = new GameDatabase(index)) {
+            System.out.printf("%d games, %d records, %d of %d chunks resumed, %.1f s%n",
+                    db.getGameCount(), db.getRecordCount(), builder.getResumedCount(),
+                    builder.getChunkCount(), seconds);
+        }
+    }
+}
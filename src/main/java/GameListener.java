@@ -0,0 +1,16 @@
+import java.util.EventListener;
+
+/**
+ * This interface is implemented by classes that want to be told when a
+ * CheckersGame changes.
+ * @author Aswin van Woudenberg
+ */
+public interface GameListener extends EventListener {
+    /**
+     * This method is called once for every change of the game: a move
+     * executed or taken back, a new game, the end of the game, or a change
+     * of its settings such as the level, the players or the clock.
+     * @param e The description of the change
+     */
+    void gameChanged(GameChangeEvent e);
+}
@@ -0,0 +1,155 @@
+import java.util.Vector;
+
+/**
+ * This class holds the state of a single game hosted by the CheckersServer.
+ * Unlike CheckersGame it has no user interface and doesn't start searches by
+ * itself, so many sessions can be kept in one process.
+ * @author Aswin van Woudenberg
+ */
+public class GameSession {
+    private long id;
+    private Board board;
+    private PlayerColor currentPlayer;
+    private Vector<Move> moves;
+    private boolean searching;
+    private long lastAccess;
+
+    /**
+     * The constructor
+     * @param id The session id
+     */
+    public GameSession(long id) {
+        this.id = id;
+        board = new Board();
+        currentPlayer = PlayerColor.BLACK;
+        moves = new Vector<Move>();
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * This method returns the session id.
+     * @return The session id
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * This method returns a copy of the board, which may be searched while
+     * the game goes on.
+     * @return A copy of the board
+     */
+    public synchronized Board getBoard() {
+        return board.copy();
+    }
+
+    /**
+     * This method returns the player who is to move.
+     * @return The PlayerColor who is to move
+     */
+    public synchronized PlayerColor getCurrentPlayerColor() {
+        return currentPlayer;
+    }
+
+    /**
+     * This method returns the number of moves played.
+     * @return The number of moves
+     */
+    public synchronized int getMoveCount() {
+        return moves.size();
+    }
+
+    /**
+     * This method generates the possible moves of the player who is to move.
+     * @return A vector with all possible moves
+     */
+    public synchronized Vector<Move> generatePossibleMoves() {
+        return MoveGen.generatePossibleMoves(board, currentPlayer);
+    }
+
+    /**
+     * This method returns true if the player who is to move can't move.
+     * @return A boolean indicating whether the game is over
+     */
+    public synchronized boolean isGameOver() {
+        return generatePossibleMoves().isEmpty();
+    }
+
+    /**
+     * This method executes a move if it is legal in the current position.
+     * Since a search may have been started from an earlier position, the
+     * caller passes the number of moves played when it looked at the board.
+     * @param m The move
+     * @param moveCount The number of moves played when the move was chosen
+     * @return A boolean indicating whether the move was executed
+     */
+    public synchronized boolean executeMove(Move m, int moveCount) {
+        touch();
+        if (m == null || moveCount != moves.size() || !generatePossibleMoves().contains(m)) {
+            return false;
+        }
+        board.executeMove(m);
+        moves.add(m);
+        currentPlayer = currentPlayer.opponent();
+        return true;
+    }
+
+    /**
+     * This method marks the session as searching. Only one search per
+     * session may be queued at a time, so a single client can't take the
+     * search executor away from the other sessions.
+     * @return false if the session was already searching
+     */
+    public synchronized boolean startSearch() {
+        touch();
+        if (searching) {
+            return false;
+        }
+        searching = true;
+        return true;
+    }
+
+    /**
+     * This method marks the end of a search started with startSearch.
+     */
+    public synchronized void endSearch() {
+        searching = false;
+    }
+
+    /**
+     * This method records that the session was used.
+     */
+    public synchronized void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    /**
+     * This method returns when the session was last used.
+     * @return The time in milliseconds
+     */
+    public synchronized long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * This method returns a string representation of the session, with one
+     * property per line. The board lists the squares 1 to 32 using the
+     * characters of Square.toString.
+     * @return The string representing the session.
+     */
+    @Override
+    public synchronized String toString() {
+        String result = "id=" + id + "\n";
+        result += "turn=" + currentPlayer + "\n";
+        result += "board=";
+        for (int n=1; n<=32; n++) {
+            result += board.squareAt(Util.notationToSquareIndex(n));
+        }
+        result += "\nmoves=";
+        for (Move m : generatePossibleMoves()) {
+            result += " " + m;
+        }
+        result += "\nover=" + isGameOver() + "\n";
+        return result;
+    }
+}
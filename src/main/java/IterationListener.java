@@ -0,0 +1,17 @@
+/**
+ * The listener interface for following an iterative deepening search. After
+ * every completed iteration the listener is told its result and decides
+ * whether the search goes one ply deeper.
+ * @author Aswin van Woudenberg
+ */
+public interface IterationListener {
+    /**
+     * This method is invoked when an iteration of the search has completed.
+     * @param depth The depth of the iteration
+     * @param best The best move found
+     * @param score The score of the best move
+     * @param nodes The number of nodes visited by the search so far
+     * @return True to search the next depth, false to stop.
+     */
+    boolean iterationDone(int depth, Move best, int score, long nodes);
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.Vector;
+
+/**
+ * This class describes how strong the computer plays. A level either
+ * searches to a fixed depth, or it searches with iterative deepening until
+ * it has visited a number of nodes or used a number of milliseconds. The
+ * time a fixed depth takes differs a lot between positions, while a node or
+ * time budget gives about the same response time in every position. A node
+ * budget also gives the same move every time on the same hardware, a time
+ * budget doesn't.
+ *
+ * Levels can be read from a properties file like this:
+ *
+ *   level.1.name=Beginner
+ *   level.1.depth=1
+ *   level.2.name=Quick
+ *   level.2.millis=250
+ *   level.3.name=Server
+ *   level.3.nodes=200000
+ *   level.3.depth=20
+ *
+ * Levels are numbered from 1 without gaps. A level with nodes or millis
+ * searches no deeper than its depth, if it has one.
+ * @author Aswin van Woudenberg
+ */
+public class Level {
+    private static final String DEFAULT_LEVELS = "levels.properties";
+
+    private String name;
+    private int depth;
+    private long nodes;
+    private long millis;
+
+    /**
+     * The constructor
+     * @param name The name of the level
+     * @param depth The search depth, or 0 for no limit when a budget is given
+     * @param nodes The number of nodes per move, or 0 for no limit
+     * @param millis The number of milliseconds per move, or 0 for no limit
+     */
+    public Level(String name, int depth, long nodes, long millis) {
+        if (depth < 0 || nodes < 0 || millis < 0) {
+            throw new IllegalArgumentException("Level " + name + " has a negative limit");
+        }
+        if (depth == 0 && nodes == 0 && millis == 0) {
+            throw new IllegalArgumentException("Level " + name + " has no depth, nodes or millis");
+        }
+        this.name = name;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.millis = millis;
+    }
+
+    /**
+     * This method creates a level that searches to a fixed depth.
+     * @param depth The search depth
+     * @return The level
+     */
+    public static Level ofDepth(int depth) {
+        return new Level("Depth " + depth, depth, 0, 0);
+    }
+
+    /**
+     * This method returns the name of the level.
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * This method returns the search depth.
+     * @return The depth, or 0 if only the budget limits the search.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * This method returns the number of nodes a search may visit.
+     * @return The number of nodes, or 0 for no limit
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * This method returns the time a search may take.
+     * @return The time in milliseconds, or 0 for no limit
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * This method returns true if the level searches to a fixed depth
+     * without a node or time budget.
+     * @return A boolean indicating whether only the depth limits the search.
+     */
+    public boolean isFixedDepth() {
+        return nodes == 0 && millis == 0;
+    }
+
+    /**
+     * This method reads levels from properties.
+     * @param properties The properties
+     * @return A vector with the levels in the order of their numbers
+     * @throws IllegalArgumentException when a level has a bad limit
+     */
+    public static Vector<Level> load(Properties properties) {
+        Vector<Level> levels = new Vector<Level>();
+        for (int i=1; properties.getProperty("level." + i + ".name") != null; i++) {
+            String prefix = "level." + i + ".";
+            String name = properties.getProperty(prefix + "name");
+            try {
+                int depth = Integer.parseInt(properties.getProperty(prefix + "depth", "0").trim());
+                long nodes = Long.parseLong(properties.getProperty(prefix + "nodes", "0").trim());
+                long millis = Long.parseLong(properties.getProperty(prefix + "millis", "0").trim());
+                levels.add(new Level(name, depth, nodes, millis));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Level " + name + " has a bad limit: " + ex.getMessage());
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * This method reads levels from a properties file.
+     * @param file The file
+     * @return A vector with the levels
+     * @throws IOException when the file can't be read
+     * @throws IllegalArgumentException when a level has a bad limit
+     */
+    public static Vector<Level> load(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * This method reads levels in properties format from a stream.
+     * @param in The stream
+     * @return A vector with the levels
+     * @throws IOException when the stream can't be read
+     * @throws IllegalArgumentException when a level has a bad limit
+     */
+    private static Vector<Level> load(InputStream in) throws IOException {
+        Properties properties = new Properties();
+        properties.load(in);
+        return load(properties);
+    }
+
+    /**
+     * This method reads the configured levels. When the system property
+     * checkers.levels names a file, the levels are read from that file,
+     * otherwise the levels that come with the program are used.
+     * @return A vector with the levels
+     * @throws IOException when the file can't be read
+     * @throws IllegalArgumentException when a level has a bad limit
+     */
+    public static Vector<Level> load() throws IOException {
+        String file = System.getProperty("checkers.levels");
+        if (file != null) {
+            return load(Paths.get(file));
+        }
+        try (InputStream in = Level.class.getResourceAsStream(DEFAULT_LEVELS)) {
+            if (in == null) {
+                throw new IOException(DEFAULT_LEVELS + " not found");
+            }
+            return load(in);
+        }
+    }
+
+    /**
+     * This method finds a level by its name.
+     * @param levels The levels
+     * @param name The name, which is compared ignoring case
+     * @return The level, or null if there is none with the name.
+     */
+    public static Level find(Vector<Level> levels, String name) {
+        for (Level l : levels) {
+            if (l.getName().equalsIgnoreCase(name)) {
+                return l;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This method returns a string representation of the level.
+     * @return The name and limits of the level
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name);
+        if (depth > 0) {
+            sb.append(" depth=").append(depth);
+        }
+        if (nodes > 0) {
+            sb.append(" nodes=").append(nodes);
+        }
+        if (millis > 0) {
+            sb.append(" millis=").append(millis);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a synthetic client for the CheckersServer. For an increasing
+ * number of sessions it lets every session play a number of computer moves
+ * and reports the median and 99th percentile latency of a move. Every
+ * session has at most one request outstanding, just like a real player.
+ *
+ * Usage: LoadTest [url] [depth] [moves per session] [session counts...]
+ * When no url is given, or it is "local", a server is started in this process.
+ * @author Aswin van Woudenberg
+ */
+public class LoadTest {
+    private static final long BACKOFF = 10; // milliseconds
+    
+    private HttpClient client;
+    private String url;
+    private int depth;
+    private int movesPerSession;
+    private ConcurrentLinkedQueue<Long> latencies;
+    private AtomicLong errors;
+    private AtomicLong busy;
+    private CountDownLatch finished;
+
+    /**
+     * The constructor
+     * @param url The base url of the server
+     * @param depth The search depth of the computer moves
+     * @param movesPerSession The number of moves every session requests
+     */
+    public LoadTest(String url, int depth, int movesPerSession) {
+        client = HttpClient.newHttpClient();
+        this.url = url;
+        this.depth = depth;
+        this.movesPerSession = movesPerSession;
+    }
+
+    /**
+     * This method runs the test for a number of sessions and prints a line
+     * with the results.
+     * @param sessionCount The number of sessions
+     * @throws Exception when the server can't be reached
+     */
+    public void run(int sessionCount) throws Exception {
+        latencies = new ConcurrentLinkedQueue<Long>();
+        errors = new AtomicLong();
+        busy = new AtomicLong();
+        finished = new CountDownLatch(sessionCount);
+        long ids[] = new long[sessionCount];
+        for (int i=0; i<sessionCount; i++) {
+            ids[i] = createSession();
+        }
+        long start = System.nanoTime();
+        for (long id : ids) {
+            requestMove(id, 0);
+        }
+        finished.await();
+        long elapsed = System.nanoTime() - start;
+        for (long id : ids) {
+            send(HttpRequest.newBuilder(URI.create(url + "sessions/" + id)).DELETE().build());
+        }
+
+        long sorted[] = new long[latencies.size()];
+        int n = 0;
+        for (long l : latencies) {
+            sorted[n++] = l;
+        }
+        Arrays.sort(sorted);
+        System.out.printf("%8d sessions %8d moves %8.0f moves/s  p50 %8.2f ms  p99 %8.2f ms  busy %d  errors %d%n",
+                sessionCount, n, n / (elapsed / 1e9), percentile(sorted, 50), percentile(sorted, 99),
+                busy.get(), errors.get());
+    }
+
+    /**
+     * This method starts a new session on the server.
+     * @return The session id
+     * @throws Exception when the server can't be reached
+     */
+    private long createSession() throws Exception {
+        String body = send(HttpRequest.newBuilder(URI.create(url + "sessions"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build()).body();
+        for (String line : body.split("\n")) {
+            if (line.startsWith("id=")) {
+                return Long.parseLong(line.substring(3));
+            }
+        }
+        throw new IOException("Unexpected response: " + body);
+    }
+
+    /**
+     * This method asynchronously requests a computer move for a session, and
+     * when it arrives requests the next one until the session has played
+     * enough moves or the game is over.
+     * @param id The session id
+     * @param movesDone The number of moves played so far
+     */
+    private void requestMove(final long id, final int movesDone) {
+        if (movesDone >= movesPerSession) {
+            finished.countDown();
+            return;
+        }
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(url + "sessions/" + id + "/search?depth=" + depth))
+                .POST(HttpRequest.BodyPublishers.noBody()).build();
+        final long start = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, ex) -> {
+            if (ex != null) {
+                errors.incrementAndGet();
+                finished.countDown();
+            } else if (response.statusCode() == 503) {
+                // Back off and retry when the server is busy
+                busy.incrementAndGet();
+                CompletableFuture.delayedExecutor(BACKOFF, TimeUnit.MILLISECONDS)
+                        .execute(() -> requestMove(id, movesDone));
+            } else if (response.statusCode() != 200) {
+                if (response.statusCode() != 409) {
+                    errors.incrementAndGet();
+                }
+                finished.countDown();
+            } else {
+                latencies.add(System.nanoTime() - start);
+                requestMove(id, response.body().contains("over=true") ? movesPerSession : movesDone + 1);
+            }
+        });
+    }
+
+    /**
+     * This method sends a request and waits for the response. Since the 
+     * server may close idle connections that the client still has pooled, a 
+     * request that fails is retried a few times.
+     * @param request The request
+     * @return The response
+     * @throws Exception when the server can't be reached
+     */
+    private HttpResponse<String> send(HttpRequest request) throws Exception {
+        for (int attempt=1; ; attempt++) {
+            try {
+                return client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException ex) {
+                if (attempt >= 3) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method returns a percentile of sorted latencies.
+     * @param sorted The latencies in nanoseconds, sorted
+     * @param p The percentile
+     * @return The latency in milliseconds
+     */
+    private static double percentile(long sorted[], int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length-1, sorted.length*p/100)] / 1e6;
+    }
+
+    /**
+     * @param args The url, the search depth, the number of moves per session
+     * and the session counts, all optional
+     * @throws Exception when the server can't be reached
+     */
+    public static void main(String args[]) throws Exception {
+        String url = args.length > 0 ? args[0] : "local";
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int moves = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int counts[] = {1, 10, 100, 1000};
+        if (args.length > 3) {
+            counts = new int[args.length-3];
+            for (int i=3; i<args.length; i++) {
+                counts[i-3] = Integer.parseInt(args[i]);
+            }
+        }
+        CheckersServer server = null;
+        if (url.equals("local")) {
+            int threads = Runtime.getRuntime().availableProcessors();
+            server = new CheckersServer(0, threads, threads * 64);
+            server.start();
+            url = "http://localhost:" + server.getPort() + "/";
+        } else if (!url.endsWith("/")) {
+            url += "/";
+        }
+        LoadTest test = new LoadTest(url, depth, moves);
+        for (int count : counts) {
+            test.run(count);
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class implements Monte Carlo tree search (UCT) as an alternative to
+ * the alpha-beta search of Search. Every iteration walks down the tree,
+ * picking the child with the best upper confidence bound, adds the children
+ * of the leaf it reaches and plays a random game from there. The result of
+ * that playout is added to the statistics of every node on the way. The
+ * move played is the most visited move of the root.
+ *
+ * Playouts work on positions packed as described by PackedPosition, with
+ * the generator of BatchMoveGen, so they create no objects. They use a light
+ * policy: a move that crowns a king is taken when there is one, other moves
+ * are picked at random. After PLAYOUT_PLIES plies the material decides.
+ *
+ * The tree is searched by several threads at once (tree parallelism). The
+ * statistics of a node are one long, the visits in the high half and the
+ * result in half points in the low half, which is updated atomically
+ * without locks. A thread counts its visit on the way down and adds the
+ * result on the way back, so until then the visit counts as a loss
+ * (virtual loss) and the other threads prefer other moves. A node is
+ * expanded by the thread that claims it with a compare-and-set; the others
+ * do a playout from it meanwhile.
+ *
+ * The nodes are kept in arrays of a fixed capacity, allocated once and
+ * reused for every move, so the memory used is bounded and the search
+ * creates no garbage. When the arrays are full, leaves are no longer
+ * expanded and the remaining iterations only refine the statistics.
+ * @author Aswin van Woudenberg
+ */
+public class MonteCarloSearch implements Engine {
+    // The weight of exploration in the upper confidence bound
+    private static final double EXPLORATION = 0.7;
+
+    // Playouts stop after this many plies and the material decides
+    private static final int PLAYOUT_PLIES = 60;
+
+    // A leaf is expanded when it is visited for this time
+    private static final int EXPAND_VISITS = 2;
+
+    // The most moves a position can have, with room to spare
+    private static final int MAX_MOVES = 256;
+
+    // The deepest path through the tree that is followed
+    private static final int MAX_TREE_DEPTH = 512;
+
+    // A level with a fixed depth gets this many playouts per ply
+    private static final int PLAYOUTS_PER_DEPTH = 2000;
+
+    /**
+     * The number of nodes of the tree by default, about 32 MB.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    // Values of children for nodes without children in the tree
+    private static final int UNEXPANDED = 0;
+    private static final int EXPANDING = -1;
+    private static final int TERMINAL = -2;
+
+    private static final long VISIT = 1L << 32;
+
+    private int threads;
+    private int capacity;
+    private ExecutorService pool;
+
+    // The tree: node i has its position at 2*i and 2*i+1, its statistics,
+    // the index of its first child, and the number of its children
+    private long positions[];
+    private AtomicLongArray stats;
+    private AtomicIntegerArray children;
+    private int childCounts[];
+    private AtomicInteger size;
+
+    private volatile boolean stopped;
+    private volatile long deadline;
+    private long playoutLimit;
+    private AtomicLong playouts;
+    private int playoutsPerMove;
+
+    /**
+     * The constructor creates a search on one thread with the default
+     * capacity.
+     */
+    public MonteCarloSearch() {
+        this(1, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * The constructor
+     * @param threads The number of threads that search the tree
+     * @param capacity The number of nodes the tree can hold
+     */
+    public MonteCarloSearch(int threads, int capacity) {
+        this.threads = Math.max(1, threads);
+        this.capacity = Math.max(MAX_MOVES + 1, capacity);
+        positions = new long[2*this.capacity];
+        stats = new AtomicLongArray(this.capacity);
+        children = new AtomicIntegerArray(this.capacity);
+        childCounts = new int[this.capacity];
+        size = new AtomicInteger();
+        playouts = new AtomicLong();
+        playoutsPerMove = 10*PLAYOUTS_PER_DEPTH;
+    }
+
+    /**
+     * This method sets the number of playouts of getComputerMove without a
+     * level.
+     * @param n The number of playouts
+     */
+    public void setPlayouts(int n) {
+        playoutsPerMove = n;
+    }
+
+    /**
+     * This method returns the number of playouts of the last search.
+     * @return The number of playouts
+     */
+    public long getPlayoutCount() {
+        return playouts.get();
+    }
+
+    /**
+     * This method returns the number of nodes in the tree of the last search.
+     * @return The number of nodes
+     */
+    public int getTreeSize() {
+        return Math.min(size.get(), capacity);
+    }
+
+    /**
+     * This method stops the threads of the search.
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    @Override
+    public Move getComputerMove(Board board, PlayerColor pc) {
+        return search(board, pc, playoutsPerMove, 0);
+    }
+
+    /**
+     * This method calculates the best move at a level. A level with a node
+     * budget plays that many playouts and a level with a time budget plays
+     * until the time is used. A level with only a depth plays
+     * PLAYOUTS_PER_DEPTH playouts for every ply of depth. The history is not
+     * used: playouts don't detect repetitions.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, which are ignored.
+     * @param level The level
+     * @return The best move found, or null if there are no moves.
+     */
+    @Override
+    public Move getComputerMove(Board board, PlayerColor pc, PositionHistory history, Level level) {
+        long limit = level.getNodes();
+        if (level.isFixedDepth()) {
+            limit = (long)level.getDepth() * PLAYOUTS_PER_DEPTH;
+        }
+        long end = level.getMillis() > 0 ? System.nanoTime() + level.getMillis() * 1000000 : 0;
+        return search(board, pc, limit, end);
+    }
+
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * This method searches the tree of a position until a budget is used.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param limit The number of playouts, or 0 for no limit
+     * @param end The time the search ends as returned by System.nanoTime,
+     * or 0 for none
+     * @return The most visited move, or null if there are no moves.
+     */
+    private synchronized Move search(Board board, PlayerColor pc, long limit, long end) {
+        Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+        if (possibleMoves.isEmpty()) {
+            return null;
+        } else if (possibleMoves.size() == 1) {
+            return possibleMoves.elementAt(0);
+        }
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads);
+        }
+        stopped = false;
+        playoutLimit = limit;
+        deadline = end;
+        playouts.set(0);
+
+        // The nodes of the last move are recycled
+        PackedPosition.pack(board, pc, positions, 0);
+        stats.set(0, 0);
+        children.set(0, UNEXPANDED);
+        size.set(1);
+        new Worker().expand(0);
+
+        Vector<Future<?>> futures = new Vector<Future<?>>();
+        for (int t=0; t<threads; t++) {
+            futures.add(pool.submit(new Worker()));
+        }
+        try {
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ex) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            stopped = true;
+            throw new IllegalStateException("Search failed", ex.getCause());
+        }
+
+        // The children of the root come in the order of MoveGen
+        int first = children.get(0);
+        int best = 0;
+        for (int i=1; i<childCounts[0]; i++) {
+            if ((stats.get(first+i) >>> 32) > (stats.get(first+best) >>> 32)) {
+                best = i;
+            }
+        }
+        return possibleMoves.elementAt(best);
+    }
+
+    /**
+     * This class does the iterations of one thread. Each has its own
+     * generator, scratch arrays and random numbers.
+     */
+    private class Worker implements Runnable {
+        private long successors[] = new long[2*MAX_MOVES];
+        private BatchMoveGen.Generator generator = new BatchMoveGen.Generator(BatchMoveGen.SUCCESSORS, successors);
+        private long playout[] = new long[2];
+        private int path[] = new int[MAX_TREE_DEPTH];
+        private Random random = new Random();
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                    break;
+                }
+                if (playouts.incrementAndGet() > playoutLimit && playoutLimit != 0) {
+                    playouts.decrementAndGet();
+                    break;
+                }
+                iterate();
+            }
+        }
+
+        /**
+         * This method walks down the tree, expands the leaf it reaches, plays
+         * out from it and adds the result to the nodes on the path.
+         */
+        private void iterate() {
+            int length = 0;
+            int node = 0;
+            stats.addAndGet(0, VISIT);
+            path[length++] = 0;
+            int result;
+            while (true) {
+                int first = children.get(node);
+                if (first == TERMINAL) {
+                    // The player to move can't move and has lost
+                    result = 0;
+                    break;
+                }
+                if (first == UNEXPANDED && (stats.get(node) >>> 32) >= EXPAND_VISITS
+                        && length < MAX_TREE_DEPTH && expand(node)) {
+                    first = children.get(node);
+                }
+                if (first <= 0 || length == MAX_TREE_DEPTH) {
+                    result = playout(node);
+                    break;
+                }
+                node = select(first, childCounts[node], stats.get(node) >>> 32);
+                stats.addAndGet(node, VISIT);
+                path[length++] = node;
+            }
+            // The statistics of a node count for the player who moved to it
+            for (int i=length-1; i>=0; i--) {
+                result = 2 - result;
+                stats.addAndGet(path[i], result);
+            }
+        }
+
+        /**
+         * This method selects the child with the highest upper confidence
+         * bound. A child without visits is taken first.
+         * @param first The index of the first child
+         * @param count The number of children
+         * @param visits The number of visits of the parent
+         * @return The index of the child
+         */
+        private int select(int first, int count, long visits) {
+            double logVisits = Math.log(Math.max(visits, 1));
+            int best = first;
+            double bestBound = -1;
+            int offset = random.nextInt(count);
+            for (int k=0; k<count; k++) {
+                int child = first + (k + offset) % count;
+                long s = stats.get(child);
+                long n = s >>> 32;
+                if (n == 0) {
+                    return child;
+                }
+                double bound = (s & 0xFFFFFFFFL) / (2.0 * n) + EXPLORATION * Math.sqrt(logVisits / n);
+                if (bound > bestBound) {
+                    best = child;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * This method adds the children of a node to the tree. Only the
+         * thread that claims the node expands it.
+         * @param node The index of the node
+         * @return True if the node now has children or is terminal.
+         */
+        private boolean expand(int node) {
+            if (size.get() >= capacity || !children.compareAndSet(node, UNEXPANDED, EXPANDING)) {
+                return false;
+            }
+            int count = generator.generate(positions, node, 0);
+            if (count == 0) {
+                children.set(node, TERMINAL);
+                return true;
+            }
+            int first = size.getAndAdd(count);
+            if (first + count > capacity) {
+                // The tree is full; the node stays a leaf
+                children.set(node, UNEXPANDED);
+                return false;
+            }
+            System.arraycopy(successors, 0, positions, 2*first, 2*count);
+            for (int i=first; i<first+count; i++) {
+                stats.set(i, 0);
+                children.set(i, UNEXPANDED);
+            }
+            childCounts[node] = count;
+            // Publishing the first child makes the children visible
+            children.set(node, first);
+            return true;
+        }
+
+        /**
+         * This method plays random moves from a node until a player can't
+         * move or PLAYOUT_PLIES plies are played.
+         * @param node The index of the node
+         * @return The result for the player to move in the node: 2 for a
+         * win, 1 for a draw and 0 for a loss.
+         */
+        private int playout(int node) {
+            playout[0] = positions[2*node];
+            playout[1] = positions[2*node+1];
+            long mover = playout[1] >>> 32;
+            for (int ply=0; ply<PLAYOUT_PLIES; ply++) {
+                int count = generator.generate(playout, 0, 0);
+                if (count == 0) {
+                    return (playout[1] >>> 32) == mover ? 0 : 2;
+                }
+                int pick = random.nextInt(count);
+                long kings = Long.bitCount(playout[1] & 0xFFFFFFFFL);
+                for (int k=0; k<count; k++) {
+                    int i = (pick + k) % count;
+                    if (Long.bitCount(successors[2*i+1] & 0xFFFFFFFFL) > kings) {
+                        // A king is crowned, unless the move also captured one
+                        pick = i;
+                        break;
+                    }
+                }
+                playout[0] = successors[2*pick];
+                playout[1] = successors[2*pick+1];
+            }
+            int balance = material(playout, mover == 0);
+            return balance > 0 ? 2 : balance < 0 ? 0 : 1;
+        }
+    }
+
+    /**
+     * This method computes the material balance of a packed position, with
+     * a pawn worth 2 and a king 3.
+     * @param position The packed position
+     * @param black True for the balance of black, false for white
+     * @return The material of the player minus that of the opponent
+     */
+    private static int material(long position[], boolean black) {
+        long kings = position[1] & 0xFFFFFFFFL;
+        long b = position[0] & 0xFFFFFFFFL;
+        long w = position[0] >>> 32;
+        int balance = 2*Long.bitCount(b) + Long.bitCount(b & kings)
+                - 2*Long.bitCount(w) - Long.bitCount(w & kings);
+        return black ? balance : -balance;
+    }
+}
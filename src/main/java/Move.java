@@ -1,57 +1,118 @@
 /**
  * This class represents a checkers move. A checkers move consists of a sequence
  * of squares. The square numbers follow that of an internal representation.
+ *
+ * A move is immutable and packed into two longs. Every step of a move goes
+ * to a diagonal neighbour and every jump to a square two diagonals away, so
+ * after the start square only the direction of each hop has to be stored:
+ *
+ *  bits  0-5   the start square
+ *  bits  6-11  the final square
+ *  bits 12-16  the number of hops
+ *  bit  17     set if the move is a jump
+ *  bits 18-63  2 bits for the direction of every hop
+ *
+ * The second long has a bit set for every square of a captured piece.
  * @author Aswin van Woudenberg
  */
 import java.util.Vector;
 
 public class Move {
+    private static final int HOPS_SHIFT = 12;
+    private static final long JUMP = 1L << 17;
+    private static final int DIRECTIONS_SHIFT = 18;
+    private static final int MAX_HOPS = (64-DIRECTIONS_SHIFT)/2;
+
+    // The distance between a square and its diagonal neighbours, ordered so
+    // that direction 3-k is the opposite of direction k
+    private static final int DIRECTIONS[] = { -5, -4, 4, 5 };
+
     /**
-     * The vector of Integer objects represents the move sequence.
+     * The packed move sequence.
      */
-    private Vector<Integer> squares;
-    
+    private final long path;
+
     /**
-     * This constructor creates a new move.
+     * The squares of the captured pieces.
      */
-    public Move() {
-        squares = new Vector<Integer>();
-    }
-    
+    private final long captures;
+
     /**
      * This constructor creates a new move with new square values
+     * @param sq The squares of the move sequence, at least one.
      */
     public Move(int...sq) {
-        squares = new Vector<Integer>();
-        for (int i: sq) {
-            squares.add(i);
+        if (sq.length < 1 || sq.length > MAX_HOPS+1) {
+            throw new IllegalArgumentException("A move can't have " + sq.length + " squares");
         }
+        long p = sq[0] | (long)sq[0] << 6;
+        long c = 0;
+        if (sq.length > 1 && Math.abs(sq[1]-sq[0]) > 5) {
+            p |= JUMP;
+        }
+        for (int i=1; i<sq.length; i++) {
+            p = addHop(p, sq[i]);
+            if ((p & JUMP) != 0) {
+                c |= 1L << ((sq[i]+sq[i-1]) / 2);
+            }
+        }
+        path = p;
+        captures = c;
     }
-    
+
     /**
-     * This method creates a copy of this Move object and returns it.
-     * @return The return value is a copy of this move object.
+     * This constructor creates a move from its packed form.
+     * @param path The packed move sequence
+     * @param captures The squares of the captured pieces
      */
-    public Move copy() {
-        Move m = new Move();
-	m.squares = (Vector)squares.clone();
-	return m;
+    private Move(long path, long captures) {
+        this.path = path;
+        this.captures = captures;
     }
-    
+
     /**
-     * This method returns as a Vector the squares the move consists of.
-     * @return A vector representing the move sequence.
+     * This method adds a hop to a packed move sequence.
+     * @param p The packed move sequence
+     * @param square The square the hop goes to
+     * @return The packed move sequence including the hop
      */
-    public Vector getSquares() {
-        return squares;
+    private static long addHop(long p, int square) {
+        int hops = (int)(p >>> HOPS_SHIFT) & 0x1F;
+        int last = (int)(p >>> 6) & 0x3F;
+        int distance = ((p & JUMP) != 0) ? 2 : 1;
+        int direction = 0;
+        while (direction < 4 && DIRECTIONS[direction]*distance != square-last) {
+            direction++;
+        }
+        if (direction == 4 || hops == MAX_HOPS || (distance == 1 && hops == 1)) {
+            throw new IllegalArgumentException("Square " + square + " can't follow square " + last);
+        }
+        p &= ~((0x3FL << 6) | (0x1FL << HOPS_SHIFT));
+        p |= (long)square << 6 | (long)(hops+1) << HOPS_SHIFT;
+        return p | (long)direction << (DIRECTIONS_SHIFT+2*hops);
+    }
+
+    /**
+     * This method returns a new move that jumps on from the final square of
+     * this move. This move itself doesn't change.
+     * @param square The square to jump to
+     * @return The longer move
+     */
+    public Move extend(int square) {
+        return new Move(addHop(path, square), captures | 1L << ((square+finalSquare()) / 2));
     }
-    
+
     /**
-     * Add a new square to the move sequence.
-     * @param square This is the location one wants to add to the move sequence.
+     * This method returns as a Vector the squares the move consists of. The
+     * vector is a new one, so changing it doesn't change the move.
+     * @return A vector representing the move sequence.
      */
-    public void addSquare(int square) {
-        squares.add(square);
+    public Vector<Integer> getSquares() {
+        Vector<Integer> squares = new Vector<Integer>();
+        for (int i=0; i<length(); i++) {
+            squares.add(squareAt(i));
+        }
+        return squares;
     }
 
     /**
@@ -59,38 +120,148 @@ public class Move {
      * @return The number of squares in a move.
      */
     public int length() {
-        return squares.size();
+        return ((int)(path >>> HOPS_SHIFT) & 0x1F) + 1;
     }
-    
+
     /**
      * This method returns the square at a particular index of the move sequence.
      * @param index The index of the move sequence
      * @return The square sollicited.
      */
     public int squareAt(int index) {
-        return squares.elementAt(index);
+        if (index < 0 || index >= length()) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        int distance = ((path & JUMP) != 0) ? 2 : 1;
+        int square = (int)path & 0x3F;
+        long directions = path >>> DIRECTIONS_SHIFT;
+        for (int i=0; i<index; i++) {
+            square += DIRECTIONS[(int)directions & 3]*distance;
+            directions >>>= 2;
+        }
+        return square;
     }
-    
+
     /**
      * This method returns the final square of the move sequence.
      * @return An integer donating the final square where the move finishes.
      */
     public int finalSquare() {
-        return squares.elementAt(squares.size()-1);
+        return (int)(path >>> 6) & 0x3F;
     }
-    
+
     /**
      * This method checks if the move contains one or more jumps
      * @return A boolean indicates is the move contains a jump.
      */
     public boolean includesJump() {
-        if (squares.size() > 2)
-            return true;
-        if (Math.abs(squares.elementAt(0) - squares.elementAt(squares.size()-1)) > 5) 
+        return (path & JUMP) != 0;
+    }
+
+    /**
+     * This method returns the squares of the pieces captured by the move.
+     * @return A long with bit i set if the piece on square i is captured.
+     */
+    public long captureMask() {
+        return captures;
+    }
+
+    /**
+     * This method returns the move mirrored by Symmetry: every square i
+     * becomes square 54-i, so every hop goes in the opposite direction.
+     * @return The mirrored move
+     */
+    public Move mirror() {
+        int hops = (int)(path >>> HOPS_SHIFT) & 0x1F;
+        long directions = ((1L << 2*hops) - 1) << DIRECTIONS_SHIFT;
+        long p = (path & ~0xFFFL) ^ directions;
+        p |= (54 - ((int)path & 0x3F)) | (long)(54 - finalSquare()) << 6;
+        return new Move(p, Long.reverse(captures) >>> 9);
+    }
+
+    /**
+     * This method packs the move sequence into a long. The lowest 4 bits hold
+     * the number of squares, followed by 5 bits per square in standard checkers
+     * notation. Moves of more than 12 squares can't be packed.
+     * @return The packed move, or 0 if the move is too long to be packed.
+     */
+    public long pack() {
+        int length = length();
+        if (length > 12) {
+            return 0;
+        }
+        long packed = length;
+        for (int i=0; i<length; i++) {
+            packed |= (long)(Util.squareIndexToNotation(squareAt(i))-1) << (4+5*i);
+        }
+        return packed;
+    }
+
+    /**
+     * This method creates a move from a long created by the pack method.
+     * @param packed The packed move.
+     * @return The move, or null if packed is 0.
+     */
+    public static Move unpack(long packed) {
+        if (packed == 0) {
+            return null;
+        }
+        int squares[] = new int[(int)(packed & 0xF)];
+        for (int i=0; i<squares.length; i++) {
+            squares[i] = Util.notationToSquareIndex((int)((packed >>> (4+5*i)) & 0x1F)+1);
+        }
+        return new Move(squares);
+    }
+
+    /**
+     * This method returns the packed move sequence described above. Unlike 
+     * pack it works for moves of any length, but it uses the internal square 
+     * numbers, so it is meant for data that the program reads back itself.
+     * @return The packed move sequence, which is never 0.
+     */
+    public long getPath() {
+        return path;
+    }
+
+    /**
+     * This method creates a move from a long returned by getPath.
+     * @param path The packed move sequence
+     * @return The move, or null if path is 0.
+     */
+    public static Move fromPath(long path) {
+        if (path == 0) {
+            return null;
+        }
+        Move move = new Move(path, 0);
+        if (!move.includesJump()) {
+            return move;
+        }
+        long c = 0;
+        for (int i=1; i<move.length(); i++) {
+            c |= 1L << ((move.squareAt(i)+move.squareAt(i-1)) / 2);
+        }
+        return new Move(path, c);
+    }
+
+    /**
+     * Two moves are equal when they consist of the same sequence of squares.
+     * @param o The object to compare with.
+     * @return A boolean indicating whether both moves are the same.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
             return true;
-        return false;
+        if (!(o instanceof Move))
+            return false;
+        return path == ((Move)o).path;
     }
-    
+
+    @Override
+    public int hashCode() {
+        return (int)(path ^ (path >>> 32));
+    }
+
     /**
      * This method returns a string representation of the move in standard checkers notation.
      * @return The string representing the move.
@@ -98,10 +269,10 @@ public class Move {
     @Override
     public String toString() {
 	String result = "";
-        if (squares.size()>=2) {
-            result += Util.squareIndexToNotation(squares.elementAt(0));
+        if (length()>=2) {
+            result += Util.squareIndexToNotation(squareAt(0));
             result += "-";
-            result += Util.squareIndexToNotation(squares.elementAt(squares.size()-1));
+            result += Util.squareIndexToNotation(finalSquare());
         }
 	return result;
     }
@@ -5,6 +5,48 @@ import java.util.Vector;
  * @author Aswin van Woudenberg
  */
 public class MoveGen {
+    /**
+     * For every kind of piece and every square, the squares the piece can 
+     * step to, the squares it can jump over and the squares it lands on after 
+     * those jumps. Squares outside the board are left out, so the generators 
+     * don't have to check for the border. The tables are indexed by the 
+     * ordinal of the Square constant and the square index.
+     */
+    static final int STEPS[][][] = new int[Square.values().length][55][];
+    static final int JUMP_OVER[][][] = new int[Square.values().length][55][];
+    static final int JUMP_TO[][][] = new int[Square.values().length][55][];
+    
+    static {
+        int directions[][] = new int[Square.values().length][];
+        directions[Square.WHITE_PAWN.ordinal()] = new int[]{4, 5};
+        directions[Square.BLACK_PAWN.ordinal()] = new int[]{-4, -5};
+        directions[Square.WHITE_KING.ordinal()] = new int[]{4, 5, -4, -5};
+        directions[Square.BLACK_KING.ordinal()] = new int[]{4, 5, -4, -5};
+        directions[Square.EMPTY.ordinal()] = new int[]{};
+        directions[Square.BORDER.ordinal()] = new int[]{};
+        for (int kind=0; kind<directions.length; kind++) {
+            for (int index=0; index<55; index++) {
+                Vector<Integer> steps = new Vector<Integer>();
+                Vector<Integer> over = new Vector<Integer>();
+                Vector<Integer> to = new Vector<Integer>();
+                if (isPlayable(index)) {
+                    for (int i : directions[kind]) {
+                        if (isPlayable(index+i)) {
+                            steps.add(index+i);
+                            if (isPlayable(index+i+i)) {
+                                over.add(index+i);
+                                to.add(index+i+i);
+                            }
+                        }
+                    }
+                }
+                STEPS[kind][index] = toArray(steps);
+                JUMP_OVER[kind][index] = toArray(over);
+                JUMP_TO[kind][index] = toArray(to);
+            }
+        }
+    }
+    
     /**
      * This class contains only static methods. Thus, the caller should 
      * be prevented from constructing objects of this class, by declaring this 
@@ -15,6 +57,28 @@ public class MoveGen {
         throw new AssertionError();
     }
     
+    /**
+     * This method returns true if a square index is a square of the board.
+     * @param index The square index
+     * @return A boolean indicating whether the square is on the board.
+     */
+    private static boolean isPlayable(int index) {
+        return index>=10 && index<45 && index!=18 && index!=27 && index!=36;
+    }
+    
+    /**
+     * This method converts a vector of integers to an array.
+     * @param v The vector
+     * @return The array
+     */
+    private static int[] toArray(Vector<Integer> v) {
+        int result[] = new int[v.size()];
+        for (int i=0; i<result.length; i++) {
+            result[i] = v.elementAt(i);
+        }
+        return result;
+    }
+    
     /**
      * This method generates possible moves for a specific PlayerColor.
      * @param board The board state
@@ -22,7 +86,7 @@ public class MoveGen {
      * @return A vector with all possible moves. It only returns standard moves 
      * when there are no captures.
      */
-    public static Vector generatePossibleMoves(Board board, PlayerColor pc) {
+    public static Vector<Move> generatePossibleMoves(Board board, PlayerColor pc) {
         Vector<Move> result = generatePossibleJumps(board,pc);
         if (result.isEmpty()) {
             return generatePossibleMovesAux(board,pc);
@@ -37,9 +101,9 @@ public class MoveGen {
      * @param pc The current PlayerColor
      * @return A vector with all possible moves that are not captures.
      */
-    private static Vector generatePossibleMovesAux(Board board, PlayerColor pc) {
+    private static Vector<Move> generatePossibleMovesAux(Board board, PlayerColor pc) {
         Vector<Move> result = new Vector<Move>();
-        for (int i=0; i<55; i++) {
+        for (int i=10; i<45; i++) {
             if (board.squareBelongsTo(i, pc)) {
                 result.addAll(generatePossibleMovesOnePiece(board,i));
             }
@@ -54,11 +118,11 @@ public class MoveGen {
      * @param index The square to start from
      * @return A vector containing all moves starting from a particular square.
      */
-    private static Vector generatePossibleMovesOnePiece(Board board, int index) {
+    static Vector<Move> generatePossibleMovesOnePiece(Board board, int index) {
         Vector<Move> result = new Vector<Move>();
-        for (int i : moveValues(board.squareAt(index))) {
-            if (board.squareIsEmpty(index + i)) {
-                result.add(new Move(index,index+i));
+        for (int to : STEPS[board.squareAt(index).ordinal()][index]) {
+            if (board.squareIsEmpty(to)) {
+                result.add(new Move(index,to));
             }
         }
         return result;
@@ -71,9 +135,9 @@ public class MoveGen {
      * @param pc The current PlayerColor
      * @return A vector containing all possible jumps.
      */
-    private static Vector generatePossibleJumps(Board board, PlayerColor pc) {
+    static Vector<Move> generatePossibleJumps(Board board, PlayerColor pc) {
         Vector<Move> result = new Vector<Move>();
-        for (int i=0; i<55; i++) {
+        for (int i=10; i<45; i++) {
             if (board.squareBelongsTo(i, pc)) {
                 result.addAll(generatePossibleJumpsOnePiece(board,i));
             }
@@ -88,77 +152,119 @@ public class MoveGen {
      * @param index The starting square
      * @return A vector containing all possible jumps.
      */
-    private static Vector generatePossibleJumpsOnePiece(Board board, int index) {
+    static Vector<Move> generatePossibleJumpsOnePiece(Board board, int index) {
         Vector<Move> result = new Vector<Move>();
-        PlayerColor pc = board.squareAt(index).belongsTo();
-        for (int i : moveValues(board.squareAt(index))) {
-            if (board.squareBelongsTo(index+i,pc.opponent()) && board.squareIsEmpty(index+i+i)) {
-                Move m = new Move(index,index+i+i);
-                Board b = board.copy();
-                b.executeMove(m);
-                
-                if (!(board.squareAt(index).isPawn() && b.squareAt(index+i+i).isKing())) {
-                    Vector<Move> extResult = generatePossibleJumpsOnePieceExtend(b, m);
-                    if (extResult.isEmpty()) {
-                        result.add(m);
-                    } else {
-                        result.addAll(extResult);
-                    }
-                } else {
-                    result.add(m);
-                }
+        Square piece = board.squareAt(index);
+        PlayerColor opponent = piece.belongsTo().opponent();
+        int over[] = JUMP_OVER[piece.ordinal()][index];
+        int to[] = JUMP_TO[piece.ordinal()][index];
+        for (int i=0; i<over.length; i++) {
+            if (board.squareBelongsTo(over[i],opponent) && board.squareIsEmpty(to[i])) {
+                generatePossibleJumpsOnePieceExtend(board, piece, opponent, new Move(index,to[i]), result);
             }
         }
         return result;
     }
     
     /**
-     * This method generates a Vector with all possible jumps or captures that 
-     * can follow a sequence of jumps.
-     * @param board The current board state
+     * This method adds all possible jumps or captures that can follow a 
+     * sequence of jumps. The board isn't changed while jumping: the start 
+     * square of the move counts as empty, and pieces captured so far can't 
+     * be jumped again. A pawn that reaches the king row stops there.
+     * @param board The board state before the move
+     * @param piece The piece that is jumping
+     * @param opponent The color of the pieces that can be captured
      * @param jumpsSoFar The move so far
-     * @return A vector containing all possible jumps.
+     * @param result The vector the complete moves are added to
      */
-    private static Vector generatePossibleJumpsOnePieceExtend(Board board, Move jumpsSoFar) {
-        Vector<Move> result = new Vector<Move>();
+    private static void generatePossibleJumpsOnePieceExtend(Board board, Square piece, 
+            PlayerColor opponent, Move jumpsSoFar, Vector<Move> result) {
         int index = jumpsSoFar.finalSquare();
-        PlayerColor pc = board.squareAt(index).belongsTo();
-        for (int i : moveValues(board.squareAt(index))) {
-            if (board.squareBelongsTo(index+i,pc.opponent()) && board.squareIsEmpty(index+i+i)) {
-                Move move = jumpsSoFar.copy();
-                move.addSquare(index+i+i);
-                
-                Move m = new Move(index,index+i+i);
-                Board b = board.copy();
-                b.executeMove(m);
-                if (!(board.squareAt(index).isPawn() && b.squareAt(index+i+i).isKing())) {
-                    Vector<Move> extResult = generatePossibleJumpsOnePieceExtend(b, move);
-                    if (extResult.isEmpty()) {
-                        result.add(move);
-                    } else {
-                        result.addAll(extResult);
+        if (piece.isPawn() && Board.isKingRow(index)) {
+            result.add(jumpsSoFar);
+            return;
+        }
+        int start = jumpsSoFar.squareAt(0);
+        long captured = jumpsSoFar.captureMask();
+        int over[] = JUMP_OVER[piece.ordinal()][index];
+        int to[] = JUMP_TO[piece.ordinal()][index];
+        boolean extended = false;
+        for (int i=0; i<over.length; i++) {
+            if (board.squareBelongsTo(over[i],opponent) && (captured & (1L << over[i])) == 0 
+                    && (board.squareIsEmpty(to[i]) || to[i] == start)) {
+                generatePossibleJumpsOnePieceExtend(board, piece, opponent, jumpsSoFar.extend(to[i]), result);
+                extended = true;
+            }
+        }
+        if (!extended) {
+            result.add(jumpsSoFar);
+        }
+    }
+    
+    /**
+     * This method checks if a specific PlayerColor is able to capture. Unlike 
+     * generatePossibleJumps it stops at the first capture found and doesn't 
+     * build any moves.
+     * @param board The current board state
+     * @param pc The current PlayerColor
+     * @return A boolean indicating whether at least one jump is possible.
+     */
+    static boolean hasPossibleJumps(Board board, PlayerColor pc) {
+        PlayerColor opponent = pc.opponent();
+        for (int index=10; index<45; index++) {
+            if (board.squareBelongsTo(index, pc)) {
+                int kind = board.squareAt(index).ordinal();
+                int over[] = JUMP_OVER[kind][index];
+                int to[] = JUMP_TO[kind][index];
+                for (int i=0; i<over.length; i++) {
+                    if (board.squareBelongsTo(over[i],opponent) && board.squareIsEmpty(to[i])) {
+                        return true;
                     }
-                } else {
-                    result.add(move);
                 }
             }
         }
-        return result;
+        return false;
     }
     
     /**
-     * This method returns an array with integers representing possible steps 
-     * for a specific piece.
-     * @param sq The square the piece is on.
-     * @return An array with possible steps.
+     * This method checks if a move that isn't a capture can be played by a 
+     * specific PlayerColor. It doesn't check whether a capture is mandatory.
+     * @param board The current board state
+     * @param pc The current PlayerColor
+     * @param move The move to check
+     * @return A boolean indicating whether the step is possible.
+     */
+    static boolean isPossibleStep(Board board, PlayerColor pc, Move move) {
+        if (move.length()!=2 || move.includesJump()) {
+            return false;
+        }
+        int index = move.squareAt(0);
+        if (!board.squareBelongsTo(index, pc) || !board.squareIsEmpty(move.squareAt(1))) {
+            return false;
+        }
+        for (int to : STEPS[board.squareAt(index).ordinal()][index]) {
+            if (to == move.squareAt(1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * This method checks if a move, for instance one that was found while 
+     * searching another position, is legal for a specific PlayerColor. 
+     * Captures are mandatory, so a step is only legal when there are no jumps.
+     * @param board The current board state
+     * @param pc The current PlayerColor
+     * @param move The move to check
+     * @return A boolean indicating whether the move is legal.
      */
-    private static int[] moveValues(Square sq) {
-        switch(sq) {
-            case WHITE_PAWN: return new int[]{4, 5};
-            case BLACK_PAWN: return new int[]{-4, -5};
-            case WHITE_KING: 
-            case BLACK_KING: return new int[]{4, 5, -4, -5};
-            default: return new int[]{};
+    static boolean isLegalMove(Board board, PlayerColor pc, Move move) {
+        if (move.includesJump()) {
+            int index = move.squareAt(0);
+            return board.squareBelongsTo(index, pc) && 
+                    generatePossibleJumpsOnePiece(board, index).contains(move);
         }
+        return isPossibleStep(board, pc, move) && !hasPossibleJumps(board, pc);
     }
 }
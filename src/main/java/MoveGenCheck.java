@@ -0,0 +1,186 @@
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * This class checks that BatchMoveGen generates the same moves in the same
+ * order as MoveGen, and the same positions as executing them on a Board.
+ * Besides positions from random games it checks positions with many kings,
+ * where a king can capture in a circle and end on the square it started
+ * from, and a position built around such a capture.
+ *
+ * Usage: MoveGenCheck [positions] [seed]
+ * exits with status 1 when a difference is found.
+ * @author Aswin van Woudenberg
+ */
+public class MoveGenCheck {
+    private int circular;
+    private int failures;
+
+    /**
+     * This method checks a set of positions and prints every difference.
+     * @param positions The packed positions
+     * @param n The number of positions
+     */
+    public void check(long positions[], int n) {
+        BatchMoveGen gen = new BatchMoveGen(1);
+        int counts[] = new int[n];
+        gen.countMoves(positions, n, counts);
+        int offsets[] = new int[n];
+        int total = BatchMoveGen.offsets(counts, n, offsets);
+        long moves[] = new long[total];
+        gen.generateMoves(positions, n, offsets, moves);
+        long successors[] = new long[2*total];
+        gen.generateSuccessors(positions, n, offsets, successors);
+        gen.shutdown();
+
+        long expected[] = new long[2];
+        for (int i=0; i<n; i++) {
+            Board board = PackedPosition.toBoard(positions, i);
+            PlayerColor pc = PackedPosition.sideToMove(positions, i);
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.size() != counts[i]) {
+                fail(i, "MoveGen has " + possibleMoves.size() + " moves, BatchMoveGen " + counts[i]);
+                continue;
+            }
+            for (int k=0; k<counts[i]; k++) {
+                Move move = possibleMoves.elementAt(k);
+                int j = offsets[i]+k;
+                if (move.squareAt(0) == move.finalSquare()) {
+                    circular++;
+                }
+                if (move.pack() != moves[j]) {
+                    fail(i, "move " + k + " is " + move + " in MoveGen, " + Move.unpack(moves[j]) + " in BatchMoveGen");
+                }
+                Board b = board.copy();
+                b.executeMove(move);
+                PackedPosition.pack(b, pc.opponent(), expected, 0);
+                if (expected[0] != successors[2*j] || expected[1] != successors[2*j+1]) {
+                    fail(i, "the position after " + move + " differs");
+                }
+            }
+        }
+    }
+
+    /**
+     * This method reports a difference.
+     * @param index The index of the position
+     * @param message What differs
+     */
+    private void fail(int index, String message) {
+        failures++;
+        System.out.println("position " + index + ": " + message);
+    }
+
+    /**
+     * This method returns the number of differences found.
+     * @return The number of differences
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * This method returns the number of moves checked in which a king
+     * captured in a circle.
+     * @return The number of moves
+     */
+    public int getCircularCaptures() {
+        return circular;
+    }
+
+    /**
+     * This method packs the position in which the black king on internal
+     * square 20 captures the white pawns on 24, 33, 34 and 25 and returns
+     * to square 20.
+     * @param positions The array the position is written to
+     * @param index The index of the position in the array
+     */
+    private static void packCircularCapture(long positions[], int index) {
+        positions[2*index] = PackedPosition.BIT[20] | (PackedPosition.BIT[24] | PackedPosition.BIT[33]
+                | PackedPosition.BIT[34] | PackedPosition.BIT[25]) << 32;
+        positions[2*index+1] = PackedPosition.BIT[20];
+    }
+
+    /**
+     * This method packs a random position with many kings. Pawns are never
+     * placed on the row where they would have been crowned.
+     * @param random The source of the position
+     * @param positions The array the position is written to
+     * @param index The index of the position in the array
+     */
+    private static void packRandomPosition(Random random, long positions[], int index) {
+        long black = 0, white = 0, kings = 0;
+        for (int i=10; i<45; i++) {
+            long bit = PackedPosition.BIT[i];
+            if (bit == 0) {
+                continue;
+            }
+            int r = random.nextInt(10);
+            boolean king = random.nextInt(3) > 0;
+            if (r < 2 && (king || !Board.isKingRow(i) || i > 40)) {
+                black |= bit;
+            } else if (r < 4 && (king || !Board.isKingRow(i) || i < 14)) {
+                white |= bit;
+            } else {
+                continue;
+            }
+            if (king) {
+                kings |= bit;
+            }
+        }
+        positions[2*index] = black | white << 32;
+        positions[2*index+1] = kings | (random.nextBoolean() ? 1L << 32 : 0);
+    }
+
+    /**
+     * This method packs the positions of a random game.
+     * @param random The source of the moves
+     * @param positions The array the positions are written to
+     * @param index The index of the first position
+     * @param max The maximum number of positions
+     * @return The number of positions
+     */
+    private static int packRandomGame(Random random, long positions[], int index, int max) {
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        int n = 0;
+        while (n < max) {
+            PackedPosition.pack(board, pc, positions, index+n++);
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                break;
+            }
+            board.executeMove(possibleMoves.elementAt(random.nextInt(possibleMoves.size())));
+            pc = pc.opponent();
+        }
+        return n;
+    }
+
+    /**
+     * The main method
+     * @param args The number of random positions of each kind and the seed
+     */
+    public static void main(String args[]) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        Random random = new Random(seed);
+
+        long positions[] = new long[2*(2*count+1)];
+        int n = 0;
+        packCircularCapture(positions, n++);
+        for (int i=0; i<count; i++) {
+            packRandomPosition(random, positions, n++);
+        }
+        while (n < 2*count+1) {
+            n += packRandomGame(random, positions, n, 2*count+1-n);
+        }
+
+        MoveGenCheck check = new MoveGenCheck();
+        check.check(positions, n);
+        System.out.printf("%d positions, %d circular king captures, %d differences%n",
+                n, check.getCircularCaptures(), check.getFailures());
+        if (check.getFailures() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Vector;
+
+/**
+ * This class hands out the legal moves of a position one at a time. Moves
+ * are generated in stages, so when one of the first moves causes a cutoff
+ * the remaining moves are never generated. The stages are:
+ *
+ *   1. The hash move, i.e. the best move found earlier for this position
+ *   2. All captures
+ *   3. The killer moves, i.e. quiet moves that caused a cutoff in a sibling
+ *   4. The remaining quiet moves, generated one piece at a time
+ *
+ * Captures are mandatory, so when there is at least one capture the last
+ * two stages are skipped. The hash move and killer moves are only handed
+ * out when they are legal in this position.
+ * @author Aswin van Woudenberg
+ */
+public class MovePicker implements Iterator<Move> {
+    private static final int HASH_MOVE = 0;
+    private static final int CAPTURES = 1;
+    private static final int KILLERS = 2;
+    private static final int QUIET_MOVES = 3;
+    private static final int DONE = 4;
+
+    private Board board;
+    private PlayerColor pc;
+    private Move hashMove;
+    private Move killers[];
+    private int stage;
+    private Vector<Move> moves;
+    private int moveIndex;
+    private int squareIndex;
+    private Move next;
+
+    /**
+     * The constructor
+     * @param b The board state
+     * @param pc The PlayerColor who's to move
+     * @param hashMove The move to try first, or null
+     * @param killers The killer moves to try after the captures, may be null
+     * or contain null elements
+     */
+    public MovePicker(Board b, PlayerColor pc, Move hashMove, Move killers[]) {
+        board = b;
+        this.pc = pc;
+        this.hashMove = hashMove;
+        this.killers = killers;
+        stage = HASH_MOVE;
+    }
+
+    /**
+     * This method returns true if there are more moves to hand out.
+     * @return A boolean indicating whether there is a next move.
+     */
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = pickNext();
+        }
+        return next != null;
+    }
+
+    /**
+     * This method returns the next move.
+     * @return The next move.
+     */
+    @Override
+    public Move next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Move m = next;
+        next = null;
+        return m;
+    }
+
+    /**
+     * This method advances through the stages until it finds a move that
+     * hasn't been handed out yet.
+     * @return The next move, or null if all moves have been handed out.
+     */
+    private Move pickNext() {
+        while (true) {
+            switch (stage) {
+                case HASH_MOVE:
+                    stage = CAPTURES;
+                    if (hashMove != null && MoveGen.isLegalMove(board, pc, hashMove)) {
+                        return hashMove;
+                    }
+                    hashMove = null;
+                    break;
+                case CAPTURES:
+                    if (moves == null) {
+                        moves = MoveGen.generatePossibleJumps(board, pc);
+                        moveIndex = 0;
+                    }
+                    while (moveIndex < moves.size()) {
+                        Move m = moves.elementAt(moveIndex++);
+                        if (!m.equals(hashMove)) {
+                            return m;
+                        }
+                    }
+                    // Captures are mandatory
+                    stage = moves.isEmpty() ? KILLERS : DONE;
+                    moves = null;
+                    moveIndex = 0;
+                    break;
+                case KILLERS:
+                    while (killers != null && moveIndex < killers.length) {
+                        Move m = killers[moveIndex++];
+                        if (m != null && !m.equals(hashMove) && !isEarlierKiller(m)
+                                && MoveGen.isPossibleStep(board, pc, m)) {
+                            return m;
+                        }
+                    }
+                    stage = QUIET_MOVES;
+                    moveIndex = 0;
+                    break;
+                case QUIET_MOVES:
+                    while (moves != null && moveIndex < moves.size()) {
+                        Move m = moves.elementAt(moveIndex++);
+                        if (!m.equals(hashMove) && !isKiller(m)) {
+                            return m;
+                        }
+                    }
+                    if (squareIndex >= 55) {
+                        stage = DONE;
+                        break;
+                    }
+                    // Generate the steps of the next piece
+                    while (squareIndex < 55 && !board.squareBelongsTo(squareIndex, pc)) {
+                        squareIndex++;
+                    }
+                    moves = squareIndex < 55 ? MoveGen.generatePossibleMovesOnePiece(board, squareIndex) : null;
+                    squareIndex++;
+                    moveIndex = 0;
+                    break;
+                default: // DONE
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * This method checks if a move is one of the killer moves.
+     * @param m The move
+     * @return A boolean indicating whether the move is a killer move.
+     */
+    private boolean isKiller(Move m) {
+        if (killers != null) {
+            for (Move k : killers) {
+                if (m.equals(k)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method checks if a killer move was already handed out, which
+     * happens when both killer slots hold the same move.
+     * @param m The killer move
+     * @return A boolean indicating whether the move was handed out before.
+     */
+    private boolean isEarlierKiller(Move m) {
+        for (int i=0; i<moveIndex-1; i++) {
+            if (m.equals(killers[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This class holds how often a move was played in a position of a game
+ * database, and what the results of those games were.
+ * @author Aswin van Woudenberg
+ */
+public class MoveStatistics {
+    private Move move;
+    private int games;
+    private int blackWins;
+    private int whiteWins;
+    private int draws;
+
+    /**
+     * The constructor
+     * @param move The move
+     * @param games The number of games the move was played in
+     * @param blackWins The number of those games won by black
+     * @param whiteWins The number of those games won by white
+     * @param draws The number of those games that were drawn
+     */
+    public MoveStatistics(Move move, int games, int blackWins, int whiteWins, int draws) {
+        this.move = move;
+        this.games = games;
+        this.blackWins = blackWins;
+        this.whiteWins = whiteWins;
+        this.draws = draws;
+    }
+
+    /**
+     * This method returns the move.
+     * @return The move
+     */
+    public Move getMove() {
+        return move;
+    }
+
+    /**
+     * This method returns the number of games the move was played in.
+     * @return The number of games
+     */
+    public int getGames() {
+        return games;
+    }
+
+    /**
+     * This method returns the number of games won by black.
+     * @return The number of games
+     */
+    public int getBlackWins() {
+        return blackWins;
+    }
+
+    /**
+     * This method returns the number of games won by white.
+     * @return The number of games
+     */
+    public int getWhiteWins() {
+        return whiteWins;
+    }
+
+    /**
+     * This method returns the number of drawn games.
+     * @return The number of games
+     */
+    public int getDraws() {
+        return draws;
+    }
+
+    /**
+     * This method returns the score of the move for a player: a win counts
+     * as one point and a draw as half a point. Games without a known result
+     * aren't counted.
+     * @param pc The player
+     * @return The score from 0 to 1, or 0.5 if no result is known.
+     */
+    public double getScore(PlayerColor pc) {
+        int decided = blackWins + whiteWins + draws;
+        if (decided == 0) {
+            return 0.5;
+        }
+        int wins = pc == PlayerColor.BLACK ? blackWins : whiteWins;
+        return (wins + draws / 2.0) / decided;
+    }
+
+    /**
+     * This method returns a string representation of the statistics.
+     * @return The string
+     */
+    @Override
+    public String toString() {
+        return move + " " + games + " (+" + blackWins + " =" + draws + " -" + whiteWins + ")";
+    }
+}
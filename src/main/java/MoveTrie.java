@@ -0,0 +1,92 @@
+import java.util.Vector;
+
+/**
+ * This class organizes the possible moves of a turn as a tree keyed by square
+ * sequence. The root stands for no squares selected, and every child for one
+ * more square selected. A human player's clicks can then be followed one node
+ * at a time: the children of a node are exactly the squares that can be
+ * selected next, and a node at which a move ends holds that move. Since a
+ * path is kept instead of a set of squares, multiple jumps that pass the
+ * same square twice are handled correctly.
+ * @author Aswin van Woudenberg
+ */
+public class MoveTrie {
+    private MoveTrie children[];
+    private int selectableSquares[];
+    private Move move;
+
+    /**
+     * This constructor creates an empty node.
+     */
+    private MoveTrie() {
+        selectableSquares = new int[0];
+    }
+
+    /**
+     * This constructor creates the tree of a list of moves.
+     * @param possibleMoves The possible moves
+     */
+    public MoveTrie(Vector<Move> possibleMoves) {
+        this();
+        for (Move m : possibleMoves) {
+            MoveTrie node = this;
+            for (int i=0; i<m.length(); i++) {
+                node = node.addChild(m.squareAt(i));
+            }
+            node.move = m;
+        }
+    }
+
+    /**
+     * This method returns the child for a square, creating it if needed.
+     * @param square The square
+     * @return The child node
+     */
+    private MoveTrie addChild(int square) {
+        if (children == null) {
+            children = new MoveTrie[55];
+        }
+        if (children[square] == null) {
+            children[square] = new MoveTrie();
+            int grown[] = new int[selectableSquares.length+1];
+            System.arraycopy(selectableSquares, 0, grown, 0, selectableSquares.length);
+            grown[selectableSquares.length] = square;
+            selectableSquares = grown;
+        }
+        return children[square];
+    }
+
+    /**
+     * This method returns true if a square can be selected next.
+     * @param square The square
+     * @return A boolean indicating whether the square can be selected.
+     */
+    public boolean canSelect(int square) {
+        return children != null && square >= 0 && square < 55 && children[square] != null;
+    }
+
+    /**
+     * This method returns the node reached by selecting a square.
+     * @param square The square
+     * @return The node, or null if the square can't be selected.
+     */
+    public MoveTrie select(int square) {
+        return canSelect(square) ? children[square] : null;
+    }
+
+    /**
+     * This method returns the squares that can be selected next.
+     * @return An array with the squares
+     */
+    public int[] getSelectableSquares() {
+        return selectableSquares;
+    }
+
+    /**
+     * This method returns the move that is complete at this node.
+     * @return The move, or null if the selected squares are no complete move.
+     */
+    public Move getMove() {
+        return move;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * This class chooses moves from a game database, so the computer plays the
+ * openings that were played in the games. Of the moves played often enough
+ * and with a good enough score, a move is chosen at random, weighted by how
+ * often it was played.
+ * @author Aswin van Woudenberg
+ */
+public class OpeningBook {
+    private static final int DEFAULT_MIN_GAMES = 10;
+    private static final double DEFAULT_MIN_SCORE = 0.4;
+
+    private GameDatabase database;
+    private Random random;
+    private int minGames;
+    private double minScore;
+
+    /**
+     * The constructor
+     * @param database The game database
+     */
+    public OpeningBook(GameDatabase database) {
+        this.database = database;
+        random = new Random();
+        minGames = DEFAULT_MIN_GAMES;
+        minScore = DEFAULT_MIN_SCORE;
+    }
+
+    /**
+     * This method returns the game database of the book.
+     * @return The game database
+     */
+    public GameDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * This method sets how often a move must have been played to be chosen.
+     * @param minGames The number of games
+     */
+    public void setMinGames(int minGames) {
+        this.minGames = minGames;
+    }
+
+    /**
+     * This method sets the score a move must have for the player to move to
+     * be chosen.
+     * @param minScore The score from 0 to 1
+     */
+    public void setMinScore(double minScore) {
+        this.minScore = minScore;
+    }
+
+    /**
+     * This method chooses a move for a position.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @return The move, or null if the book has no move for the position.
+     */
+    public Move getMove(Board board, PlayerColor pc) {
+        EngineEvents.BookProbeEvent event = new EngineEvents.BookProbeEvent();
+        event.begin();
+        Move move = chooseMove(board, pc, event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.move = String.valueOf(move);
+            event.commit();
+        }
+        return move;
+    }
+
+    /**
+     * This method chooses a move for a position, counting the candidates.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param event The event of the probe
+     * @return The move, or null if the book has no move for the position.
+     */
+    private Move chooseMove(Board board, PlayerColor pc, EngineEvents.BookProbeEvent event) {
+        Vector<MoveStatistics> candidates = new Vector<MoveStatistics>();
+        long total = 0;
+        for (MoveStatistics s : database.lookup(board, pc)) {
+            if (s.getGames() >= minGames && s.getScore(pc) >= minScore) {
+                candidates.add(s);
+                total += s.getGames();
+            }
+        }
+        event.candidates = candidates.size();
+        if (total == 0) {
+            return null;
+        }
+        long r = (long)(random.nextDouble() * total);
+        for (MoveStatistics s : candidates) {
+            r -= s.getGames();
+            if (r < 0) {
+                return s.getMove();
+            }
+        }
+        return candidates.lastElement().getMove();
+    }
+}
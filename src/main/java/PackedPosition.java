@@ -0,0 +1,99 @@
+/**
+ * This class packs a position, the board and the player who is to move, into
+ * two longs, so large sets of positions can be kept in primitive arrays.
+ * Bit n-1 of every 32 bit mask stands for square n in standard checkers
+ * notation.
+ *
+ *  first long   bits  0-31  the black pieces
+ *               bits 32-63  the white pieces
+ *  second long  bits  0-31  the kings
+ *               bit  32     set if white is to move
+ *
+ * Position i of an array is found at indices 2*i and 2*i+1.
+ * @author Aswin van Woudenberg
+ */
+public class PackedPosition {
+    /**
+     * The bit of every square of the internal representation, or 0 for the
+     * border.
+     */
+    static final long BIT[] = new long[55];
+
+    private static final long WHITE_TO_MOVE = 1L << 32;
+
+    static {
+        for (int n=1; n<=32; n++) {
+            BIT[Util.notationToSquareIndex(n)] = 1L << (n-1);
+        }
+    }
+
+    /**
+     * This class contains only static methods. Thus, the caller should
+     * be prevented from constructing objects of this class, by declaring this
+     * private constructor.
+     */
+    private PackedPosition() {
+        // prevents even the native class from calling constuctor.
+        throw new AssertionError();
+    }
+
+    /**
+     * This method packs a position into an array.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param positions The array of packed positions
+     * @param index The index of the position in the array
+     */
+    public static void pack(Board board, PlayerColor pc, long positions[], int index) {
+        long black = 0, white = 0, kings = 0;
+        for (int i=10; i<45; i++) {
+            Square sq = board.squareAt(i);
+            if (sq.belongsTo(PlayerColor.BLACK)) {
+                black |= BIT[i];
+            } else if (sq.belongsTo(PlayerColor.WHITE)) {
+                white |= BIT[i];
+            }
+            if (sq.isKing()) {
+                kings |= BIT[i];
+            }
+        }
+        positions[2*index] = black | white << 32;
+        positions[2*index+1] = kings | (pc == PlayerColor.WHITE ? WHITE_TO_MOVE : 0);
+    }
+
+    /**
+     * This method unpacks the board of a position.
+     * @param positions The array of packed positions
+     * @param index The index of the position in the array
+     * @return A new board
+     */
+    public static Board toBoard(long positions[], int index) {
+        long black = positions[2*index] & 0xFFFFFFFFL;
+        long white = positions[2*index] >>> 32;
+        long kings = positions[2*index+1];
+        Square squares[] = new Square[55];
+        for (int i=0; i<55; i++) {
+            long bit = BIT[i];
+            if (bit == 0) {
+                squares[i] = Square.BORDER;
+            } else if ((black & bit) != 0) {
+                squares[i] = (kings & bit) != 0 ? Square.BLACK_KING : Square.BLACK_PAWN;
+            } else if ((white & bit) != 0) {
+                squares[i] = (kings & bit) != 0 ? Square.WHITE_KING : Square.WHITE_PAWN;
+            } else {
+                squares[i] = Square.EMPTY;
+            }
+        }
+        return new Board(squares);
+    }
+
+    /**
+     * This method returns the player who is to move in a position.
+     * @param positions The array of packed positions
+     * @param index The index of the position in the array
+     * @return The PlayerColor who is to move
+     */
+    public static PlayerColor sideToMove(long positions[], int index) {
+        return (positions[2*index+1] & WHITE_TO_MOVE) != 0 ? PlayerColor.WHITE : PlayerColor.BLACK;
+    }
+}
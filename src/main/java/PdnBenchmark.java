@@ -0,0 +1,108 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.Vector;
+import java.util.stream.Stream;
+
+/**
+ * This class measures how fast PdnWriter and PdnReader handle a large
+ * collection of games. It writes a file of synthetic games, made of random
+ * legal moves, reads it back as a stream of games and as a stream of
+ * positions, and checks that the games read are the games written.
+ *
+ * Usage: PdnBenchmark [games] [file]
+ * Without a file name a temporary file is used and deleted afterwards.
+ * @author Aswin van Woudenberg
+ */
+public class PdnBenchmark {
+    private static final int MAX_PLIES = 150;
+
+    /**
+     * This method creates a game of random moves.
+     * @param random The source of the moves
+     * @param number The number of the game
+     * @return The game
+     */
+    private static PdnGame randomGame(Random random, int number) {
+        PdnGame game = new PdnGame();
+        game.setTag("Event", "Synthetic game " + number);
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        String result = "1/2-1/2";
+        for (int ply=0; ply<MAX_PLIES; ply++) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                result = pc == PlayerColor.BLACK ? "0-1" : "1-0";
+                break;
+            }
+            Move m = possibleMoves.elementAt(random.nextInt(possibleMoves.size()));
+            game.addMove(m);
+            board.executeMove(m);
+            pc = pc.opponent();
+        }
+        game.setResult(result);
+        return game;
+    }
+
+    /**
+     * The main method
+     * @param args The number of games and the file
+     * @throws Exception when the file can't be written or read
+     */
+    public static void main(String args[]) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        Path file = args.length > 1 ? Paths.get(args[1]) : Files.createTempFile("games", ".pdn");
+
+        long start = System.nanoTime();
+        long moves = 0;
+        Random random = new Random(1);
+        try (PdnWriter writer = PdnWriter.create(file)) {
+            for (int i=0; i<count; i++) {
+                PdnGame game = randomGame(random, i);
+                moves += game.getMoves().size();
+                writer.write(game);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long size = Files.size(file);
+        System.out.printf("generated and wrote %d games, %d moves, %.1f MB in %.2f s%n",
+                count, moves, size / 1e6, seconds);
+
+        start = System.nanoTime();
+        long read;
+        try (Stream<PdnGame> games = PdnReader.open(file).games()) {
+            read = games.mapToLong(g -> g.getMoves().size()).sum();
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("read %d moves: %.0f games/s, %.1f MB/s%n",
+                read, count / seconds, size / 1e6 / seconds);
+
+        start = System.nanoTime();
+        long positions;
+        try (Stream<Board> boards = PdnReader.open(file).positions()) {
+            positions = boards.count();
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("read %d positions: %.0f positions/s%n", positions, positions / seconds);
+
+        random = new Random(1);
+        try (PdnReader reader = PdnReader.open(file)) {
+            for (int i=0; i<count; i++) {
+                PdnGame expected = randomGame(random, i);
+                PdnGame game = reader.next();
+                if (game == null || !game.getMoves().equals(expected.getMoves())
+                        || !game.getResult().equals(expected.getResult())) {
+                    throw new IllegalStateException("Game " + i + " differs");
+                }
+            }
+            if (reader.next() != null) {
+                throw new IllegalStateException("More games than written");
+            }
+        }
+        System.out.println("all games read back equal");
+        if (args.length < 2) {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * This class holds a game in Portable Draughts Notation: the tags, like Event
+ * and Result, the start position and the moves. The start position is given
+ * by the FEN tag, or is the usual start position when there is none.
+ * @author Aswin van Woudenberg
+ */
+public class PdnGame {
+    private LinkedHashMap<String, String> tags;
+    private Board startBoard;
+    private PlayerColor startColor;
+    private Vector<Move> moves;
+    private String result;
+
+    /**
+     * This constructor creates a game without moves from the usual start
+     * position.
+     */
+    public PdnGame() {
+        this(new Board(), PlayerColor.BLACK);
+    }
+
+    /**
+     * This constructor creates a game without moves from a start position.
+     * @param board The start position, which is copied
+     * @param pc The PlayerColor who moves first
+     */
+    public PdnGame(Board board, PlayerColor pc) {
+        tags = new LinkedHashMap<String, String>();
+        startBoard = board.copy();
+        startColor = pc;
+        moves = new Vector<Move>();
+        result = "*";
+    }
+
+    /**
+     * This method returns the value of a tag.
+     * @param name The name of the tag
+     * @return The value, or null if the game has no such tag
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    /**
+     * This method sets a tag. The Result tag also sets the result, and the FEN
+     * tag is ignored, since the start position is given to the constructor.
+     * @param name The name of the tag
+     * @param value The value
+     */
+    public void setTag(String name, String value) {
+        if (name.equals("Result")) {
+            result = value;
+        }
+        if (!name.equals("FEN")) {
+            tags.put(name, value);
+        }
+    }
+
+    /**
+     * This method returns all tags in the order they were set.
+     * @return A map from tag names to values
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * This method returns the start position.
+     * @return A copy of the board before the first move
+     */
+    public Board getStartBoard() {
+        return startBoard.copy();
+    }
+
+    /**
+     * This method returns the player who moves first.
+     * @return The PlayerColor
+     */
+    public PlayerColor getStartColor() {
+        return startColor;
+    }
+
+    /**
+     * This method returns true if the game starts from the usual start
+     * position with black to move.
+     * @return A boolean indicating whether the game has the usual start
+     */
+    public boolean hasInitialStart() {
+        if (startColor != PlayerColor.BLACK) {
+            return false;
+        }
+        Board initial = new Board();
+        for (int i=10; i<45; i++) {
+            if (initial.squareAt(i) != startBoard.squareAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method adds a move. The caller makes sure it is legal.
+     * @param m The move
+     */
+    public void addMove(Move m) {
+        moves.add(m);
+    }
+
+    /**
+     * This method returns the moves of the game.
+     * @return A vector with the moves
+     */
+    public Vector<Move> getMoves() {
+        return moves;
+    }
+
+    /**
+     * This method returns the result: "1-0" when black, who moves first,
+     * won, "0-1" when white won, "1/2-1/2" for a draw and "*" when unknown.
+     * @return The result
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * This method sets the result.
+     * @param result The result, like "1-0", "0-1", "1/2-1/2" or "*"
+     */
+    public void setResult(String result) {
+        this.result = result;
+        tags.put("Result", result);
+    }
+
+    /**
+     * This method returns the positions of the game, from the start position
+     * up to the position after the last move.
+     * @return A vector with a board for every position
+     */
+    public Vector<Board> getPositions() {
+        Vector<Board> positions = new Vector<Board>();
+        Board board = startBoard.copy();
+        positions.add(board.copy());
+        for (Move m : moves) {
+            board.executeMove(m);
+            positions.add(board.copy());
+        }
+        return positions;
+    }
+
+    /**
+     * This method returns the FEN description of a position, like
+     * "B:W21,22,K23:B1,2,K3", with the player to move first.
+     * @param board The board
+     * @param pc The PlayerColor who is to move
+     * @return The FEN string
+     */
+    public static String toFen(Board board, PlayerColor pc) {
+        StringBuilder white = new StringBuilder(":W");
+        StringBuilder black = new StringBuilder(":B");
+        for (int n=1; n<=32; n++) {
+            Square sq = board.squareAt(Util.notationToSquareIndex(n));
+            StringBuilder sb = sq.belongsTo(PlayerColor.WHITE) ? white : black;
+            if (sq.isPiece()) {
+                if (sb.length() > 2) {
+                    sb.append(',');
+                }
+                if (sq.isKing()) {
+                    sb.append('K');
+                }
+                sb.append(n);
+            }
+        }
+        return (pc == PlayerColor.WHITE ? "W" : "B") + white + black;
+    }
+
+    /**
+     * This method creates a board from a FEN description. Squares may be
+     * given as ranges, like 1-12.
+     * @param fen The FEN string
+     * @return The board
+     * @throws IllegalArgumentException when the FEN string can't be read
+     */
+    public static Board fenToBoard(String fen) {
+        Square squares[] = new Square[55];
+        for (int i=0; i<55; i++) {
+            squares[i] = Square.BORDER;
+        }
+        for (int n=1; n<=32; n++) {
+            squares[Util.notationToSquareIndex(n)] = Square.EMPTY;
+        }
+        String parts[] = fen.trim().split(":");
+        try {
+            for (int p=1; p<parts.length; p++) {
+                String part = parts[p].trim();
+                if (part.isEmpty()) {
+                    continue;
+                }
+                boolean white = Character.toUpperCase(part.charAt(0)) == 'W';
+                for (String piece : part.substring(1).split(",")) {
+                    piece = piece.trim();
+                    if (piece.isEmpty()) {
+                        continue;
+                    }
+                    boolean king = Character.toUpperCase(piece.charAt(0)) == 'K';
+                    if (king) {
+                        piece = piece.substring(1);
+                    }
+                    int dash = piece.indexOf('-');
+                    int first = Integer.parseInt(dash < 0 ? piece : piece.substring(0, dash));
+                    int last = dash < 0 ? first : Integer.parseInt(piece.substring(dash+1));
+                    for (int n=first; n<=last; n++) {
+                        if (n < 1 || n > 32) {
+                            throw new IllegalArgumentException("No square " + n + " in FEN " + fen);
+                        }
+                        squares[Util.notationToSquareIndex(n)] = white
+                                ? (king ? Square.WHITE_KING : Square.WHITE_PAWN)
+                                : (king ? Square.BLACK_KING : Square.BLACK_PAWN);
+                    }
+                }
+            }
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Can't read FEN " + fen);
+        }
+        return new Board(squares);
+    }
+
+    /**
+     * This method returns the player to move of a FEN description.
+     * @param fen The FEN string
+     * @return The PlayerColor
+     */
+    public static PlayerColor fenToColor(String fen) {
+        String s = fen.trim();
+        return (!s.isEmpty() && Character.toUpperCase(s.charAt(0)) == 'W') ? PlayerColor.WHITE : PlayerColor.BLACK;
+    }
+}
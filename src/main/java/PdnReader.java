@@ -0,0 +1,379 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class reads games in Portable Draughts Notation from a channel, one
+ * game at a time, so collections of any size can be processed. The bytes are
+ * read into one buffer and scanned in place. Comments, variations, move
+ * numbers, annotations like ! and ? and numeric annotation glyphs are
+ * skipped. Every move is looked up among the moves generated by MoveGen, so
+ * both short jump notation like 15x31 and full notation like 15x24x31 work.
+ * @author Aswin van Woudenberg
+ */
+public class PdnReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+
+    private ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private StringBuilder token;
+    private int squares[];
+    private int gameNumber;
+
+    /**
+     * The constructor
+     * @param channel The channel to read from
+     */
+    public PdnReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        buffer.flip();
+        token = new StringBuilder();
+        squares = new int[32];
+    }
+
+    /**
+     * This method opens a file for reading.
+     * @param file The file
+     * @return A reader of the file
+     * @throws IOException when the file can't be opened
+     */
+    public static PdnReader open(Path file) throws IOException {
+        return new PdnReader(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    /**
+     * This method returns the next byte without consuming it.
+     * @return The byte, or EOF at the end of the channel
+     * @throws IOException when the channel can't be read
+     */
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int n;
+            do {
+                n = channel.read(buffer);
+            } while (n == 0);
+            buffer.flip();
+            if (n < 0) {
+                return EOF;
+            }
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * This method consumes the next byte.
+     * @return The byte, or EOF at the end of the channel
+     * @throws IOException when the channel can't be read
+     */
+    private int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            buffer.position(buffer.position()+1);
+        }
+        return c;
+    }
+
+    /**
+     * This method skips bytes up to and including a specific byte.
+     * @param end The byte to stop at
+     * @throws IOException when the channel can't be read
+     */
+    private void skipPast(int end) throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != end && c != EOF);
+    }
+
+    /**
+     * This method skips a variation, which may contain other variations and
+     * comments.
+     * @throws IOException when the channel can't be read
+     */
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            int c = read();
+            if (c == EOF) {
+                return;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '{') {
+                skipPast('}');
+            }
+        }
+    }
+
+    /**
+     * This method reads a tag after its opening bracket.
+     * @param tags The map the tag is added to
+     * @throws IOException when the channel can't be read
+     */
+    private void readTag(Map<String, String> tags) throws IOException {
+        token.setLength(0);
+        int c = read();
+        while (c != EOF && c != ']' && c != '"' && !Character.isWhitespace(c)) {
+            token.append((char)c);
+            c = read();
+        }
+        String name = token.toString();
+        while (c != EOF && c != ']' && c != '"') {
+            c = read();
+        }
+        token.setLength(0);
+        if (c == '"') {
+            c = read();
+            while (c != EOF && c != '"') {
+                if (c == '\\') {
+                    c = read();
+                }
+                token.append((char)c);
+                c = read();
+            }
+            skipPast(']');
+        }
+        tags.put(name, token.toString());
+    }
+
+    /**
+     * This method reads the next game.
+     * @return The game, or null at the end of the channel
+     * @throws IOException when the channel can't be read, or when a game
+     * contains a move that isn't legal
+     */
+    public PdnGame next() throws IOException {
+        LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>();
+        PdnGame game = null;
+        Board board = null;
+        PlayerColor pc = null;
+        Vector<Move> possibleMoves = null;
+        while (true) {
+            int c = peek();
+            if (c == EOF) {
+                break;
+            } else if (Character.isWhitespace(c)) {
+                read();
+            } else if (c == '[') {
+                if (game != null) {
+                    // A game without a result ends where the next one starts
+                    break;
+                }
+                read();
+                readTag(tags);
+            } else if (c == '{') {
+                skipPast('}');
+            } else if (c == '(') {
+                read();
+                skipVariation();
+            } else if (c == ';' || c == '%') {
+                skipPast('\n');
+            } else if (c == '$') {
+                read();
+                while (Character.isDigit(peek())) {
+                    read();
+                }
+            } else {
+                readToken();
+                if (game == null) {
+                    game = createGame(tags);
+                    gameNumber++;
+                    board = game.getStartBoard();
+                    pc = game.getStartColor();
+                }
+                String result = resultOf();
+                if (result != null) {
+                    game.setResult(result);
+                    return game;
+                }
+                int length = parseMove();
+                if (length > 0) {
+                    if (possibleMoves == null) {
+                        possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+                    }
+                    Move m = Util.findMove(possibleMoves, squares, length);
+                    if (m == null) {
+                        throw new IOException("Illegal move " + token + " in game " + gameNumber);
+                    }
+                    game.addMove(m);
+                    board.executeMove(m);
+                    pc = pc.opponent();
+                    possibleMoves = null;
+                }
+            }
+        }
+        if (game == null && !tags.isEmpty()) {
+            game = createGame(tags);
+            gameNumber++;
+        }
+        return game;
+    }
+
+    /**
+     * This method creates a game with its tags.
+     * @param tags The tags read so far
+     * @return The game
+     * @throws IOException when the FEN tag can't be read
+     */
+    private PdnGame createGame(Map<String, String> tags) throws IOException {
+        PdnGame game;
+        String fen = tags.get("FEN");
+        if (fen != null) {
+            try {
+                game = new PdnGame(PdnGame.fenToBoard(fen), PdnGame.fenToColor(fen));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException(ex.getMessage() + " in game " + (gameNumber+1));
+            }
+        } else {
+            game = new PdnGame();
+        }
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            game.setTag(tag.getKey(), tag.getValue());
+        }
+        return game;
+    }
+
+    /**
+     * This method reads characters up to the next white space or special
+     * character into token.
+     * @throws IOException when the channel can't be read
+     */
+    private void readToken() throws IOException {
+        token.setLength(0);
+        int c = peek();
+        while (c != EOF && !Character.isWhitespace(c) && c != '{' && c != '(' && c != '[' && c != ';') {
+            token.append((char)read());
+            c = peek();
+        }
+        if (token.length() == 0) {
+            // A character like ) that can't start anything
+            token.append((char)read());
+        }
+    }
+
+    /**
+     * This method returns the result if the token is one.
+     * @return The result, or null if the token isn't a result.
+     */
+    private String resultOf() {
+        String s = token.toString();
+        if (s.equals("*") || s.equals("1-0") || s.equals("0-1") || s.equals("1/2-1/2")) {
+            return s;
+        } else if (s.equals("2-0")) {
+            return "1-0";
+        } else if (s.equals("0-2")) {
+            return "0-1";
+        } else if (s.equals("1-1")) {
+            return "1/2-1/2";
+        }
+        return null;
+    }
+
+    /**
+     * This method reads the squares of a move from the token into squares. A
+     * move number in front of the move, like 12. or 12..., is skipped, and so
+     * are annotations after it.
+     * @return The number of squares, or 0 if the token is no move.
+     */
+    private int parseMove() {
+        int i = 0;
+        int n = token.length();
+        int dot = token.lastIndexOf(".");
+        if (dot >= 0) {
+            i = dot+1;
+        }
+        int length = 0;
+        while (i < n && length < squares.length) {
+            char c = token.charAt(i);
+            if (!Character.isDigit(c)) {
+                return 0;
+            }
+            int square = 0;
+            while (i < n && Character.isDigit(token.charAt(i))) {
+                square = square*10 + token.charAt(i) - '0';
+                i++;
+            }
+            squares[length++] = square;
+            if (i < n) {
+                c = token.charAt(i);
+                if (c == '-' || c == 'x' || c == 'X' || c == ':') {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+        }
+        // Whatever follows the squares, like ! or ?, is an annotation
+        return length >= 2 ? length : 0;
+    }
+
+    /**
+     * This method returns a lazy stream of the games. Reading stops when
+     * the stream isn't consumed further. Errors are thrown as
+     * UncheckedIOException.
+     * @return The stream of games
+     */
+    public Stream<PdnGame> games() {
+        Spliterator<PdnGame> spliterator = new Spliterators.AbstractSpliterator<PdnGame>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super PdnGame> action) {
+                try {
+                    PdnGame game = next();
+                    if (game == null) {
+                        return false;
+                    }
+                    action.accept(game);
+                    return true;
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * This method returns a lazy stream of all positions of all games, each
+     * game from its start position up to the position after its last move.
+     * @return The stream of positions
+     */
+    public Stream<Board> positions() {
+        return games().flatMap(g -> g.getPositions().stream());
+    }
+
+    /**
+     * This method closes the channel.
+     * @throws IOException when the channel can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
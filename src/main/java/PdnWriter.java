@@ -0,0 +1,152 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * This class writes games in Portable Draughts Notation to a channel. Jumps
+ * are written with every square, like 15x24x31, so they can be read back
+ * without ambiguity. Games are collected in a buffer that is written to the
+ * channel when it is full.
+ * @author Aswin van Woudenberg
+ */
+public class PdnWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int LINE_LENGTH = 79;
+
+    private WritableByteChannel channel;
+    private ByteBuffer buffer;
+    private StringBuilder text;
+
+    /**
+     * The constructor
+     * @param channel The channel to write to
+     */
+    public PdnWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        text = new StringBuilder();
+    }
+
+    /**
+     * This method creates a file, or empties an existing one, for writing.
+     * @param file The file
+     * @return A writer of the file
+     * @throws IOException when the file can't be created
+     */
+    public static PdnWriter create(Path file) throws IOException {
+        return new PdnWriter(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * This method writes a game.
+     * @param game The game
+     * @throws IOException when the channel can't be written
+     */
+    public void write(PdnGame game) throws IOException {
+        text.setLength(0);
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            appendTag(tag.getKey(), tag.getValue());
+        }
+        if (!game.getTags().containsKey("Result")) {
+            appendTag("Result", game.getResult());
+        }
+        if (!game.hasInitialStart()) {
+            appendTag("FEN", PdnGame.toFen(game.getStartBoard(), game.getStartColor()));
+        }
+
+        int lineStart = text.length();
+        int moveNumber = 1;
+        boolean black = game.getStartColor() == PlayerColor.BLACK;
+        boolean first = true;
+        for (Move m : game.getMoves()) {
+            String word;
+            if (black) {
+                word = moveNumber + ". " + Util.moveToNotation(m);
+            } else if (first) {
+                word = moveNumber + "... " + Util.moveToNotation(m);
+            } else {
+                word = Util.moveToNotation(m);
+            }
+            lineStart = appendWord(word, lineStart);
+            if (!black) {
+                moveNumber++;
+            }
+            black = !black;
+            first = false;
+        }
+        appendWord(game.getResult(), lineStart);
+        text.append("\n\n");
+
+        for (int i=0; i<text.length(); i++) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte)text.charAt(i));
+        }
+    }
+
+    /**
+     * This method adds a tag to the text.
+     * @param name The name of the tag
+     * @param value The value of the tag
+     */
+    private void appendTag(String name, String value) {
+        text.append('[').append(name).append(" \"");
+        for (int i=0; i<value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                text.append('\\');
+            }
+            text.append(c);
+        }
+        text.append("\"]\n");
+    }
+
+    /**
+     * This method adds a word of the move text, starting a new line when
+     * the current one would become too long.
+     * @param word The word
+     * @param lineStart The index in text where the current line starts
+     * @return The index where the line of the word starts
+     */
+    private int appendWord(String word, int lineStart) {
+        if (text.length() > lineStart) {
+            if (text.length() - lineStart + 1 + word.length() > LINE_LENGTH) {
+                text.append('\n');
+                lineStart = text.length();
+            } else {
+                text.append(' ');
+            }
+        }
+        text.append(word);
+        return lineStart;
+    }
+
+    /**
+     * This method writes the buffered games to the channel.
+     * @throws IOException when the channel can't be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * This method writes the buffered games and closes the channel.
+     * @throws IOException when the channel can't be written
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
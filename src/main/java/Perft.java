@@ -0,0 +1,115 @@
+/**
+ * This class counts the positions reachable from the start position in a
+ * number of moves (perft), using BatchMoveGen one level at a time. It is
+ * used to check the move generator and to measure how the batch move
+ * generator scales with the number of threads. For every thread count it
+ * prints the node counts and the number of positions handled per second.
+ *
+ * Usage: Perft [depth] [thread counts...]
+ * The default depth is 9 and the default thread counts are the powers of two
+ * up to the number of processors.
+ * @author Aswin van Woudenberg
+ */
+public class Perft {
+    private BatchMoveGen gen;
+    private long generated;
+
+    /**
+     * The constructor
+     * @param gen The batch move generator
+     */
+    public Perft(BatchMoveGen gen) {
+        this.gen = gen;
+    }
+
+    /**
+     * This method counts the positions reached after every number of moves.
+     * All levels but the last are kept in memory.
+     * @param depth The number of moves
+     * @return An array with the count for every depth from 1
+     */
+    public long[] perft(int depth) {
+        long result[] = new long[depth];
+        long positions[] = new long[2];
+        PackedPosition.pack(new Board(), PlayerColor.BLACK, positions, 0);
+        int n = 1;
+        generated = 0;
+        for (int d=1; d<=depth; d++) {
+            int counts[] = new int[n];
+            gen.countMoves(positions, n, counts);
+            generated += n;
+            long total = 0;
+            for (int i=0; i<n; i++) {
+                total += counts[i];
+            }
+            result[d-1] = total;
+            if (d == depth) {
+                break;
+            }
+            int offsets[] = new int[n];
+            int next = BatchMoveGen.offsets(counts, n, offsets);
+            long successors[] = new long[2*next];
+            gen.generateSuccessors(positions, n, offsets, successors);
+            generated += n;
+            positions = successors;
+            n = next;
+        }
+        return result;
+    }
+
+    /**
+     * This method returns the number of positions whose moves were counted or
+     * generated by the last call of perft.
+     * @return The number of positions
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * The main method
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int threadCounts[];
+        if (args.length > 1) {
+            threadCounts = new int[args.length-1];
+            for (int i=1; i<args.length; i++) {
+                threadCounts[i-1] = Integer.parseInt(args[i]);
+            }
+        } else {
+            int processors = Runtime.getRuntime().availableProcessors();
+            int count = 0;
+            for (int t=1; t<=processors; t*=2) {
+                count++;
+            }
+            threadCounts = new int[count];
+            for (int i=0, t=1; i<count; i++, t*=2) {
+                threadCounts[i] = t;
+            }
+        }
+
+        double base = 0;
+        for (int threads : threadCounts) {
+            BatchMoveGen gen = new BatchMoveGen(threads);
+            Perft perft = new Perft(gen);
+            perft.perft(depth); // warm up
+            long start = System.nanoTime();
+            long counts[] = perft.perft(depth);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            gen.shutdown();
+            if (threads == threadCounts[0]) {
+                for (int d=1; d<=depth; d++) {
+                    System.out.printf("perft %2d %12d%n", d, counts[d-1]);
+                }
+            }
+            double rate = perft.getGenerated() / seconds;
+            if (base == 0) {
+                base = rate / threads;
+            }
+            System.out.printf("%3d threads %8.3f s %12.0f positions/s  speedup %5.2f%n",
+                    threads, seconds, rate, rate / base);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This class holds the analysis of one position of a game by GameAnalysis:
+ * the move that was played, the best move with the line expected to follow,
+ * and how much worse the played move is.
+ * @author Aswin van Woudenberg
+ */
+public class PositionAnalysis {
+    private int ply;
+    private PlayerColor player;
+    private Move played;
+    private int playedScore;
+    private ScoredMove best;
+    private int depth;
+    private boolean blunder;
+
+    /**
+     * The constructor
+     * @param ply The number of moves played before the position
+     * @param player The PlayerColor who is to move
+     * @param played The move that was played
+     * @param playedScore The score of the played move
+     * @param best The best move, with its score and principal variation
+     * @param depth The search depth of the scores
+     * @param blunder True if the played move is a blunder
+     */
+    public PositionAnalysis(int ply, PlayerColor player, Move played, int playedScore,
+            ScoredMove best, int depth, boolean blunder) {
+        this.ply = ply;
+        this.player = player;
+        this.played = played;
+        this.playedScore = playedScore;
+        this.best = best;
+        this.depth = depth;
+        this.blunder = blunder;
+    }
+
+    /**
+     * This method returns the number of moves played before the position.
+     * @return The ply, 0 for the start position
+     */
+    public int getPly() {
+        return ply;
+    }
+
+    /**
+     * This method returns the player who is to move.
+     * @return The PlayerColor
+     */
+    public PlayerColor getPlayer() {
+        return player;
+    }
+
+    /**
+     * This method returns the move that was played.
+     * @return The move
+     */
+    public Move getPlayedMove() {
+        return played;
+    }
+
+    /**
+     * This method returns the score of the move that was played, for the
+     * player who played it.
+     * @return The score
+     */
+    public int getPlayedScore() {
+        return playedScore;
+    }
+
+    /**
+     * This method returns the best move, for the player to move.
+     * @return The best move with its score and principal variation
+     */
+    public ScoredMove getBest() {
+        return best;
+    }
+
+    /**
+     * This method returns the search depth of the scores.
+     * @return The depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * This method returns how much worse the played move is than the best
+     * move.
+     * @return The difference in score, at least 0
+     */
+    public int getLoss() {
+        return Math.max(0, best.getScore() - playedScore);
+    }
+
+    /**
+     * This method returns true if the played move is a blunder: it lost at
+     * least the blunder threshold of the analysis.
+     * @return A boolean indicating whether the move is a blunder.
+     */
+    public boolean isBlunder() {
+        return blunder;
+    }
+
+    /**
+     * This method returns the score of the position for black, which is the
+     * score of the best move from the point of view of black. Following it
+     * over the positions of a game shows who was winning when.
+     * @return The score
+     */
+    public int getBlackScore() {
+        return player == PlayerColor.BLACK ? best.getScore() : -best.getScore();
+    }
+
+    /**
+     * This method returns a string representation of the analysis: the move
+     * number, the played move and its score, and the best move with its
+     * line when another move was better.
+     * @return The string representing the analysis.
+     */
+    @Override
+    public String toString() {
+        String result = (ply/2+1) + (player == PlayerColor.BLACK ? ". " : "... ") + played + " " + playedScore;
+        if (!played.equals(best.getMove())) {
+            result += "  best " + best;
+        }
+        if (blunder) {
+            result += "  blunder (" + getLoss() + ")";
+        }
+        return result;
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * This class keeps the hash keys of the positions of a game, and of the
+ * moves being searched, in order. A capture or a pawn move can never be taken
+ * back, so positions from before such an irreversible move can't return.
+ * Only the positions since the last irreversible move are compared to find
+ * repetitions. The number of plies since the last irreversible move is also
+ * used for the optional move-count draw rule.
+ * @author Aswin van Woudenberg
+ */
+public class PositionHistory {
+    private long keys[];
+    private int reversiblePlies[];
+    private int size;
+    private int drawPlies;
+
+    /**
+     * The constructor creates an empty history without a move-count draw rule.
+     */
+    public PositionHistory() {
+        keys = new long[128];
+        reversiblePlies = new int[128];
+    }
+
+    /**
+     * This method returns true if a move can't be taken back, which is the
+     * case for captures and pawn moves. It must be called before the move is
+     * executed.
+     * @param board The board state before the move
+     * @param move The move
+     * @return A boolean indicating whether the move is irreversible.
+     */
+    public static boolean isIrreversible(Board board, Move move) {
+        return move.includesJump() || board.squareAt(move.squareAt(0)).isPawn();
+    }
+
+    /**
+     * This method adds a position.
+     * @param key The hash key of the position
+     * @param irreversible True if the position was reached by a capture or
+     * a pawn move, or if it is the first position.
+     */
+    public void push(long key, boolean irreversible) {
+        if (size == keys.length) {
+            long grownKeys[] = new long[size*2];
+            int grownPlies[] = new int[size*2];
+            System.arraycopy(keys, 0, grownKeys, 0, size);
+            System.arraycopy(reversiblePlies, 0, grownPlies, 0, size);
+            keys = grownKeys;
+            reversiblePlies = grownPlies;
+        }
+        keys[size] = key;
+        reversiblePlies[size] = (irreversible || size == 0) ? 0 : reversiblePlies[size-1]+1;
+        size++;
+    }
+
+    /**
+     * This method removes the last position.
+     */
+    public void pop() {
+        size--;
+    }
+
+    /**
+     * This method returns the hash key of the last position.
+     * @return The hash key
+     */
+    public long lastKey() {
+        return keys[size-1];
+    }
+
+    /**
+     * This method returns the number of plies since the last irreversible move.
+     * @return The number of plies, or 0 if the history is empty.
+     */
+    public int getReversiblePlies() {
+        return size == 0 ? 0 : reversiblePlies[size-1];
+    }
+
+    /**
+     * This method counts how often the last position occurred before. Only
+     * positions with the same player to move since the last irreversible
+     * move are compared.
+     * @param max Stop counting at this number.
+     * @return The number of earlier occurrences, at most max.
+     */
+    public int repetitions(int max) {
+        if (size == 0) {
+            return 0;
+        }
+        long key = keys[size-1];
+        int first = size-1-reversiblePlies[size-1];
+        int count = 0;
+        for (int i=size-5; i>=first && count<max; i-=2) {
+            if (keys[i] == key) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method finds the last earlier occurrence of the last position, 
+     * the one repetitions would count first.
+     * @return The index of the occurrence, or -1 if the position didn't 
+     * occur before.
+     */
+    public int lastRepetition() {
+        if (size == 0) {
+            return -1;
+        }
+        long key = keys[size-1];
+        int first = size-1-reversiblePlies[size-1];
+        for (int i=size-5; i>=first; i-=2) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method sets the move-count draw rule: the game is a draw when
+     * this many plies were played without a capture or a pawn move.
+     * @param plies The number of plies, or 0 to not use the rule.
+     */
+    public void setDrawPlies(int plies) {
+        drawPlies = plies;
+    }
+
+    /**
+     * This method returns the number of plies of the move-count draw rule.
+     * @return The number of plies, or 0 if the rule isn't used.
+     */
+    public int getDrawPlies() {
+        return drawPlies;
+    }
+
+    /**
+     * This method returns true if the move-count draw rule applies to the
+     * last position.
+     * @return A boolean indicating whether the move-count limit is reached.
+     */
+    public boolean isMoveLimitReached() {
+        return drawPlies > 0 && getReversiblePlies() >= drawPlies;
+    }
+
+    /**
+     * This method returns the keys of the positions that can still repeat:
+     * the position reached by the last irreversible move and all positions
+     * after it. A history built by pushing the first of them as irreversible
+     * and the others as reversible finds the same repetitions.
+     * @return An array with the keys, oldest first, which is empty if the
+     * history is empty.
+     */
+    public long[] getReversibleKeys() {
+        int n = size == 0 ? 0 : reversiblePlies[size-1]+1;
+        long result[] = new long[n];
+        System.arraycopy(keys, size-n, result, 0, n);
+        return result;
+    }
+
+    /**
+     * This method returns the number of positions.
+     * @return The number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method removes all positions. The draw rule is kept.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * This method replaces the contents of this history by those of another.
+     * @param other The history to copy
+     */
+    public void copyFrom(PositionHistory other) {
+        if (keys.length < other.size) {
+            keys = new long[other.keys.length];
+            reversiblePlies = new int[other.keys.length];
+        }
+        System.arraycopy(other.keys, 0, keys, 0, other.size);
+        System.arraycopy(other.reversiblePlies, 0, reversiblePlies, 0, other.size);
+        size = other.size;
+        drawPlies = other.drawPlies;
+    }
+
+    /**
+     * This method creates a copy of this history and returns it.
+     * @return The copy
+     */
+    public PositionHistory copy() {
+        PositionHistory h = new PositionHistory();
+        h.copyFrom(this);
+        return h;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * The listener interface for following the progress of a search, for
+ * instance to show the line the computer expects while it thinks. Unlike an
+ * IterationListener it can't stop the search.
+ * @author Aswin van Woudenberg
+ */
+public interface ProgressListener {
+    /**
+     * This method is invoked on the search thread when the search has
+     * completed a depth. It should return quickly.
+     * @param depth The depth that was completed
+     * @param best The best move found, with its score and principal variation
+     * @param nodes The number of nodes visited by the search so far
+     */
+    void progress(int depth, ScoredMove best, long nodes);
+}
@@ -0,0 +1,650 @@
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class finds out whether the player to move has a forced win, by
+ * depth-first proof-number search (df-pn) over MoveGen. Unlike Search it
+ * doesn't use an evaluation, so its answers are exact: a win is proven all
+ * the way to a position where the loser can't move.
+ *
+ * Every position has a proof number phi, the number of positions that must
+ * still be proven to show the player to move wins, and a disproof number
+ * delta, the number of positions that must still be proven to show that
+ * player doesn't win. The phi of a position is the least delta of its successors and
+ * its delta is the sum of their phis. The search always expands the most
+ * proving position, and only goes back up when the numbers pass their
+ * thresholds, so it needs no more memory than the transposition table,
+ * which it can't grow past its bound (see ProofTable). Thresholds of
+ * children grow by 1+EPSILON to keep the search from switching between
+ * siblings too often.
+ *
+ * A draw by repetition, by the move-count rule of the history or by
+ * reaching the ply limit counts as a failure of the attacker, the player
+ * to move at the root. The first repetition already counts, which is
+ * stricter than the game, so it only makes wins harder to prove. Such draws
+ * depend on the path to a position while the table doesn't, so a disproof
+ * may be too pessimistic when the table is reused along another path.
+ *
+ * The search runs on several threads that share the table. Each thread
+ * takes the most proving move of the root that no other thread works on,
+ * searches it until it passes its threshold and picks again, so every
+ * thread profits from what the others proved.
+ * @author Aswin van Woudenberg
+ */
+public class ProofNumberSolver {
+    private static final int INFINITY = ProofTable.INFINITY;
+
+    // How much the threshold of a child exceeds that of its best sibling
+    private static final double EPSILON = 0.25;
+
+    // The number of nodes between checks for the budget and other threads
+    private static final int CHECK_INTERVAL = 1024;
+
+    /**
+     * The number of plies after which a line counts as a draw by default.
+     */
+    public static final int DEFAULT_MAX_PLIES = 200;
+
+    private static final RuntimeException STOP = new RuntimeException("solver stopped", null, false, false) {};
+
+    private ProofTable table;
+    private int threads;
+    private ExecutorService pool;
+    private int maxPlies;
+    private long nodeLimit;
+    private long timeLimit;
+
+    // The state of the current proof, shared by the workers
+    private volatile boolean finished;
+    private volatile long deadline;
+    private AtomicLong totalNodes;
+    private Node root;
+    private boolean busy[];
+
+    /**
+     * The constructor
+     * @param threads The number of threads
+     * @param megabytes The memory the transposition table may use
+     */
+    public ProofNumberSolver(int threads, int megabytes) {
+        this.threads = Math.max(1, threads);
+        table = new ProofTable(megabytes);
+        pool = Executors.newFixedThreadPool(this.threads);
+        maxPlies = DEFAULT_MAX_PLIES;
+        totalNodes = new AtomicLong();
+    }
+
+    /**
+     * This method sets the number of plies after which a line counts as a
+     * draw.
+     * @param plies The number of plies
+     */
+    public void setMaxPlies(int plies) {
+        maxPlies = plies;
+    }
+
+    /**
+     * This method sets the number of nodes a proof may search.
+     * @param nodes The number of nodes, or 0 for no limit
+     */
+    public void setNodeLimit(long nodes) {
+        nodeLimit = nodes;
+    }
+
+    /**
+     * This method sets the time a proof may take.
+     * @param millis The time in milliseconds, or 0 for no limit
+     */
+    public void setTimeLimit(long millis) {
+        timeLimit = millis;
+    }
+
+    /**
+     * This method stops a running proof, which then returns UNKNOWN unless
+     * it was just finished. It may be called from any thread.
+     */
+    public void stop() {
+        finished = true;
+    }
+
+    /**
+     * This method returns the transposition table.
+     * @return The table
+     */
+    public ProofTable getTable() {
+        return table;
+    }
+
+    /**
+     * This method stops the threads of the solver.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * This method finds out whether the player to move has a forced win.
+     * @param board The board state
+     * @param pc The PlayerColor who's to move
+     * @return The result
+     */
+    public ProofResult solve(Board board, PlayerColor pc) {
+        return solve(board, pc, null);
+    }
+
+    /**
+     * This method finds out whether the player to move has a forced win.
+     * @param board The board state
+     * @param pc The PlayerColor who's to move
+     * @param history The positions of the game, ending with the current
+     * position, or null. Repeating one of them counts as a draw.
+     * @return The result
+     */
+    public synchronized ProofResult solve(Board board, PlayerColor pc, PositionHistory history) {
+        long start = System.nanoTime();
+        long collections = table.getCollectionCount();
+        table.clear();
+        PositionHistory path = new PositionHistory();
+        if (history != null && history.size() > 0) {
+            path.copyFrom(history);
+        } else {
+            path.push(Zobrist.hashKey(board, pc), true);
+        }
+        finished = false;
+        deadline = timeLimit == 0 ? 0 : start + timeLimit * 1000000;
+        totalNodes.set(0);
+        root = new Node(board.copy(), pc, path.lastKey(), true, path, 0);
+        busy = new boolean[root.moves.size()];
+
+        Vector<Future<Long>> futures = new Vector<Future<Long>>();
+        for (int i=0; i<threads; i++) {
+            final PositionHistory workerPath = path.copy();
+            futures.add(pool.submit(() -> new Worker(workerPath).run()));
+        }
+        long nodes = 0;
+        try {
+            for (Future<Long> f : futures) {
+                nodes += f.get();
+            }
+        } catch (InterruptedException ex) {
+            finished = true;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            finished = true;
+            throw new IllegalStateException("Solver failed", ex.getCause());
+        }
+
+        long value = root.value();
+        ProofResult.Outcome outcome = ProofResult.Outcome.UNKNOWN;
+        if (ProofTable.phi(value) == 0) {
+            outcome = ProofResult.Outcome.WIN;
+        } else if (ProofTable.delta(value) == 0) {
+            outcome = ProofResult.Outcome.NO_WIN;
+        }
+        Vector<Move> line = new Vector<Move>();
+        long proofSize = 0;
+        if (outcome != ProofResult.Outcome.UNKNOWN) {
+            Worker worker = new Worker(path.copy());
+            if (outcome == ProofResult.Outcome.WIN) {
+                line = worker.winningLine(board, pc);
+            }
+            proofSize = proofSize(new Node(board.copy(), pc, path.lastKey(), true, path.copy(), 0),
+                    new HashSet<Long>());
+            nodes += worker.nodes;
+        }
+        return new ProofResult(outcome, line, nodes, proofSize, (System.nanoTime() - start) / 1000000,
+                table.getCollectionCount() - collections);
+    }
+
+    /**
+     * This method counts the positions of the proof tree below a proven or
+     * disproven position. The player who wins there needs one move, the
+     * other player all of them.
+     * @param node The position
+     * @param seen The keys of the positions counted so far
+     * @return The number of positions not counted before
+     */
+    private long proofSize(Node node, HashSet<Long> seen) {
+        if (!seen.add(node.key)) {
+            return 0;
+        }
+        long count = 1;
+        long value = node.ply == 0 ? root.value() : table.lookup(node.key);
+        if (value == ProofTable.NO_ENTRY || node.moves.isEmpty()) {
+            return count;
+        }
+        int phi = ProofTable.phi(value);
+        int delta = ProofTable.delta(value);
+        if (phi == 0) {
+            int i = node.select();
+            if (i >= 0 && !node.drawn[i]) {
+                count += proofSize(node.child(i), seen);
+                node.path.pop();
+            }
+        } else if (delta == 0) {
+            for (int i=0; i<node.moves.size(); i++) {
+                if (!node.drawn[i]) {
+                    count += proofSize(node.child(i), seen);
+                    node.path.pop();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This class holds a position in the search with its moves and the keys
+     * of the positions after them.
+     */
+    private class Node {
+        private Board board;
+        private PlayerColor pc;
+        private long key;
+        private boolean attacker;
+        private PositionHistory path;
+        private int ply;
+        private Vector<Move> moves;
+        private long childKeys[];
+        private boolean drawn[];
+        private int mobility[];
+
+        /**
+         * The constructor. The path must end with the position itself.
+         * @param board The board state
+         * @param pc The PlayerColor who's to move
+         * @param key The hash key of the position
+         * @param attacker True if the attacker is to move
+         * @param path The positions leading to this one
+         * @param ply The distance to the root
+         */
+        private Node(Board board, PlayerColor pc, long key, boolean attacker, PositionHistory path, int ply) {
+            this.board = board;
+            this.pc = pc;
+            this.key = key;
+            this.attacker = attacker;
+            this.path = path;
+            this.ply = ply;
+            moves = MoveGen.generatePossibleMoves(board, pc);
+            childKeys = new long[moves.size()];
+            drawn = new boolean[moves.size()];
+            mobility = new int[moves.size()];
+            for (int i=0; i<moves.size(); i++) {
+                Move move = moves.get(i);
+                childKeys[i] = key ^ Zobrist.moveKey(board, move);
+                path.push(childKeys[i], PositionHistory.isIrreversible(board, move));
+                drawn[i] = ply+1 >= maxPlies || path.repetitions(1) > 0 || path.isMoveLimitReached();
+                path.pop();
+            }
+        }
+
+        /**
+         * This method returns the proof and disproof number of a child. A
+         * draw is a win for the defender. A child that isn't in the table
+         * yet gets 1 as proof number and the number of moves of the opponent
+         * as disproof number, since all of them must be refuted to show that
+         * that player doesn't win. An opponent without moves has lost.
+         * @param i The index of the move
+         * @return The packed numbers
+         */
+        private long childValue(int i) {
+            if (drawn[i]) {
+                // The player to move in the child is the opponent
+                return attacker ? ProofTable.pack(0, INFINITY) : ProofTable.pack(INFINITY, 0);
+            }
+            long value = table.lookup(childKeys[i]);
+            if (value != ProofTable.NO_ENTRY) {
+                return value;
+            }
+            if (mobility[i] == 0) {
+                Board b = board.copy();
+                b.executeMove(moves.get(i));
+                mobility[i] = MoveGen.generatePossibleMoves(b, pc.opponent()).size() + 1;
+            }
+            return mobility[i] == 1 ? ProofTable.pack(INFINITY, 0) : ProofTable.pack(1, mobility[i] - 1);
+        }
+
+        /**
+         * This method computes the proof and disproof number from those of
+         * the children. A player who can't move has lost.
+         * @return The packed numbers
+         */
+        private long value() {
+            if (moves.isEmpty()) {
+                return ProofTable.pack(INFINITY, 0);
+            }
+            int phi = INFINITY;
+            long delta = 0;
+            for (int i=0; i<moves.size(); i++) {
+                long v = childValue(i);
+                phi = Math.min(phi, ProofTable.delta(v));
+                delta = sum(delta, ProofTable.phi(v));
+            }
+            return ProofTable.pack(phi, (int)delta);
+        }
+
+        /**
+         * This method selects a move that wins for the player to move, which
+         * is a move to a child whose disproof number is 0. With several, it
+         * takes the one proven with the least work, which tends to be the
+         * quickest win.
+         * @return The index of the move, or -1 if there is none.
+         */
+        private int select() {
+            int best = -1;
+            long bestWork = 0;
+            for (int i=0; i<moves.size(); i++) {
+                if (ProofTable.delta(childValue(i)) == 0) {
+                    long work = drawn[i] ? 0 : table.work(childKeys[i]);
+                    if (best < 0 || work < bestWork) {
+                        best = i;
+                        bestWork = work;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * This method creates the child after a move. The move is added to
+         * the path, which the child shares, so the caller must pop it when
+         * done with the child.
+         * @param i The index of the move
+         * @return The child
+         */
+        private Node child(int i) {
+            Board b = board.copy();
+            Move move = moves.get(i);
+            path.push(childKeys[i], PositionHistory.isIrreversible(board, move));
+            b.executeMove(move);
+            return new Node(b, pc.opponent(), childKeys[i], !attacker, path, ply+1);
+        }
+    }
+
+    /**
+     * This class does the search of one thread.
+     */
+    private class Worker {
+        private PositionHistory path;
+        private long nodes;
+
+        /**
+         * The constructor
+         * @param path The positions leading to the root, ending with it
+         */
+        private Worker(PositionHistory path) {
+            this.path = path;
+        }
+
+        /**
+         * This method searches moves of the root until the root is proven or
+         * disproven, or the budget runs out.
+         * @return The number of nodes searched
+         */
+        private long run() {
+            while (true) {
+                int chosen = -1;
+                int thdelta = 0;
+                synchronized (root) {
+                    while (chosen < 0) {
+                        if (finished) {
+                            return nodes;
+                        }
+                        long value = root.value();
+                        if (ProofTable.phi(value) == 0 || ProofTable.delta(value) == 0) {
+                            finished = true;
+                            root.notifyAll();
+                            return nodes;
+                        }
+                        int best = -1;
+                        int bestDelta = INFINITY;
+                        for (int i=0; i<busy.length; i++) {
+                            int d = ProofTable.delta(root.childValue(i));
+                            if (!busy[i] && (best < 0 || d < bestDelta)) {
+                                best = i;
+                                bestDelta = d;
+                            }
+                        }
+                        if (best < 0) {
+                            try {
+                                root.wait();
+                            } catch (InterruptedException ex) {
+                                finished = true;
+                                return nodes;
+                            }
+                            continue;
+                        }
+                        // Moves other threads work on are left out, or a
+                        // thread would get a threshold its move already passed
+                        int second = INFINITY;
+                        for (int i=0; i<busy.length; i++) {
+                            if (i != best && !busy[i]) {
+                                second = Math.min(second, ProofTable.delta(root.childValue(i)));
+                            }
+                        }
+                        chosen = best;
+                        busy[chosen] = true;
+                        thdelta = grow(second);
+                    }
+                }
+                try {
+                    Board b = root.board.copy();
+                    b.executeMove(root.moves.get(chosen));
+                    path.push(root.childKeys[chosen], PositionHistory.isIrreversible(root.board, root.moves.get(chosen)));
+                    try {
+                        mid(new Node(b, root.pc.opponent(), root.childKeys[chosen], false, path, 1), INFINITY, thdelta);
+                    } finally {
+                        path.pop();
+                    }
+                } catch (RuntimeException ex) {
+                    if (ex != STOP) {
+                        finished = true;
+                        throw ex;
+                    }
+                } finally {
+                    synchronized (root) {
+                        busy[chosen] = false;
+                        root.notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * This method counts a node and checks whether the search must stop.
+         */
+        private void count() {
+            if (++nodes % CHECK_INTERVAL == 0) {
+                long total = totalNodes.addAndGet(CHECK_INTERVAL);
+                if ((nodeLimit != 0 && total >= nodeLimit)
+                        || (deadline != 0 && System.nanoTime() - deadline > 0)) {
+                    finished = true;
+                }
+                if (finished) {
+                    throw STOP;
+                }
+            }
+        }
+
+        /**
+         * This method searches a position until its proof number reaches
+         * thphi or its disproof number reaches thdelta, and stores the
+         * numbers in the table.
+         * @param node The position
+         * @param thphi The proof number threshold
+         * @param thdelta The disproof number threshold
+         */
+        private void mid(Node node, int thphi, int thdelta) {
+            count();
+            long before = nodes;
+            if (node.moves.isEmpty()) {
+                table.store(node.key, INFINITY, 0, 1);
+                return;
+            }
+            while (true) {
+                int phi = INFINITY;
+                long delta = 0;
+                int best = -1;
+                int bestPhi = 0;
+                int second = INFINITY;
+                for (int i=0; i<node.moves.size(); i++) {
+                    long v = node.childValue(i);
+                    int d = ProofTable.delta(v);
+                    delta = sum(delta, ProofTable.phi(v));
+                    if (best < 0 || d < phi) {
+                        second = phi;
+                        phi = d;
+                        best = i;
+                        bestPhi = ProofTable.phi(v);
+                    } else if (d < second) {
+                        second = d;
+                    }
+                }
+                if (phi >= thphi || delta >= thdelta) {
+                    table.store(node.key, phi, (int)delta, nodes - before + 1);
+                    return;
+                }
+                int childThphi = (int)Math.min((long)thdelta - delta + bestPhi, INFINITY);
+                int childThdelta = Math.min(thphi, grow(second));
+                try {
+                    mid(node.child(best), childThphi, childThdelta);
+                } finally {
+                    node.path.pop();
+                }
+            }
+        }
+
+        /**
+         * This method follows the proof from the root to the end of the game.
+         * When the garbage collection removed a position of the proof, it is
+         * proven again.
+         * @param board The board state of the root
+         * @param pc The PlayerColor who's to move at the root
+         * @return A vector with the moves of the line
+         */
+        private Vector<Move> winningLine(Board board, PlayerColor pc) {
+            Vector<Move> line = new Vector<Move>();
+            Node node = new Node(board.copy(), pc, path.lastKey(), true, path, 0);
+            finished = false;
+            deadline = 0;
+            while (!node.moves.isEmpty() && node.ply < maxPlies) {
+                int i = node.attacker ? node.select() : longestDefence(node);
+                if (i < 0) {
+                    try {
+                        mid(node, INFINITY, INFINITY);
+                    } catch (RuntimeException ex) {
+                        if (ex != STOP) {
+                            throw ex;
+                        }
+                        break;
+                    }
+                    i = node.attacker ? node.select() : longestDefence(node);
+                }
+                if (i < 0) {
+                    break;
+                }
+                line.add(node.moves.get(i));
+                node = node.child(i);
+            }
+            return line;
+        }
+
+        /**
+         * This method selects the move of the defender whose proof took the
+         * most work. All moves of the defender lose, so their proof numbers
+         * are 0. A move that repeats a position of the line is only taken
+         * when there is no other: the proof may have reached the position
+         * along another path, and a single repetition doesn't end the game.
+         * @param node The position, with the defender to move
+         * @return The index of the move, or -1 if a move isn't proven.
+         */
+        private int longestDefence(Node node) {
+            int best = -1;
+            long bestWork = -1;
+            for (int i=0; i<node.moves.size(); i++) {
+                if (node.drawn[i]) {
+                    continue;
+                }
+                if (ProofTable.phi(node.childValue(i)) != 0) {
+                    return -1;
+                }
+                long work = table.work(node.childKeys[i]);
+                if (work > bestWork) {
+                    best = i;
+                    bestWork = work;
+                }
+            }
+            return best < 0 ? 0 : best;
+        }
+    }
+
+    /**
+     * This method adds a proof number to a sum of proof numbers. Only a
+     * proven child makes the sum infinite. Cycles of repeating positions
+     * count the same children over and over, and without this cap their sums
+     * would reach infinity, which looks like a proof that isn't there.
+     * @param sum The sum so far
+     * @param phi The proof number
+     * @return The new sum
+     */
+    private static long sum(long sum, int phi) {
+        if (sum >= INFINITY || phi >= INFINITY) {
+            return INFINITY;
+        }
+        return Math.min(sum + phi, INFINITY - 1);
+    }
+
+    /**
+     * This method computes the threshold of the best child from the number
+     * of its best sibling.
+     * @param second The disproof number of the second best child
+     * @return The threshold
+     */
+    private static int grow(int second) {
+        if (second >= INFINITY - 1) {
+            return INFINITY;
+        }
+        return (int)Math.min(Math.max(second + 1, (long)Math.ceil(second * (1 + EPSILON))), INFINITY);
+    }
+
+    /**
+     * The main method solves positions given as FEN strings and prints the
+     * result of each.
+     *
+     * Usage: ProofNumberSolver [-threads n] [-memory mb] [-millis ms] fen...
+     * @param args the command line arguments
+     */
+    public static void main(String args[]) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int megabytes = 256;
+        long millis = 0;
+        Vector<String> fens = new Vector<String>();
+        for (int i=0; i<args.length; i++) {
+            if (args[i].equals("-threads") && i+1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-memory") && i+1 < args.length) {
+                megabytes = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-millis") && i+1 < args.length) {
+                millis = Long.parseLong(args[++i]);
+            } else {
+                fens.add(args[i]);
+            }
+        }
+        if (fens.isEmpty()) {
+            System.err.println("Usage: ProofNumberSolver [-threads n] [-memory mb] [-millis ms] fen...");
+            System.exit(1);
+        }
+        ProofNumberSolver solver = new ProofNumberSolver(threads, megabytes);
+        solver.setTimeLimit(millis);
+        for (String fen : fens) {
+            ProofResult result = solver.solve(PdnGame.fenToBoard(fen), PdnGame.fenToColor(fen));
+            System.out.println(fen);
+            System.out.println("  " + result);
+        }
+        solver.shutdown();
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.Vector;
+
+/**
+ * This class holds the result of the ProofNumberSolver: whether the player
+ * to move wins, the winning line and what it took to find out.
+ * @author Aswin van Woudenberg
+ */
+public class ProofResult {
+    /**
+     * The outcome of a proof.
+     */
+    public enum Outcome {
+        /** The player to move has a forced win. */
+        WIN,
+        /** The player to move has no forced win. */
+        NO_WIN,
+        /** The budget ran out before the solver found out. */
+        UNKNOWN
+    }
+
+    private Outcome outcome;
+    private Vector<Move> line;
+    private long nodes;
+    private long proofSize;
+    private long millis;
+    private long collections;
+
+    /**
+     * The constructor
+     * @param outcome The outcome
+     * @param line The winning line, which is empty unless the outcome is WIN
+     * @param nodes The number of nodes searched
+     * @param proofSize The number of positions in the proof tree
+     * @param millis The time the solver took in milliseconds
+     * @param collections The number of garbage collections of the table
+     */
+    public ProofResult(Outcome outcome, Vector<Move> line, long nodes, long proofSize, long millis, long collections) {
+        this.outcome = outcome;
+        this.line = line;
+        this.nodes = nodes;
+        this.proofSize = proofSize;
+        this.millis = millis;
+        this.collections = collections;
+    }
+
+    /**
+     * This method returns the outcome.
+     * @return The outcome
+     */
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * This method returns the winning line: the moves of both players from
+     * the position until the loser can't move, with the loser making the
+     * moves that resist longest according to the proof. The line stops
+     * early at the ply limit of the solver.
+     * @return A vector with the moves, which is empty unless the outcome is
+     * WIN.
+     */
+    public Vector<Move> getLine() {
+        return line;
+    }
+
+    /**
+     * This method returns the number of nodes searched.
+     * @return The number of nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * This method returns the size of the proof: the number of distinct
+     * positions in the tree that proves the win, or that proves there is
+     * none. The tree contains one move of the winner and every move of the
+     * loser in each position. Positions that the garbage collection removed
+     * from the table are counted, but their subtrees aren't.
+     * @return The number of positions, or 0 if the outcome is UNKNOWN.
+     */
+    public long getProofSize() {
+        return proofSize;
+    }
+
+    /**
+     * This method returns the time the solver took.
+     * @return The time in milliseconds
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * This method returns the number of garbage collections of the table.
+     * @return The number of garbage collections
+     */
+    public long getCollections() {
+        return collections;
+    }
+
+    /**
+     * This method returns a string representation of the result.
+     * @return The outcome, line and statistics
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(outcome.toString());
+        if (!line.isEmpty()) {
+            sb.append(':');
+            for (Move m : line) {
+                sb.append(' ').append(m);
+            }
+        }
+        sb.append(" (nodes=").append(nodes)
+          .append(" proof=").append(proofSize)
+          .append(" time=").append(millis).append("ms")
+          .append(" gc=").append(collections).append(')');
+        return sb.toString();
+    }
+}
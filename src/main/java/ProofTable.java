@@ -0,0 +1,268 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements the transposition table of the ProofNumberSolver.
+ * It stores the proof and disproof numbers of a position and the number of
+ * nodes that were searched to find them, called the work. The table has a
+ * fixed size, set by a memory bound, and is shared by all threads of the
+ * solver.
+ *
+ * Entries are kept in buckets of BUCKET_SIZE. When a bucket is full, the
+ * entry with the least work is replaced, since it is the cheapest to find
+ * again. When the table becomes too full, a garbage collection removes the
+ * entries with the least work from the whole table, which mostly removes
+ * the parts of the tree that didn't turn out to matter. Buckets are locked
+ * by a striped lock, so threads only wait for each other when they use the
+ * same part of the table.
+ * @author Aswin van Woudenberg
+ */
+public class ProofTable {
+    /**
+     * The value of a proof or disproof number that can't be reached.
+     */
+    public static final int INFINITY = Integer.MAX_VALUE / 4;
+
+    /**
+     * Returned by lookup when the table holds no entry for a position.
+     */
+    public static final long NO_ENTRY = -1;
+
+    private static final int ENTRY_SIZE = 24; // bytes
+    private static final int BUCKET_SIZE = 4;
+    private static final int LOCKS = 1024;
+
+    // A garbage collection starts when this part of the table is used
+    private static final double GC_THRESHOLD = 0.9;
+
+    // A garbage collection removes about this part of the entries
+    private static final double GC_FRACTION = 0.4;
+
+    private long keys[];
+    private int phis[];
+    private int deltas[];
+    private long works[];
+    private int bucketMask;
+    private Object locks[];
+    private AtomicLong size;
+    private AtomicBoolean collecting;
+    private AtomicLong collections;
+    private AtomicLong collected;
+
+    /**
+     * The constructor
+     * @param megabytes The memory the table may use
+     */
+    public ProofTable(int megabytes) {
+        long entries = ((long)megabytes << 20) / ENTRY_SIZE;
+        int buckets = Integer.highestOneBit((int)Math.max(1, Math.min(entries / BUCKET_SIZE, 1 << 26)));
+        keys = new long[buckets * BUCKET_SIZE];
+        phis = new int[buckets * BUCKET_SIZE];
+        deltas = new int[buckets * BUCKET_SIZE];
+        works = new long[buckets * BUCKET_SIZE];
+        bucketMask = buckets - 1;
+        locks = new Object[LOCKS];
+        for (int i=0; i<LOCKS; i++) {
+            locks[i] = new Object();
+        }
+        size = new AtomicLong();
+        collecting = new AtomicBoolean();
+        collections = new AtomicLong();
+        collected = new AtomicLong();
+    }
+
+    /**
+     * This method packs a proof and disproof number into a long.
+     * @param phi The proof number
+     * @param delta The disproof number
+     * @return The packed numbers
+     */
+    public static long pack(int phi, int delta) {
+        return (long)phi << 32 | delta;
+    }
+
+    /**
+     * This method returns the proof number of packed numbers.
+     * @param packed The packed numbers
+     * @return The proof number
+     */
+    public static int phi(long packed) {
+        return (int)(packed >>> 32);
+    }
+
+    /**
+     * This method returns the disproof number of packed numbers.
+     * @param packed The packed numbers
+     * @return The disproof number
+     */
+    public static int delta(long packed) {
+        return (int)packed;
+    }
+
+    /**
+     * This method looks up a position. An empty entry has work 0, so a
+     * stored entry always has work of at least 1.
+     * @param key The hash key of the position
+     * @return The packed proof and disproof number, or NO_ENTRY.
+     */
+    public long lookup(long key) {
+        int first = ((int)key & bucketMask) * BUCKET_SIZE;
+        synchronized (locks[(first / BUCKET_SIZE) & (LOCKS-1)]) {
+            for (int i=first; i<first+BUCKET_SIZE; i++) {
+                if (keys[i] == key && works[i] != 0) {
+                    return pack(phis[i], deltas[i]);
+                }
+            }
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * This method returns the work stored for a position.
+     * @param key The hash key of the position
+     * @return The work, or 0 if the table holds no entry for the position.
+     */
+    public long work(long key) {
+        int first = ((int)key & bucketMask) * BUCKET_SIZE;
+        synchronized (locks[(first / BUCKET_SIZE) & (LOCKS-1)]) {
+            for (int i=first; i<first+BUCKET_SIZE; i++) {
+                if (keys[i] == key && works[i] != 0) {
+                    return works[i];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * This method stores the proof and disproof number of a position. The
+     * work is added to the work already stored for the position. A proven or
+     * disproven position keeps its numbers. Another thread may reach it
+     * along a path where a repetition changes its numbers, and the numbers
+     * of the positions above it were computed from the proof.
+     * @param key The hash key of the position
+     * @param phi The proof number
+     * @param delta The disproof number
+     * @param work The number of nodes searched, at least 1
+     */
+    public void store(long key, int phi, int delta, long work) {
+        int first = ((int)key & bucketMask) * BUCKET_SIZE;
+        boolean added = false;
+        synchronized (locks[(first / BUCKET_SIZE) & (LOCKS-1)]) {
+            int victim = first;
+            for (int i=first; i<first+BUCKET_SIZE; i++) {
+                if (keys[i] == key && works[i] != 0) {
+                    victim = i;
+                    work += works[i];
+                    if (phis[i] == 0 || deltas[i] == 0) {
+                        phi = phis[i];
+                        delta = deltas[i];
+                    }
+                    break;
+                }
+                if (works[i] < works[victim]) {
+                    victim = i;
+                }
+            }
+            added = works[victim] == 0;
+            keys[victim] = key;
+            phis[victim] = phi;
+            deltas[victim] = delta;
+            works[victim] = Math.max(work, 1);
+        }
+        if (added && size.incrementAndGet() > GC_THRESHOLD * keys.length) {
+            collect();
+        }
+    }
+
+    /**
+     * This method removes about GC_FRACTION of the entries, those with the
+     * least work. The work that separates them from the rest is estimated
+     * from a sample. Only one thread collects at a time; the others go on
+     * searching meanwhile.
+     */
+    public void collect() {
+        if (!collecting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Random random = new Random();
+            long sample[] = new long[1024];
+            int n = 0;
+            for (int tries=0; tries<16*sample.length && n<sample.length; tries++) {
+                int i = random.nextInt(keys.length);
+                long w = works[i];
+                if (w != 0) {
+                    sample[n++] = w;
+                }
+            }
+            Arrays.sort(sample, 0, n);
+            long threshold = n == 0 ? 0 : sample[(int)(n * GC_FRACTION)];
+            long removed = 0;
+            for (int b=0; b<=bucketMask; b++) {
+                synchronized (locks[b & (LOCKS-1)]) {
+                    for (int i=b*BUCKET_SIZE; i<(b+1)*BUCKET_SIZE; i++) {
+                        if (works[i] != 0 && works[i] <= threshold) {
+                            works[i] = 0;
+                            removed++;
+                        }
+                    }
+                }
+            }
+            size.addAndGet(-removed);
+            collections.incrementAndGet();
+            collected.addAndGet(removed);
+        } finally {
+            collecting.set(false);
+        }
+    }
+
+    /**
+     * This method removes all entries.
+     */
+    public void clear() {
+        for (int b=0; b<=bucketMask; b++) {
+            synchronized (locks[b & (LOCKS-1)]) {
+                for (int i=b*BUCKET_SIZE; i<(b+1)*BUCKET_SIZE; i++) {
+                    works[i] = 0;
+                }
+            }
+        }
+        size.set(0);
+    }
+
+    /**
+     * This method returns the number of entries the table can hold.
+     * @return The number of entries
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    /**
+     * This method returns the number of entries in use.
+     * @return The number of entries
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * This method returns the number of garbage collections so far.
+     * @return The number of garbage collections
+     */
+    public long getCollectionCount() {
+        return collections.get();
+    }
+
+    /**
+     * This method returns the number of entries removed by garbage
+     * collections so far.
+     * @return The number of entries
+     */
+    public long getCollectedCount() {
+        return collected.get();
+    }
+}
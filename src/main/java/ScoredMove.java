@@ -0,0 +1,63 @@
+import java.util.Vector;
+
+/**
+ * This class holds a move together with its score and the principal variation,
+ * i.e. the line of play the search expects to follow the move.
+ * @author Aswin van Woudenberg
+ */
+public class ScoredMove {
+    private Move move;
+    private int score;
+    private Vector<Move> principalVariation;
+
+    /**
+     * The constructor
+     * @param m The move
+     * @param score The score of the move from the point of view of the player
+     * making the move
+     * @param pv The principal variation, starting with the move itself
+     */
+    public ScoredMove(Move m, int score, Vector<Move> pv) {
+        move = m;
+        this.score = score;
+        principalVariation = pv;
+    }
+
+    /**
+     * This method returns the move.
+     * @return The move
+     */
+    public Move getMove() {
+        return move;
+    }
+
+    /**
+     * This method returns the score of the move.
+     * @return The score from the point of view of the player making the move.
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * This method returns the principal variation.
+     * @return A vector with the expected line of play, starting with the move.
+     */
+    public Vector<Move> getPrincipalVariation() {
+        return principalVariation;
+    }
+
+    /**
+     * This method returns a string representation of the move, its score and
+     * principal variation.
+     * @return The string representing the scored move.
+     */
+    @Override
+    public String toString() {
+        String result = score + ":";
+        for (Move m : principalVariation) {
+            result += " " + m;
+        }
+        return result;
+    }
+}
@@ -1,31 +1,144 @@
 
 import java.util.Vector;
+import java.util.concurrent.CancellationException;
 
 
 /**
  * This class implements the minimax with alpha-beta pruning algoritm for Checkers
  * @author Aswin van Woudenberg
  */
-public class Search {
+public class Search implements Engine {
     // Used by the evaluate method to determine the board situation.
     private static final int PAWNS_WORTH = 100;
     private static final int KINGS_WORTH = 130;
     private static final int BACKRANKS_WORTH = 10;
     
     // Used by the minimax with alpha-beta pruning algorithm
-    private static final int INFINITY = 10000;
+    static final int INFINITY = 10000;
     private static final int MAX_DEPTH = 40;
+    private static final int DRAW_SCORE = 0;
+    
+    // The transposition table has 2^TABLE_SIZE_BITS entries
+    private static final int TABLE_SIZE_BITS = 18;
+    
+    // Only results of at least this depth are kept in the analysis cache
+    private static final int CACHE_MIN_DEPTH = 4;
+
+    // Increased whenever the evaluation or the hash keys change, so an
+    // analysis cache holding the scores of an older version is reset
+    static final int SCORES_VERSION = 1;
+
+    // The number of nodes between two checks whether the search is cancelled
+    private static final int CHECK_INTERVAL = 1024;
     
     /**
      * This variable defines how deep the algorithm searches for an optimal solution.
      */
     private int searchDepth;
     
+    /**
+     * For every ply the two most recent quiet moves that caused a cutoff. These
+     * are tried early by the MovePicker.
+     */
+    private Move killers[][];
+    
+    /**
+     * The transposition table stores the results of earlier searches. It is 
+     * kept between searches. Like the analysis cache it is indexed by the 
+     * canonical key, so a position and its mirror image share an entry.
+     */
+    private TranspositionTable table;
+    
+    /**
+     * The optional analysis cache keeps the results of deep searches on disk.
+     */
+    private AnalysisCache cache;
+    
+    /**
+     * The lowest index in the path of a position that a draw by repetition 
+     * or by the move-count rule in the part of the tree searched so far 
+     * depends on, or Integer.MAX_VALUE if there was no such draw. A score 
+     * that depends on positions before the node it belongs to depends on 
+     * how the node was reached, which its key doesn't tell. Such scores are 
+     * not stored in the transposition table or the analysis cache.
+     */
+    private int drawPly;
+    
+    /**
+     * The number of nodes visited during the current search.
+     */
+    private long nodes;
+    
+    /**
+     * The hash keys of the positions of the game followed by those of the 
+     * moves being searched. It is used to recognize repeated positions.
+     */
+    private PositionHistory path;
+    
+    /**
+     * While a search for a move is running, it stops when stopped is set. 
+     * After its first iteration, an iterative search also stops when 
+     * System.nanoTime passes the deadline or when more nodes than the node 
+     * limit are visited. A limit of 0 means there is none.
+     */
+    private boolean stoppable;
+    private boolean iterating;
+    private volatile boolean stopped;
+    private volatile long deadline;
+    private long nodeLimit;
+    
+    /**
+     * The best move and score of the root moves searched so far in the 
+     * current iteration.
+     */
+    private Move rootMove;
+    private int rootScore;
+    
+    /**
+     * A move the root searches before all others, with the full window, and 
+     * its exact score in the last iteration that searched it, or null.
+     */
+    private Move firstMove;
+    private int firstScore;
+    
+    /**
+     * The probes of the transposition table and the analysis cache during 
+     * the current search, and how many of them found an entry. They are 
+     * reported with the search event (see EngineEvents).
+     */
+    private long tableProbes;
+    private long tableHits;
+    private long cacheProbes;
+    private long cacheHits;
+    
+    /**
+     * The listener told about every completed depth, or null.
+     */
+    private volatile ProgressListener progress;
+    
+    /**
+     * Thrown to unwind an iterative search that is stopped.
+     */
+    private static final RuntimeException STOP = new RuntimeException("search stopped", null, false, false) {};
+    
     /**
      * The constructor
      */
     public Search() {
+        this(new TranspositionTable(TABLE_SIZE_BITS));
+    }
+    
+    /**
+     * This constructor lets searches on several threads share a 
+     * transposition table, so what one of them finds helps the others. 
+     * Each thread needs a Search of its own.
+     * @param table The transposition table
+     */
+    public Search(TranspositionTable table) {
         searchDepth = 5;
+        killers = new Move[MAX_DEPTH][2];
+        this.table = table;
+        path = new PositionHistory();
     }
     
     /**
@@ -36,6 +149,15 @@ public class Search {
         searchDepth = depth;
     }
     
+    /**
+     * This method sets the analysis cache, which stores the results of deep 
+     * searches on disk so later runs of the program can use them.
+     * @param c The analysis cache, or null to use none.
+     */
+    public void setAnalysisCache(AnalysisCache c) {
+        cache = c;
+    }
+    
     /**
      * This method returns the search depth used by the alpha-beta algorithm
      * @return The search depth
@@ -86,7 +208,10 @@ public class Search {
     }
     
     /**
-     * The minimax alpha-beta pruning algorithm
+     * The minimax alpha-beta pruning algorithm. A position that occurred 
+     * before, or that reaches the move-count draw rule, is scored as a draw 
+     * without searching it, which cuts the cycles of moving kings back and 
+     * forth. The path must end with the hash key of the board situation.
      * @param b The board situation
      * @param d The search depth
      * @param pc The current player color
@@ -97,78 +222,351 @@ public class Search {
      */
     private int alphaBeta(Board b, int d, PlayerColor pc, int lowest, int highest, int realDepth) {
         Board board;
-        Vector<Move> possibleMoves;
-        possibleMoves = MoveGen.generatePossibleMoves(b, pc);
         int depth = d;
         
-        if (possibleMoves.isEmpty()) {
-            return -INFINITY+realDepth-1;
+        if (++nodes % CHECK_INTERVAL == 0) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException();
+            }
+            if ((stoppable && stopped) || (iterating && ((deadline!=0 && System.nanoTime()-deadline>0) 
+                    || (nodeLimit!=0 && nodes>=nodeLimit)))) {
+                throw STOP;
+            }
         }
-        if (depth<1 && possibleMoves.size()==1) {
-            depth++;
+        
+        int repetition = path.lastRepetition();
+        if (repetition>=0) {
+            drawPly = Math.min(drawPly, repetition);
+            return DRAW_SCORE;
+        }
+        if (path.isMoveLimitReached()) {
+            drawPly = Math.min(drawPly, path.size()-1-path.getReversiblePlies());
+            return DRAW_SCORE;
         }
+        
         if (depth<1 || realDepth>=MAX_DEPTH-1) {
-            return evaluation(b, pc);
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(b, pc);
+            if (possibleMoves.isEmpty()) {
+                return -INFINITY+realDepth-1;
+            }
+            if (possibleMoves.size()!=1 || realDepth>=MAX_DEPTH-1) {
+                return evaluation(b, pc);
+            }
+            depth++;
         }
         
+        // The tables are shared by a position and its mirror image
+        long key = path.lastKey();
+        long tableKey = Zobrist.canonicalKey(key, pc);
+        long entry = table.probe(tableKey);
+        tableProbes++;
+        if (entry!=TranspositionTable.NO_ENTRY) {
+            tableHits++;
+        }
+        if (cache!=null && depth>=CACHE_MIN_DEPTH && 
+                (entry==TranspositionTable.NO_ENTRY || TranspositionTable.depth(entry)<depth)) {
+            long cached = cache.probe(tableKey);
+            cacheProbes++;
+            if (cached!=TranspositionTable.NO_ENTRY) {
+                cacheHits++;
+            }
+            if (cached!=TranspositionTable.NO_ENTRY && 
+                    (entry==TranspositionTable.NO_ENTRY || TranspositionTable.depth(cached)>TranspositionTable.depth(entry))) {
+                entry = cached;
+                table.store(tableKey, TranspositionTable.depth(cached), TranspositionTable.score(cached), 
+                        TranspositionTable.bound(cached), cache.bestMove(tableKey));
+            }
+        }
+        if (entry!=TranspositionTable.NO_ENTRY && TranspositionTable.depth(entry)>=depth) {
+            int score = scoreFromTable(TranspositionTable.score(entry), realDepth);
+            switch (TranspositionTable.bound(entry)) {
+                case TranspositionTable.EXACT:
+                    return score;
+                case TranspositionTable.LOWER_BOUND:
+                    if (score>=highest) {
+                        return score;
+                    }
+                    break;
+                case TranspositionTable.UPPER_BOUND:
+                    if (score<=lowest) {
+                        return score;
+                    }
+                    break;
+            }
+        }
+        
+        // Moves are generated lazily, so a cutoff saves generating the rest
+        Move hashMove = Symmetry.fromCanonical(table.bestMove(tableKey), pc);
+        MovePicker picker = new MovePicker(b, pc, hashMove, killers[realDepth]);
+        int originalLowest = lowest;
         int best = -INFINITY;
-        for (int i=0; i<possibleMoves.size() && best<highest; i++) {
+        Move bestMove = null;
+        int outerDrawPly = drawPly;
+        drawPly = Integer.MAX_VALUE;
+        while (best<highest && picker.hasNext()) {
+            Move move = picker.next();
+            path.push(key ^ Zobrist.moveKey(b, move), PositionHistory.isIrreversible(b, move));
             board = b.copy();
-            board.executeMove(possibleMoves.elementAt(i));
+            board.executeMove(move);
             int score = -alphaBeta(board,depth-1,pc.opponent(),-highest,-lowest,realDepth+1);
+            path.pop();
             if (score>best) {
                 best = score;
-                if (score<lowest) {
+                bestMove = move;
+                if (score>lowest) {
                     lowest = best;
                 }
+                if (score>=highest && !move.includesJump()) {
+                    storeKiller(move, realDepth);
+                }
             }
         }
+        boolean historyDraw = drawPly<path.size()-1;
+        drawPly = Math.min(drawPly, outerDrawPly);
+        if (bestMove==null) {
+            return -INFINITY+realDepth-1;
+        }
+        
+        int bound;
+        if (best>=highest) {
+            bound = TranspositionTable.LOWER_BOUND;
+        } else if (best>originalLowest) {
+            bound = TranspositionTable.EXACT;
+        } else {
+            bound = TranspositionTable.UPPER_BOUND;
+        }
+        Move tableMove = Symmetry.toCanonical(bestMove, pc);
+        if (historyDraw) {
+            storeMove(tableKey, tableMove);
+            return best;
+        }
+        table.store(tableKey, depth, scoreToTable(best, realDepth), bound, tableMove);
+        if (cache!=null && depth>=CACHE_MIN_DEPTH) {
+            cache.store(tableKey, depth, scoreToTable(best, realDepth), bound, tableMove);
+        }
         return best;
     }
     
+    /**
+     * This method stores only the best move of a position in the 
+     * transposition table, for a score that depends on the positions before 
+     * it. The entry has depth 0, so it orders the moves of later searches 
+     * but its score is never used.
+     * @param tableKey The canonical key of the position
+     * @param tableMove The best move, in canonical form
+     */
+    private void storeMove(long tableKey, Move tableMove) {
+        table.store(tableKey, 0, DRAW_SCORE, TranspositionTable.UPPER_BOUND, tableMove);
+    }
+    
+    /**
+     * Scores of won or lost positions depend on the distance to the root. In 
+     * the transposition table they are stored relative to the position itself.
+     * @param score The score relative to the root
+     * @param realDepth The distance to the root
+     * @return The score to store in the transposition table
+     */
+    private int scoreToTable(int score, int realDepth) {
+        if (score>INFINITY-MAX_DEPTH) {
+            return score+realDepth;
+        } else if (score<-INFINITY+MAX_DEPTH) {
+            return score-realDepth;
+        }
+        return score;
+    }
+    
+    /**
+     * This method converts a score from the transposition table back to a 
+     * score relative to the root.
+     * @param score The score stored in the transposition table
+     * @param realDepth The distance to the root
+     * @return The score relative to the root
+     */
+    private int scoreFromTable(int score, int realDepth) {
+        if (score>INFINITY-MAX_DEPTH) {
+            return score-realDepth;
+        } else if (score<-INFINITY+MAX_DEPTH) {
+            return score+realDepth;
+        }
+        return score;
+    }
+    
+    /**
+     * This method remembers a quiet move that caused a cutoff, so it will be 
+     * tried early in other positions at the same ply.
+     * @param move The move that caused the cutoff
+     * @param realDepth The ply at which the cutoff occurred
+     */
+    private void storeKiller(Move move, int realDepth) {
+        if (!move.equals(killers[realDepth][0])) {
+            killers[realDepth][1] = killers[realDepth][0];
+            killers[realDepth][0] = move;
+        }
+    }
+    
     /**
      * Part two of the alphaBeta algorithm. This method is called by the 
-     * getComputerMove method and returns the best next move.
+     * getComputerMove and getBestMoves methods and returns the best next move.
+     * Moves that were already reported by getBestMoves are excluded, and 
+     * since the remaining moves can't be better than those, the search 
+     * window can be narrowed.
      * @param b The board state.
      * @param depth The search depth.
      * @param pc The current player's color.
-     * @return The best move found searching.
+     * @param excluded The moves to skip.
+     * @param highest The high cut-off value.
+     * @return The best move found searching and its score.
      */
-    private Move alphaBeta(Board b, int depth, PlayerColor pc) {
+    private ScoredMove alphaBeta(Board b, int depth, PlayerColor pc, Vector<Move> excluded, int highest) {
         int lowest = -INFINITY;
-        int highest = INFINITY;
         
         Board board;
         
         Vector<Move> possibleMoves;
         possibleMoves = MoveGen.generatePossibleMoves(b, pc);
+        possibleMoves.removeAll(excluded);
+        
+        // Try the best move of an earlier search first
+        long key = path.lastKey();
+        long tableKey = Zobrist.canonicalKey(key, pc);
+        Move hashMove = table.bestMove(tableKey);
+        if (hashMove==null && cache!=null) {
+            hashMove = cache.bestMove(tableKey);
+        }
+        hashMove = Symmetry.fromCanonical(hashMove, pc);
+        if (hashMove!=null && possibleMoves.remove(hashMove)) {
+            possibleMoves.insertElementAt(hashMove, 0);
+        }
+        if (firstMove!=null && possibleMoves.remove(firstMove)) {
+            possibleMoves.insertElementAt(firstMove, 0);
+        }
         
         int best = -INFINITY;
         Move bestMove = possibleMoves.elementAt(0);
+        rootMove = null;
+        drawPly = Integer.MAX_VALUE;
         for (int i=0; i<possibleMoves.size() && best<highest; i++) {
+            Move move = possibleMoves.elementAt(i);
+            path.push(key ^ Zobrist.moveKey(b, move), PositionHistory.isIrreversible(b, move));
             board = b.copy();
-            board.executeMove(possibleMoves.elementAt(i));
+            board.executeMove(move);
             int score = -alphaBeta(board, depth-1, pc.opponent(), -highest, -lowest, 1);
+            path.pop();
+            if (i==0 && move.equals(firstMove)) {
+                firstScore = score;
+            }
             if (score>best) {
                 best = score;
                 bestMove = possibleMoves.elementAt(i);
+                rootMove = bestMove;
+                rootScore = best;
                 if (score>lowest) {
                     lowest = best;
                 }
             }
         }
-        return bestMove;
+        if (excluded.isEmpty() && drawPly<path.size()-1) {
+            storeMove(tableKey, Symmetry.toCanonical(bestMove, pc));
+        } else if (excluded.isEmpty()) {
+            Move tableMove = Symmetry.toCanonical(bestMove, pc);
+            table.store(tableKey, depth, best, TranspositionTable.EXACT, tableMove);
+            if (cache!=null && depth>=CACHE_MIN_DEPTH) {
+                cache.store(tableKey, depth, best, TranspositionTable.EXACT, tableMove);
+            }
+        }
+        return new ScoredMove(bestMove, best, null);
+    }
+    
+    /**
+     * This method follows the best moves stored in the transposition table to 
+     * find the line of play that is expected to follow a move.
+     * @param b The board state.
+     * @param pc The current player's color.
+     * @param first The first move of the line.
+     * @param length The maximum length of the line.
+     * @return A vector with the principal variation, starting with the move.
+     */
+    private Vector<Move> principalVariation(Board b, PlayerColor pc, Move first, int length) {
+        Vector<Move> pv = new Vector<Move>();
+        pv.add(first);
+        Board board = b.copy();
+        board.executeMove(first);
+        PlayerColor color = pc.opponent();
+        while (pv.size()<length) {
+            Move m = Symmetry.fromCanonical(table.bestMove(Zobrist.canonicalKey(board, color)), color);
+            if (m==null || !MoveGen.isLegalMove(board, color, m)) {
+                break;
+            }
+            pv.add(m);
+            board.executeMove(m);
+            color = color.opponent();
+        }
+        return pv;
+    }
+    
+    /**
+     * This method returns the number of nodes visited by the last search.
+     * @return The number of nodes
+     */
+    public long getNodeCount() {
+        return nodes;
+    }
+    
+    /**
+     * This method clears the killer moves and node count of an earlier search,
+     * and starts the search path with the positions of the game.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     */
+    private void newSearch(Board board, PlayerColor pc, PositionHistory history) {
+        nodes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        cacheProbes = 0;
+        cacheHits = 0;
+        stopped = false;
+        drawPly = Integer.MAX_VALUE;
+        for (Move[] k : killers) {
+            k[0] = null;
+            k[1] = null;
+        }
+        if (history!=null && history.size()>0) {
+            path.copyFrom(history);
+        } else {
+            path.clear();
+            path.push(Zobrist.hashKey(board, pc), true);
+        }
     }
     
     /**
      * This method calls the minimax alpha beta pruning function to calculate the 
      * best move to make next. This method should not be called when the game has
-     * already ended.
+     * already ended. When the thread is interrupted, the search stops by 
+     * throwing a CancellationException.
+     * When the search is stopped by the stop method, the best of the moves 
+     * it searched completely is returned, or the move it searched first if 
+     * there are none.
      * @param board The current board state.
      * @param pc The PlayerColor who is to move.
      * @return The most optimal move to take next.
      */
+    @Override
     public Move getComputerMove(Board board, PlayerColor pc) {
+        return getComputerMove(board, pc, null);
+    }
+    
+    /**
+     * This method calculates the best move to make next, knowing the earlier
+     * positions of the game. Moves that repeat a position are scored as draws.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     * @return The most optimal move to take next.
+     */
+    public Move getComputerMove(Board board, PlayerColor pc, PositionHistory history) {
         Vector<Move> possibleMoves;
         possibleMoves = MoveGen.generatePossibleMoves(board, pc);
         if (possibleMoves.isEmpty()) {
@@ -176,8 +574,355 @@ public class Search {
         } else if (possibleMoves.size()==1) {
             return possibleMoves.elementAt(0);
         } else {
-            return alphaBeta(board,searchDepth,pc);
+            newSearch(board, pc, history);
+            EngineEvents.SearchEvent event = new EngineEvents.SearchEvent();
+            event.begin();
+            ScoredMove sm;
+            stoppable = true;
+            try {
+                sm = alphaBeta(board,searchDepth,pc,new Vector<Move>(),INFINITY);
+            } catch (CancellationException ex) {
+                cancelled(event, "fixed depth", pc, 0);
+                throw ex;
+            } catch (RuntimeException ex) {
+                if (ex!=STOP) {
+                    throw ex;
+                }
+                Move move = rootMove!=null ? rootMove : possibleMoves.elementAt(0);
+                commit(event, "fixed depth", pc, 0, move, rootMove!=null ? rootScore : 0, "stopped");
+                return move;
+            } finally {
+                stoppable = false;
+            }
+            commit(event, "fixed depth", pc, searchDepth, sm.getMove(), sm.getScore(), "completed");
+            reportProgress(board, pc, searchDepth, sm);
+            return sm.getMove();
+        }
+    }
+    
+    /**
+     * This method scores one move of a position the way the root of 
+     * getComputerMove does, within a window. A score outside the window is 
+     * only a bound: at most lowest when the move is no better, at least 
+     * highest when it is. Searching the moves of one position in different 
+     * processes and combining the scores gives the same result as searching 
+     * them in one (see DistributedSearch).
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     * @param move The move to score
+     * @param depth The search depth, counting the move.
+     * @param lowest The low cut-off value
+     * @param highest The high cut-off value
+     * @return The score of the move for the player who makes it.
+     */
+    public int getMoveScore(Board board, PlayerColor pc, PositionHistory history, Move move, 
+            int depth, int lowest, int highest) {
+        newSearch(board, pc, history);
+        EngineEvents.SearchEvent event = new EngineEvents.SearchEvent();
+        event.begin();
+        path.push(path.lastKey() ^ Zobrist.moveKey(board, move), PositionHistory.isIrreversible(board, move));
+        Board b = board.copy();
+        b.executeMove(move);
+        int score;
+        try {
+            score = -alphaBeta(b, depth-1, pc.opponent(), -highest, -lowest, 1);
+        } catch (CancellationException ex) {
+            cancelled(event, "move score", pc, 0);
+            throw ex;
+        } finally {
+            path.pop();
+        }
+        commit(event, "move score", pc, depth, move, score, "completed");
+        return score;
+    }
+    
+    /**
+     * This method calculates the best move with iterative deepening: it 
+     * searches to depth 1, 2, 3 and so on, until the listener stops it or 
+     * maxDepth is reached. Every iteration tries the best move of the one 
+     * before first, so the deeper searches are cheap relative to their depth.
+     * When the search is stopped by the stop method or its deadline in the 
+     * middle of an iteration, the best of the moves that iteration searched 
+     * completely is returned, or the best move of the iteration before if 
+     * there are none. Since that move is searched first, a move that is 
+     * returned from an unfinished iteration scored at least as well as it. 
+     * The deadline and the node limit don't stop the first iteration; when 
+     * the stop method does, the move it searched first is returned.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     * @param maxDepth The depth of the last iteration.
+     * @param listener The listener told about every iteration, or null.
+     * @return The best move found, or null if there are no moves.
+     */
+    public Move getComputerMove(Board board, PlayerColor pc, PositionHistory history, 
+            int maxDepth, IterationListener listener) {
+        Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+        if (possibleMoves.isEmpty()) {
+            return null;
+        } else if (possibleMoves.size()==1) {
+            return possibleMoves.elementAt(0);
+        }
+        newSearch(board, pc, history);
+        EngineEvents.SearchEvent event = new EngineEvents.SearchEvent();
+        event.begin();
+        maxDepth = Math.min(maxDepth, MAX_DEPTH-1);
+        Move best = null;
+        int bestScore = 0;
+        int completed = 0;
+        String outcome = "completed";
+        stoppable = true;
+        try {
+            for (int depth=1; depth<=maxDepth; depth++) {
+                EngineEvents.IterationEvent iteration = new EngineEvents.IterationEvent();
+                iteration.begin();
+                ScoredMove sm = alphaBeta(board, depth, pc, new Vector<Move>(), INFINITY);
+                best = sm.getMove();
+                bestScore = sm.getScore();
+                completed = depth;
+                iteration.end();
+                if (iteration.shouldCommit()) {
+                    iteration.depth = depth;
+                    iteration.nodes = nodes;
+                    iteration.bestMove = String.valueOf(best);
+                    iteration.score = bestScore;
+                    iteration.commit();
+                }
+                reportProgress(board, pc, depth, sm);
+                if (listener!=null && !listener.iterationDone(depth, best, bestScore, nodes)) {
+                    break;
+                }
+                // Only the first iteration is sure to complete
+                iterating = true;
+            }
+        } catch (CancellationException ex) {
+            cancelled(event, "iterative", pc, completed);
+            throw ex;
+        } catch (RuntimeException ex) {
+            if (ex!=STOP) {
+                throw ex;
+            }
+            outcome = "stopped";
+            if (rootMove!=null) {
+                best = rootMove;
+                bestScore = rootScore;
+            } else if (best==null) {
+                best = possibleMoves.elementAt(0);
+            }
+        } finally {
+            stoppable = false;
+            iterating = false;
+        }
+        commit(event, "iterative", pc, completed, best, bestScore, outcome);
+        return best;
+    }
+    
+    /**
+     * This method calculates the best move at a level. A level with a fixed 
+     * depth searches to that depth like getComputerMove without a level, 
+     * which also sets the search depth. A level with a node or time budget 
+     * searches with iterative deepening until the budget is used, so every 
+     * move takes about the same time.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     * @param level The level
+     * @return The best move found, or null if there are no moves.
+     */
+    @Override
+    public Move getComputerMove(Board board, PlayerColor pc, PositionHistory history, Level level) {
+        if (level.isFixedDepth()) {
+            searchDepth = level.getDepth();
+            return getComputerMove(board, pc, history);
+        }
+        nodeLimit = level.getNodes();
+        deadline = level.getMillis()>0 ? System.nanoTime()+level.getMillis()*1000000 : 0;
+        try {
+            return getComputerMove(board, pc, history, 
+                    level.getDepth()>0 ? level.getDepth() : MAX_DEPTH, null);
+        } finally {
+            nodeLimit = 0;
+            deadline = 0;
+        }
+    }
+    
+    /**
+     * This method stops a running search for a move, with a fixed depth or 
+     * iterative, which then returns the best move found so far. It can be 
+     * called from any thread. It has no effect on getMoveScore and 
+     * getBestMoves, which only stop when their thread is interrupted, and 
+     * a stop before a search starts is forgotten when it does.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+    }
+    
+    /**
+     * This method sets a move that the searches for a move search before 
+     * all others at the root. It is searched with the full window, so after 
+     * every completed depth getFirstMoveScore returns its exact score at 
+     * that depth, which can be compared with the score of the best move.
+     * @param move The move, or null to order the root moves as usual.
+     */
+    public void setFirstMove(Move move) {
+        firstMove = move;
+    }
+    
+    /**
+     * This method returns the score of the move set with setFirstMove in 
+     * the last completed depth. It is meant to be called by the progress 
+     * listener.
+     * @return The score of the move for the player who makes it.
+     */
+    public int getFirstMoveScore() {
+        return firstScore;
+    }
+    
+    /**
+     * This method sets the listener that is told about every completed 
+     * depth of the searches for a move, with the expected line of play.
+     * @param listener The listener, or null for none.
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progress = listener;
+    }
+    
+    /**
+     * This method tells the progress listener, if there is one, about a 
+     * completed depth.
+     * @param board The board state.
+     * @param pc The PlayerColor who is to move.
+     * @param depth The depth that was completed
+     * @param sm The best move and its score
+     */
+    private void reportProgress(Board board, PlayerColor pc, int depth, ScoredMove sm) {
+        ProgressListener listener = progress;
+        if (listener!=null) {
+            listener.progress(depth, new ScoredMove(sm.getMove(), sm.getScore(), 
+                    principalVariation(board, pc, sm.getMove(), depth)), nodes);
+        }
+    }
+    
+    /**
+     * This method sets the time at which the next iterative search stops.
+     * @param deadline The time as returned by System.nanoTime, or 0 for none.
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+    
+    /**
+     * This method commits the event of a search, if a recording wants it.
+     * @param event The event, which began when the search started
+     * @param kind The kind of search
+     * @param pc The PlayerColor who is to move.
+     * @param depth The depth of the last completed iteration
+     * @param best The best move, or null if there is none.
+     * @param score The score of the best move
+     * @param outcome How the search ended
+     */
+    private void commit(EngineEvents.SearchEvent event, String kind, PlayerColor pc, int depth, 
+            Move best, int score, String outcome) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.player = pc.toString();
+            event.depth = depth;
+            event.nodes = nodes;
+            event.bestMove = String.valueOf(best);
+            event.score = score;
+            event.outcome = outcome;
+            event.tableProbes = tableProbes;
+            event.tableHits = tableHits;
+            event.cacheProbes = cacheProbes;
+            event.cacheHits = cacheHits;
+            event.commit();
+        }
+    }
+    
+    /**
+     * This method records that a search was cancelled, with a cancel event 
+     * and the event of the search itself.
+     * @param event The event of the search
+     * @param kind The kind of search
+     * @param pc The PlayerColor who is to move.
+     * @param depth The depth of the last completed iteration
+     */
+    private void cancelled(EngineEvents.SearchEvent event, String kind, PlayerColor pc, int depth) {
+        EngineEvents.CancelEvent cancel = new EngineEvents.CancelEvent();
+        if (cancel.shouldCommit()) {
+            cancel.nodes = nodes;
+            cancel.depth = depth;
+            cancel.commit();
+        }
+        commit(event, kind, pc, depth, null, 0, "cancelled");
+    }
+    
+    /**
+     * This method returns true if a score means the game is won or lost.
+     * @param score The score of a move
+     * @return A boolean indicating whether the score is a win or a loss.
+     */
+    public static boolean isDecisive(int score) {
+        return Math.abs(score)>INFINITY-MAX_DEPTH;
+    }
+    
+    /**
+     * This method finds the best moves for analysis, ordered from best to worst.
+     * Every move gets an exact score and a principal variation. After the best 
+     * move is found, it is excluded and the search is repeated to find the next 
+     * best move. These searches share the transposition table, so they are 
+     * much cheaper than the first one.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param k The number of moves wanted.
+     * @return A vector with at most k scored moves. It is empty when the game 
+     * has already ended.
+     */
+    public Vector<ScoredMove> getBestMoves(Board board, PlayerColor pc, int k) {
+        return getBestMoves(board, pc, k, null);
+    }
+    
+    /**
+     * This method finds the best moves for analysis, knowing the earlier 
+     * positions of the game.
+     * @param board The current board state.
+     * @param pc The PlayerColor who is to move.
+     * @param k The number of moves wanted.
+     * @param history The positions of the game, ending with the current 
+     * position, or null if they are unknown.
+     * @return A vector with at most k scored moves.
+     */
+    public Vector<ScoredMove> getBestMoves(Board board, PlayerColor pc, int k, PositionHistory history) {
+        Vector<ScoredMove> result = new Vector<ScoredMove>();
+        Vector<Move> excluded = new Vector<Move>();
+        int count = MoveGen.generatePossibleMoves(board, pc).size();
+        int highest = INFINITY;
+        newSearch(board, pc, history);
+        EngineEvents.SearchEvent event = new EngineEvents.SearchEvent();
+        event.begin();
+        try {
+            while (result.size()<k && excluded.size()<count) {
+                ScoredMove sm = alphaBeta(board, searchDepth, pc, excluded, highest);
+                result.add(new ScoredMove(sm.getMove(), sm.getScore(), 
+                        principalVariation(board, pc, sm.getMove(), searchDepth)));
+                excluded.add(sm.getMove());
+                // None of the remaining moves can be better than this one
+                highest = sm.getScore()+1;
+            }
+        } catch (CancellationException ex) {
+            cancelled(event, "best moves", pc, 0);
+            throw ex;
         }
+        ScoredMove first = result.isEmpty() ? null : result.firstElement();
+        commit(event, "best moves", pc, searchDepth, first==null ? null : first.getMove(), 
+                first==null ? 0 : first.getScore(), "completed");
+        return result;
     }
     
 }
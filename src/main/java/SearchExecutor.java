@@ -0,0 +1,170 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs searches for many games on a fixed number of threads. Every
+ * thread has its own Search object, so the transposition table of a thread is
+ * reused by all the games it searches for. Searches wait in a bounded first
+ * come, first served queue. When the queue is full new searches are rejected
+ * instead of piling up. Every search has a deadline: it is dropped when the
+ * deadline passes while it's still queued, and interrupted when it passes
+ * while it's running.
+ * @author Aswin van Woudenberg
+ */
+public class SearchExecutor {
+    private ThreadPoolExecutor pool;
+    private ScheduledExecutorService timer;
+    private ThreadLocal<Search> searches;
+    private AtomicLong completed;
+    private AtomicLong rejected;
+    private AtomicLong timedOut;
+
+    /**
+     * The constructor
+     * @param threads The number of search threads, usually the number of cores
+     * @param queueCapacity The maximum number of searches waiting for a thread
+     */
+    public SearchExecutor(int threads, int queueCapacity) {
+        pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity, true), r -> {
+                    Thread t = new Thread(r, "SearchExecutor");
+                    t.setDaemon(true);
+                    return t;
+                });
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SearchExecutor timer");
+            t.setDaemon(true);
+            return t;
+        });
+        searches = ThreadLocal.withInitial(Search::new);
+        completed = new AtomicLong();
+        rejected = new AtomicLong();
+        timedOut = new AtomicLong();
+    }
+
+    /**
+     * This method queues a search. The returned future completes with the
+     * move found, or exceptionally with a TimeoutException when the deadline
+     * passed.
+     * @param board The board state, which must not be changed during the search
+     * @param pc The PlayerColor who is to move
+     * @param depth The search depth
+     * @param timeout The maximum time in milliseconds until the move is found
+     * @return A future for the move
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public CompletableFuture<Move> submit(final Board board, final PlayerColor pc, final int depth, long timeout) {
+        return submit(board, pc, Level.ofDepth(depth), timeout);
+    }
+
+    /**
+     * This method queues a search at a level. With a node or time budget
+     * the time a search runs is bounded, so the timeout only has to cover
+     * the time waiting in the queue and the budget.
+     * @param board The board state, which must not be changed during the search
+     * @param pc The PlayerColor who is to move
+     * @param level The level
+     * @param timeout The maximum time in milliseconds until the move is found
+     * @return A future for the move
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public CompletableFuture<Move> submit(final Board board, final PlayerColor pc, final Level level, long timeout) {
+        final CompletableFuture<Move> result = new CompletableFuture<Move>();
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        final FutureTask<Move> task = new FutureTask<Move>(() -> {
+            if (System.nanoTime() >= deadline) {
+                throw new TimeoutException();
+            }
+            return searches.get().getComputerMove(board, pc, null, level);
+        }) {
+            @Override
+            protected void done() {
+                try {
+                    result.complete(get());
+                    completed.incrementAndGet();
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof TimeoutException) {
+                        timedOut.incrementAndGet();
+                    }
+                    result.completeExceptionally(ex.getCause());
+                } catch (Exception ex) {
+                    // Cancelled because the deadline passed
+                    timedOut.incrementAndGet();
+                    result.completeExceptionally(new TimeoutException());
+                }
+            }
+        };
+        try {
+            pool.execute(task);
+        } catch (RejectedExecutionException ex) {
+            rejected.incrementAndGet();
+            throw ex;
+        }
+        final ScheduledFuture<?> timeoutTask = timer.schedule(() -> {
+            task.cancel(true);
+            pool.remove(task);
+        }, timeout, TimeUnit.MILLISECONDS);
+        result.whenComplete((m, ex) -> timeoutTask.cancel(false));
+        return result;
+    }
+
+    /**
+     * This method returns the number of searches waiting for a thread.
+     * @return The number of queued searches
+     */
+    public int getQueueSize() {
+        return pool.getQueue().size();
+    }
+
+    /**
+     * This method returns the number of searches that are running.
+     * @return The number of running searches
+     */
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    /**
+     * This method returns the number of searches that found a move.
+     * @return The number of completed searches
+     */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /**
+     * This method returns the number of searches rejected because the queue
+     * was full.
+     * @return The number of rejected searches
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * This method returns the number of searches that didn't finish before
+     * their deadline.
+     * @return The number of timed out searches
+     */
+    public long getTimedOutCount() {
+        return timedOut.get();
+    }
+
+    /**
+     * This method stops all threads. Searches that are running are interrupted.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+        timer.shutdownNow();
+    }
+}
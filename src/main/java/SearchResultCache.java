@@ -0,0 +1,126 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class remembers the moves found by completed searches, so a position
+ * that is searched again at the same depth, for instance after an undo, gets
+ * its move instantly. The cache holds a limited number of results and
+ * forgets the least recently used one when it is full. It is safe to use from
+ * the search thread and the event dispatch thread at the same time.
+ * @author Aswin van Woudenberg
+ */
+public class SearchResultCache {
+    private LinkedHashMap<Key, Move> results;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * The key of a search result.
+     */
+    private static class Key {
+        private long hash;
+        private PlayerColor pc;
+        private int depth;
+
+        Key(long hash, PlayerColor pc, int depth) {
+            this.hash = hash;
+            this.pc = pc;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key)o;
+            return hash == k.hash && pc == k.pc && depth == k.depth;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int)(hash ^ (hash >>> 32)) * 31 + depth;
+        }
+    }
+
+    /**
+     * The constructor
+     * @param capacity The maximum number of results
+     */
+    public SearchResultCache(final int capacity) {
+        results = new LinkedHashMap<Key, Move>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Move> eldest) {
+                if (size() > capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * This method looks up the move found earlier for a position.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param depth The search depth
+     * @return The move, or null if the position wasn't searched at this depth.
+     */
+    public synchronized Move get(Board board, PlayerColor pc, int depth) {
+        Move m = results.get(new Key(Zobrist.hashKey(board, pc), pc, depth));
+        // Guard against hash collisions
+        if (m != null && MoveGen.isLegalMove(board, pc, m)) {
+            hits++;
+            return m;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * This method stores the move found by a search.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param depth The search depth
+     * @param m The move
+     */
+    public synchronized void put(Board board, PlayerColor pc, int depth, Move m) {
+        if (m != null) {
+            results.put(new Key(Zobrist.hashKey(board, pc), pc, depth), m);
+        }
+    }
+
+    /**
+     * This method removes all results.
+     */
+    public synchronized void clear() {
+        results.clear();
+    }
+
+    /**
+     * This method returns the number of lookups that found a move.
+     * @return The number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * This method returns the number of lookups that found no move.
+     * @return The number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * This method returns the number of results that were forgotten because
+     * the cache was full.
+     * @return The number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Vector;
+
+/**
+ * This class is a worker process of DistributedSearch. It listens on a port
+ * of the loopback interface, or of all interfaces when asked to, and scores
+ * root moves for every coordinator that connects. Every connection has its
+ * own Search, so its transposition table is kept between the requests of a
+ * coordinator.
+ *
+ * The protocol is binary, big endian, with one request and one response at
+ * a time. A search request is:
+ *
+ *   byte       SEARCH
+ *   long long  the position, packed as described by PackedPosition
+ *   short      the index of the move in the order of MoveGen
+ *   byte       the search depth, counting the move
+ *   short      the low cut-off value
+ *   short      the high cut-off value
+ *   short      the plies of the move-count draw rule, or 0
+ *   short n    followed by n longs: the keys of the positions that can still
+ *              repeat, oldest first, ending with the position itself
+ *
+ * and the response is a short with the score of the move and a long with the
+ * number of nodes searched. The request QUIT closes the connection.
+ *
+ * When started, the worker prints the port it listens on, so a coordinator
+ * that started it can connect.
+ *
+ * Usage: SearchWorker [port] [-public]
+ * @author Aswin van Woudenberg
+ */
+public class SearchWorker {
+    static final byte SEARCH = 1;
+    static final byte QUIT = 2;
+
+    private ServerSocket serverSocket;
+
+    /**
+     * The constructor
+     * @param port The port to listen on, or 0 for any free port
+     * @param everywhere True to listen on all interfaces, false for the
+     * loopback interface only
+     * @throws IOException when the port can't be opened
+     */
+    public SearchWorker(int port, boolean everywhere) throws IOException {
+        serverSocket = everywhere ? new ServerSocket(port)
+                : new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * This method returns the port the worker listens on.
+     * @return The port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * This method accepts connections until the worker is closed. Every
+     * connection is served on its own thread.
+     */
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                Thread t = new Thread(() -> serve(socket), "search-worker-" + socket.getPort());
+                t.setDaemon(true);
+                t.start();
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed()) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method stops accepting connections.
+     * @throws IOException when the port can't be closed
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+
+    /**
+     * This method answers the requests of one coordinator.
+     * @param socket The connection
+     */
+    private void serve(Socket socket) {
+        Search search = new Search();
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            long position[] = new long[2];
+            while (in.readByte() == SEARCH) {
+                position[0] = in.readLong();
+                position[1] = in.readLong();
+                int moveIndex = in.readShort();
+                int depth = in.readByte();
+                int lowest = in.readShort();
+                int highest = in.readShort();
+                PositionHistory history = readHistory(in);
+
+                Board board = PackedPosition.toBoard(position, 0);
+                PlayerColor pc = PackedPosition.sideToMove(position, 0);
+                Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+                if (moveIndex < 0 || moveIndex >= possibleMoves.size()) {
+                    throw new IOException("No move " + moveIndex + " in the position");
+                }
+                int score = search.getMoveScore(board, pc, history, possibleMoves.elementAt(moveIndex),
+                        depth, lowest, highest);
+                out.writeShort(score);
+                out.writeLong(search.getNodeCount());
+                out.flush();
+            }
+        } catch (EOFException ex) {
+            // The coordinator went away
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * This method writes a search request.
+     * @param out The stream to the worker
+     * @param position The packed position
+     * @param moveIndex The index of the move in the order of MoveGen
+     * @param depth The search depth, counting the move
+     * @param lowest The low cut-off value
+     * @param highest The high cut-off value
+     * @param history The positions of the game, ending with the position
+     * @throws IOException when the request can't be written
+     */
+    static void writeRequest(DataOutputStream out, long position[], int moveIndex, int depth,
+            int lowest, int highest, PositionHistory history) throws IOException {
+        out.writeByte(SEARCH);
+        out.writeLong(position[0]);
+        out.writeLong(position[1]);
+        out.writeShort(moveIndex);
+        out.writeByte(depth);
+        out.writeShort(lowest);
+        out.writeShort(highest);
+        out.writeShort(history.getDrawPlies());
+        long keys[] = history.getReversibleKeys();
+        out.writeShort(keys.length);
+        for (long key : keys) {
+            out.writeLong(key);
+        }
+        out.flush();
+    }
+
+    /**
+     * This method reads the history of a search request.
+     * @param in The stream from the coordinator
+     * @return The history
+     * @throws IOException when the request can't be read
+     */
+    private static PositionHistory readHistory(DataInputStream in) throws IOException {
+        PositionHistory history = new PositionHistory();
+        history.setDrawPlies(in.readShort());
+        int n = in.readShort();
+        for (int i=0; i<n; i++) {
+            history.push(in.readLong(), i == 0);
+        }
+        return history;
+    }
+
+    /**
+     * The main method
+     * @param args The port, 0 or none for any free port, and -public to
+     * listen on all interfaces
+     * @throws IOException when the port can't be opened
+     */
+    public static void main(String args[]) throws IOException {
+        int port = 0;
+        boolean everywhere = false;
+        for (String arg : args) {
+            if (arg.equals("-public")) {
+                everywhere = true;
+            } else {
+                port = Integer.parseInt(arg);
+            }
+        }
+        SearchWorker worker = new SearchWorker(port, everywhere);
+        System.out.println(worker.getPort());
+        System.out.flush();
+        worker.run();
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class generates training data for tuning the evaluation of Search. It
+ * plays games of the computer against itself on several threads. Every game
+ * starts with a number of random moves, so the games differ. After that every
+ * position is labelled with the score of a shallow search, and the best move
+ * found is played. When the game has ended, the sampled positions of the game
+ * are written together with the result.
+ *
+ * The file starts with the 4 bytes "CKTD", a format version byte and the
+ * record size byte, followed by records of RECORD_SIZE bytes in big endian
+ * order:
+ *
+ *  bytes  0-15  the position, packed as described by PackedPosition
+ *  bytes 16-17  the score for the player to move
+ *  byte  18     the result: 1 if black won, -1 if white won, 0 for a draw
+ *  byte  19     the number of moves played before the position, at most 255
+ *
+ * When the file name ends with .gz, the file is compressed.
+ *
+ * Usage: SelfPlayGenerator file [games] [depth] [threads] [random moves] [seed]
+ * @author Aswin van Woudenberg
+ */
+public class SelfPlayGenerator {
+    public static final int RECORD_SIZE = 20;
+    private static final byte VERSION = 1;
+
+    // Games are a draw after this many moves per player without a capture
+    // or a pawn move, or after MAX_PLIES plies
+    private static final int DRAW_MOVES = 40;
+    private static final int MAX_PLIES = 300;
+
+    // The records of a thread are collected in a buffer of this size
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private WritableByteChannel channel;
+    private int depth;
+    private int randomMoves;
+    private long seed;
+    private AtomicInteger nextGame;
+    private AtomicLong positions;
+    private AtomicLong games;
+    private long results[];
+
+    /**
+     * The constructor opens the output file and writes the header.
+     * @param file The output file, compressed if the name ends with .gz
+     * @param depth The depth of the labelling search
+     * @param randomMoves The number of random moves at the start of a game
+     * @param seed The seed of the random moves; game i uses seed+i
+     * @throws IOException when the file can't be written
+     */
+    public SelfPlayGenerator(Path file, int depth, int randomMoves, long seed) throws IOException {
+        FileChannel fc = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (file.toString().endsWith(".gz")) {
+            channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fc), BUFFER_SIZE));
+        } else {
+            channel = fc;
+        }
+        this.depth = depth;
+        this.randomMoves = randomMoves;
+        this.seed = seed;
+        nextGame = new AtomicInteger();
+        positions = new AtomicLong();
+        games = new AtomicLong();
+        results = new long[3];
+        ByteBuffer header = ByteBuffer.allocate(6);
+        header.put((byte)'C').put((byte)'K').put((byte)'T').put((byte)'D');
+        header.put(VERSION).put((byte)RECORD_SIZE);
+        header.flip();
+        write(header);
+    }
+
+    /**
+     * This method plays games on a number of threads until the given number
+     * of games is played. When a thread fails to write, the others stop
+     * starting new games and the failure is thrown once they are done.
+     * @param gameCount The number of games
+     * @param threads The number of threads
+     * @throws InterruptedException when interrupted while waiting
+     * @throws IOException when the file can't be written
+     */
+    public void run(final int gameCount, int threads) throws InterruptedException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Vector<Future<Void>> futures = new Vector<Future<Void>>();
+        for (int t=0; t<threads; t++) {
+            futures.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    Search search = new Search();
+                    search.setSearchDepth(depth);
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    int game;
+                    try {
+                        while ((game = nextGame.getAndIncrement()) < gameCount) {
+                            playGame(search, new Random(seed + game), buffer);
+                        }
+                    } catch (IOException e) {
+                        nextGame.set(gameCount);
+                        throw e;
+                    }
+                    buffer.flip();
+                    write(buffer);
+                    return null;
+                }
+            }));
+        }
+        pool.shutdown();
+        IOException failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (!(cause instanceof IOException)) {
+                    throw new IllegalStateException("Self-play failed", cause);
+                }
+                if (failure == null) {
+                    failure = (IOException)cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * This method plays one game and adds its records to a buffer. The buffer
+     * is written to the file when it is full.
+     * @param search The search to label the positions with
+     * @param random The source of the random moves
+     * @param buffer The buffer of the thread
+     * @throws IOException when the file can't be written
+     */
+    private void playGame(Search search, Random random, ByteBuffer buffer) throws IOException {
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        PositionHistory history = new PositionHistory();
+        history.setDrawPlies(2*DRAW_MOVES);
+        history.push(Zobrist.hashKey(board, pc), true);
+
+        long packed[] = new long[2*MAX_PLIES];
+        short scores[] = new short[MAX_PLIES];
+        int plies[] = new int[MAX_PLIES];
+        int sampled = 0;
+        int result = 0;
+        for (int ply=0; ply<MAX_PLIES; ply++) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                result = pc == PlayerColor.BLACK ? -1 : 1;
+                break;
+            }
+            if (history.repetitions(2) >= 2 || history.isMoveLimitReached()) {
+                break;
+            }
+            Move move;
+            if (ply < randomMoves) {
+                move = possibleMoves.elementAt(random.nextInt(possibleMoves.size()));
+            } else if (possibleMoves.size() == 1) {
+                // Forced moves tell nothing about the evaluation
+                move = possibleMoves.elementAt(0);
+            } else {
+                ScoredMove best = search.getBestMoves(board, pc, 1, history).elementAt(0);
+                move = best.getMove();
+                PackedPosition.pack(board, pc, packed, sampled);
+                scores[sampled] = (short)best.getScore();
+                plies[sampled] = ply;
+                sampled++;
+            }
+            history.push(history.lastKey() ^ Zobrist.moveKey(board, move),
+                    PositionHistory.isIrreversible(board, move));
+            board.executeMove(move);
+            pc = pc.opponent();
+        }
+
+        for (int i=0; i<sampled; i++) {
+            if (buffer.remaining() < RECORD_SIZE) {
+                buffer.flip();
+                write(buffer);
+                buffer.clear();
+            }
+            buffer.putLong(packed[2*i]);
+            buffer.putLong(packed[2*i+1]);
+            buffer.putShort(scores[i]);
+            buffer.put((byte)result);
+            buffer.put((byte)Math.min(255, plies[i]));
+        }
+        positions.addAndGet(sampled);
+        games.incrementAndGet();
+        synchronized (results) {
+            results[result+1]++;
+        }
+    }
+
+    /**
+     * This method writes a buffer to the file. The threads take turns, so
+     * records are never interleaved.
+     * @param buffer The buffer, ready to be read
+     * @throws IOException when the file can't be written
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * This method closes the file.
+     * @throws IOException when the file can't be written
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * This method returns the number of positions written.
+     * @return The number of positions
+     */
+    public long getPositionCount() {
+        return positions.get();
+    }
+
+    /**
+     * This method returns the number of games played.
+     * @return The number of games
+     */
+    public long getGameCount() {
+        return games.get();
+    }
+
+    /**
+     * The main method
+     * @param args The file, the number of games, the search depth, the
+     * number of threads, the number of random moves and the seed
+     * @throws Exception when the file can't be written
+     */
+    public static void main(String args[]) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SelfPlayGenerator file [games] [depth] [threads] [random moves] [seed]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int gameCount = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int randomMoves = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+
+        SelfPlayGenerator generator = new SelfPlayGenerator(file, depth, randomMoves, seed);
+        long start = System.nanoTime();
+        generator.run(gameCount, threads);
+        generator.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d positions in %.1f s: %.0f positions/hour%n",
+                generator.getGameCount(), generator.getPositionCount(), seconds,
+                generator.getPositionCount() / seconds * 3600);
+        System.out.printf("black won %d, white won %d, drawn %d%n",
+                generator.results[2], generator.results[0], generator.results[1]);
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps track of the games hosted by the CheckersServer. Sessions
+ * that aren't used for a while are removed. The number of sessions is counted
+ * separately, so concurrent requests can't create more than the maximum.
+ * @author Aswin van Woudenberg
+ */
+public class SessionManager {
+    private ConcurrentHashMap<Long, GameSession> sessions;
+    private AtomicLong nextId;
+    private AtomicInteger sessionCount;
+    private int maxSessions;
+
+    /**
+     * The constructor
+     * @param maxSessions The maximum number of sessions
+     */
+    public SessionManager(int maxSessions) {
+        sessions = new ConcurrentHashMap<Long, GameSession>();
+        nextId = new AtomicLong(1);
+        sessionCount = new AtomicInteger();
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * This method starts a new game.
+     * @return The new session, or null if the maximum number of sessions is
+     * reached.
+     */
+    public GameSession createSession() {
+        int count;
+        do {
+            count = sessionCount.get();
+            if (count >= maxSessions) {
+                return null;
+            }
+        } while (!sessionCount.compareAndSet(count, count + 1));
+        GameSession session = new GameSession(nextId.getAndIncrement());
+        sessions.put(session.getId(), session);
+        return session;
+    }
+
+    /**
+     * This method returns a session by its id.
+     * @param id The session id
+     * @return The session, or null if there is no such session.
+     */
+    public GameSession getSession(long id) {
+        return sessions.get(id);
+    }
+
+    /**
+     * This method removes a session.
+     * @param id The session id
+     * @return A boolean indicating whether the session existed.
+     */
+    public boolean removeSession(long id) {
+        if (sessions.remove(id) == null) {
+            return false;
+        }
+        sessionCount.decrementAndGet();
+        return true;
+    }
+
+    /**
+     * This method returns the number of sessions.
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return sessionCount.get();
+    }
+
+    /**
+     * This method removes the sessions that haven't been used for some time.
+     * @param maxIdle The maximum time in milliseconds a session may be idle
+     */
+    public void removeIdleSessions(long maxIdle) {
+        long now = System.currentTimeMillis();
+        for (GameSession session : sessions.values()) {
+            if (now - session.getLastAccess() > maxIdle && sessions.remove(session.getId(), session)) {
+                sessionCount.decrementAndGet();
+            }
+        }
+    }
+}
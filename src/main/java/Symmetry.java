@@ -0,0 +1,108 @@
+/**
+ * This class maps positions onto equivalent ones. Rotating the board 180
+ * degrees and swapping the colours of all pieces gives a position that is
+ * the same game with the roles of black and white swapped. In the internal
+ * representation the rotation maps square i onto square 54-i, which maps
+ * the playable squares onto each other and the borders onto borders.
+ *
+ * Of every such pair the position with black to move is canonical. Hash
+ * keys, transposition tables, the analysis cache and the game database use
+ * the canonical form, so a position and its mirror image share one entry.
+ * Moves stored with a canonical position are mirrored as well, so they
+ * have to be mirrored back with fromCanonical before they are played in a
+ * position with white to move.
+ * @author Aswin van Woudenberg
+ */
+public class Symmetry {
+    /**
+     * This class contains only static methods. Thus, the caller should
+     * be prevented from constructing objects of this class, by declaring this
+     * private constructor.
+     */
+    private Symmetry() {
+        // prevents even the native class from calling constuctor.
+        throw new AssertionError();
+    }
+
+    /**
+     * This method returns the square a square is mapped onto.
+     * @param index The index of the square
+     * @return The index of the mirrored square
+     */
+    public static int mirror(int index) {
+        return 54 - index;
+    }
+
+    /**
+     * This method returns the contents of a square with the colour swapped.
+     * @param sq The contents of the square
+     * @return The piece of the other colour, or sq if it isn't a piece.
+     */
+    public static Square mirror(Square sq) {
+        switch (sq) {
+            case WHITE_KING: return Square.BLACK_KING;
+            case BLACK_KING: return Square.WHITE_KING;
+            case WHITE_PAWN: return Square.BLACK_PAWN;
+            case BLACK_PAWN: return Square.WHITE_PAWN;
+            default: return sq;
+        }
+    }
+
+    /**
+     * This method returns the mirror image of a position.
+     * @param board The board state
+     * @return A new board, rotated and with the colours swapped
+     */
+    public static Board mirror(Board board) {
+        Square squares[] = new Square[55];
+        for (int i=0; i<55; i++) {
+            squares[mirror(i)] = mirror(board.squareAt(i));
+        }
+        return new Board(squares);
+    }
+
+    /**
+     * This method returns true if positions with a player to move are
+     * canonical.
+     * @param pc The PlayerColor who is to move
+     * @return A boolean indicating whether the position is its own
+     * canonical form.
+     */
+    public static boolean isCanonical(PlayerColor pc) {
+        return pc == PlayerColor.BLACK;
+    }
+
+    /**
+     * This method returns the canonical form of a position.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @return The board itself if it is canonical, otherwise a new board
+     * with its mirror image, in which black is to move.
+     */
+    public static Board toCanonical(Board board, PlayerColor pc) {
+        return isCanonical(pc) ? board : mirror(board);
+    }
+
+    /**
+     * This method maps a move between a position and its canonical form.
+     * @param move The move, or null
+     * @param pc The PlayerColor who is to move in the position
+     * @return The move itself if the position is canonical, otherwise the
+     * mirrored move.
+     */
+    public static Move toCanonical(Move move, PlayerColor pc) {
+        return (move == null || isCanonical(pc)) ? move : move.mirror();
+    }
+
+    /**
+     * This method maps a move of the canonical form of a position back to
+     * the position. Mirroring twice gives the original move, so this is
+     * the same mapping as toCanonical.
+     * @param move The move in the canonical form, or null
+     * @param pc The PlayerColor who is to move in the position
+     * @return The move in the position
+     */
+    public static Move fromCanonical(Move move, PlayerColor pc) {
+        return toCanonical(move, pc);
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * This class checks the properties of Symmetry that the search relies on,
+ * on the positions of random games. For every position and its mirror
+ * image, with the other player to move:
+ *   the canonical keys are equal,
+ *   the moves of the one are the mirrored moves of the other,
+ *   a mirrored move equals the move built from the mirrored squares, and
+ *   searches of both give the same scores.
+ *
+ * Usage: SymmetryCheck [games] [depth] [seed]
+ * exits with status 1 when a property doesn't hold.
+ * @author Aswin van Woudenberg
+ */
+public class SymmetryCheck {
+    // Every so many positions the search scores are compared
+    private static final int SEARCH_INTERVAL = 25;
+
+    // The number of best moves whose scores are compared
+    private static final int BEST_MOVES = 3;
+
+    private int depth;
+    private int positions;
+    private int moves;
+    private int searches;
+    private int failures;
+
+    /**
+     * The constructor
+     * @param depth The depth of the searches that are compared
+     */
+    public SymmetryCheck(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * This method checks the positions of a game of random moves.
+     * @param random The source of the moves
+     */
+    public void checkRandomGame(Random random) {
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        for (int ply=0; ply<200; ply++) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                break;
+            }
+            checkPosition(board, pc, possibleMoves);
+            board.executeMove(possibleMoves.elementAt(random.nextInt(possibleMoves.size())));
+            pc = pc.opponent();
+        }
+    }
+
+    /**
+     * This method checks a position and its mirror image.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param possibleMoves The moves of the position
+     */
+    private void checkPosition(Board board, PlayerColor pc, Vector<Move> possibleMoves) {
+        Board mirrored = Symmetry.mirror(board);
+        PlayerColor opponent = pc.opponent();
+        positions++;
+
+        if (Zobrist.canonicalKey(board, pc) != Zobrist.canonicalKey(mirrored, opponent)) {
+            fail(board, pc, "the canonical key of the mirror image differs");
+        }
+
+        Vector<Move> mirroredMoves = MoveGen.generatePossibleMoves(mirrored, opponent);
+        if (mirroredMoves.size() != possibleMoves.size()) {
+            fail(board, pc, "the mirror image has " + mirroredMoves.size() + " moves instead of "
+                    + possibleMoves.size());
+        }
+        for (Move move : possibleMoves) {
+            moves++;
+            Move mirror = move.mirror();
+            int squares[] = new int[move.length()];
+            for (int i=0; i<squares.length; i++) {
+                squares[i] = Symmetry.mirror(move.squareAt(i));
+            }
+            Move rebuilt = new Move(squares);
+            if (!mirror.equals(rebuilt) || mirror.captureMask() != rebuilt.captureMask()) {
+                fail(board, pc, "the mirror of " + move + " is " + mirror + " instead of " + rebuilt);
+            }
+            if (!mirror.mirror().equals(move)) {
+                fail(board, pc, "mirroring " + move + " twice gives " + mirror.mirror());
+            }
+            if (!mirroredMoves.contains(mirror)) {
+                fail(board, pc, "the mirror image has no move " + mirror);
+            }
+        }
+
+        if (possibleMoves.size() > 1 && positions % SEARCH_INTERVAL == 0) {
+            checkSearch(board, pc, mirrored, opponent);
+        }
+    }
+
+    /**
+     * This method compares the scores of the best moves of a position and
+     * its mirror image, each searched with a Search of its own.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param mirrored The mirror image of the board
+     * @param opponent The PlayerColor who is to move in the mirror image
+     */
+    private void checkSearch(Board board, PlayerColor pc, Board mirrored, PlayerColor opponent) {
+        searches++;
+        Search search = new Search();
+        search.setSearchDepth(depth);
+        Vector<ScoredMove> best = search.getBestMoves(board, pc, BEST_MOVES);
+        search = new Search();
+        search.setSearchDepth(depth);
+        Vector<ScoredMove> mirroredBest = search.getBestMoves(mirrored, opponent, BEST_MOVES);
+        for (int k=0; k<best.size(); k++) {
+            if (best.elementAt(k).getScore() != mirroredBest.elementAt(k).getScore()) {
+                fail(board, pc, "the scores " + best + " differ from those of the mirror image "
+                        + mirroredBest);
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method reports a property that doesn't hold.
+     * @param board The board state
+     * @param pc The PlayerColor who is to move
+     * @param message What is wrong
+     */
+    private void fail(Board board, PlayerColor pc, String message) {
+        failures++;
+        System.out.println(PdnGame.toFen(board, pc) + ": " + message);
+    }
+
+    /**
+     * This method returns the number of properties found not to hold.
+     * @return The number of failures
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * The main method
+     * @param args The number of games, the search depth and the seed
+     */
+    public static void main(String args[]) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        Random random = new Random(seed);
+
+        SymmetryCheck check = new SymmetryCheck(depth);
+        for (int i=0; i<games; i++) {
+            check.checkRandomGame(random);
+        }
+        System.out.printf("%d positions, %d moves, %d searches at depth %d, %d failures%n",
+                check.positions, check.moves, check.searches, depth, check.failures);
+        if (check.getFailures() > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * This class decides how long the search for one move may take when playing
+ * with a clock. Before the search it divides the remaining time over the
+ * moves that are still to come, which gives the optimum time, and it
+ * computes a maximum that the search must not pass, which becomes the
+ * deadline of the search.
+ *
+ * During the search it is told the result of every iteration. The time it
+ * allows grows when the best move keeps changing or the score drops, since
+ * those are the moves where a deeper search pays off, and it stops the
+ * search when the position is won or lost anyway. An iteration takes
+ * several times as long as the one before, so a new iteration is only
+ * started when there is a fair chance it completes.
+ * @author Aswin van Woudenberg
+ */
+public class TimeManager implements IterationListener {
+    // The number of moves the remaining time is divided over
+    private static final int MOVES_TO_GO = 25;
+
+    // Time kept in reserve for delivering the move and other overhead
+    private static final long SAFETY_MILLIS = 150;
+
+    // The least time a search gets
+    private static final long MIN_MILLIS = 10;
+
+    // The most the optimum time grows for unstable or worsening positions
+    private static final double MAX_FACTOR = 4.0;
+
+    // A new iteration is started when less than this part of the time is used
+    private static final double NEXT_ITERATION = 0.5;
+
+    private long start;
+    private long optimum;
+    private long maximum;
+    private double instability;
+    private double factor;
+    private Move previousBest;
+    private int previousScore;
+    private int lastDepth;
+
+    /**
+     * The constructor. The time of the search starts now.
+     * @param clock The game clock
+     * @param pc The PlayerColor who is to move
+     */
+    public TimeManager(GameClock clock, PlayerColor pc) {
+        start = System.nanoTime();
+        long remaining = clock.getRemaining(pc) - SAFETY_MILLIS;
+        long increment = clock.getIncrement();
+        optimum = remaining / MOVES_TO_GO + increment * 3 / 4;
+        maximum = Math.min(optimum * 5, remaining / 4 + increment * 3 / 4);
+        maximum = Math.max(MIN_MILLIS, Math.min(maximum, remaining));
+        optimum = Math.max(MIN_MILLIS, Math.min(optimum, maximum));
+        factor = 1.0;
+    }
+
+    /**
+     * This method returns the time the search must be stopped.
+     * @return The time as returned by System.nanoTime
+     */
+    public long getDeadline() {
+        return start + maximum * 1000000;
+    }
+
+    /**
+     * This method returns the time the search is expected to take.
+     * @return The time in milliseconds
+     */
+    public long getOptimum() {
+        return optimum;
+    }
+
+    /**
+     * This method returns the time the search may take at most.
+     * @return The time in milliseconds
+     */
+    public long getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * This method returns the time the search may take now, after the
+     * results of the iterations so far.
+     * @return The time in milliseconds
+     */
+    public long getBudget() {
+        return Math.min((long)(optimum * factor), maximum);
+    }
+
+    /**
+     * This method returns the time used since the search started.
+     * @return The time in milliseconds
+     */
+    public long getElapsed() {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * This method returns the depth of the last completed iteration.
+     * @return The depth
+     */
+    public int getDepth() {
+        return lastDepth;
+    }
+
+    @Override
+    public boolean iterationDone(int depth, Move best, int score, long nodes) {
+        lastDepth = depth;
+        if (Search.isDecisive(score)) {
+            return false;
+        }
+        // Changes of the best move count, but older ones less and less
+        instability /= 2;
+        if (previousBest != null && !best.equals(previousBest)) {
+            instability += 1;
+        }
+        factor = 1.0 + instability;
+        if (previousBest != null) {
+            int drop = previousScore - score;
+            if (drop > 50) {
+                factor *= 1.5;
+            } else if (drop > 20) {
+                factor *= 1.2;
+            }
+        }
+        factor = Math.min(factor, MAX_FACTOR);
+        previousBest = best;
+        previousScore = score;
+        return getElapsed() < getBudget() * NEXT_ITERATION;
+    }
+}
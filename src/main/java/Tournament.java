@@ -0,0 +1,204 @@
+import java.util.Random;
+import java.util.Vector;
+
+/**
+ * This class plays a match between two engines to compare their strength.
+ * Games are played in pairs: both games of a pair start with the same random
+ * opening moves, and each engine plays black once, so neither profits from a
+ * lucky opening or from moving first. Both engines play at the same level,
+ * which with a time budget means they get equal time for every move.
+ *
+ * A game is a draw when a position occurs for the third time, after
+ * DRAW_MOVES moves per player without a capture or a pawn move, or after
+ * MAX_PLIES plies.
+ *
+ * Usage: Tournament [pairs] [millis] [threads] [opening plies] [seed]
+ * plays MonteCarloSearch on the given number of threads against Search,
+ * with the given time per move.
+ * @author Aswin van Woudenberg
+ */
+public class Tournament {
+    private static final int DRAW_MOVES = 40;
+    private static final int MAX_PLIES = 300;
+
+    private Engine first;
+    private Engine second;
+    private Level level;
+    private int openingPlies;
+    private long seed;
+    private int wins;
+    private int draws;
+    private int losses;
+
+    /**
+     * The constructor
+     * @param first The first engine, whose results are counted
+     * @param second The opponent
+     * @param level The level both engines play at
+     * @param openingPlies The number of random moves every opening has
+     * @param seed The seed of the openings; pair i uses seed+i
+     */
+    public Tournament(Engine first, Engine second, Level level, int openingPlies, long seed) {
+        this.first = first;
+        this.second = second;
+        this.level = level;
+        this.openingPlies = openingPlies;
+        this.seed = seed;
+    }
+
+    /**
+     * This method plays a number of pairs of games and prints the result of
+     * every game.
+     * @param pairs The number of pairs
+     */
+    public void play(int pairs) {
+        for (int i=0; i<pairs; i++) {
+            Vector<Move> opening = randomOpening(new Random(seed + i));
+            for (int g=0; g<2; g++) {
+                boolean firstIsBlack = g == 0;
+                long start = System.nanoTime();
+                int result = playGame(firstIsBlack ? first : second, firstIsBlack ? second : first, opening);
+                int score = firstIsBlack ? result : -result;
+                if (score > 0) {
+                    wins++;
+                } else if (score < 0) {
+                    losses++;
+                } else {
+                    draws++;
+                }
+                System.out.printf("game %3d  first plays %s  %s  %.1f s  (+%d =%d -%d)%n",
+                        2*i+g+1, firstIsBlack ? "black" : "white",
+                        score > 0 ? "won " : score < 0 ? "lost" : "draw",
+                        (System.nanoTime() - start) / 1e9, wins, draws, losses);
+            }
+        }
+    }
+
+    /**
+     * This method plays random moves from the start position.
+     * @param random The source of the moves
+     * @return A vector with the moves, which may be shorter than the number
+     * of opening plies if the game ends.
+     */
+    private Vector<Move> randomOpening(Random random) {
+        Vector<Move> opening = new Vector<Move>();
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        for (int ply=0; ply<openingPlies; ply++) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                break;
+            }
+            Move move = possibleMoves.elementAt(random.nextInt(possibleMoves.size()));
+            opening.add(move);
+            board.executeMove(move);
+            pc = pc.opponent();
+        }
+        return opening;
+    }
+
+    /**
+     * This method plays one game.
+     * @param black The engine playing black
+     * @param white The engine playing white
+     * @param opening The moves the game starts with
+     * @return 1 if black won, -1 if white won, 0 for a draw
+     */
+    private int playGame(Engine black, Engine white, Vector<Move> opening) {
+        Board board = new Board();
+        PlayerColor pc = PlayerColor.BLACK;
+        PositionHistory history = new PositionHistory();
+        history.setDrawPlies(2*DRAW_MOVES);
+        history.push(Zobrist.hashKey(board, pc), true);
+        for (int ply=0; ply<MAX_PLIES; ply++) {
+            Vector<Move> possibleMoves = MoveGen.generatePossibleMoves(board, pc);
+            if (possibleMoves.isEmpty()) {
+                return pc == PlayerColor.BLACK ? -1 : 1;
+            }
+            if (history.repetitions(2) >= 2 || history.isMoveLimitReached()) {
+                return 0;
+            }
+            Move move;
+            if (ply < opening.size()) {
+                move = opening.elementAt(ply);
+            } else {
+                Engine engine = pc == PlayerColor.BLACK ? black : white;
+                move = engine.getComputerMove(board.copy(), pc, history.copy(), level);
+            }
+            history.push(history.lastKey() ^ Zobrist.moveKey(board, move),
+                    PositionHistory.isIrreversible(board, move));
+            board.executeMove(move);
+            pc = pc.opponent();
+        }
+        return 0;
+    }
+
+    /**
+     * This method returns the number of games the first engine won.
+     * @return The number of games
+     */
+    public int getWins() {
+        return wins;
+    }
+
+    /**
+     * This method returns the number of games that were drawn.
+     * @return The number of games
+     */
+    public int getDraws() {
+        return draws;
+    }
+
+    /**
+     * This method returns the number of games the first engine lost.
+     * @return The number of games
+     */
+    public int getLosses() {
+        return losses;
+    }
+
+    /**
+     * This method returns the score of the first engine: 1 for a win and a
+     * half for a draw, divided by the number of games.
+     * @return The score between 0 and 1
+     */
+    public double getScore() {
+        int games = wins + draws + losses;
+        return games == 0 ? 0.5 : (wins + 0.5*draws) / games;
+    }
+
+    /**
+     * This method estimates how much stronger the first engine is, from its
+     * score.
+     * @return The difference in Elo rating, which is infinite when one
+     * engine won every game.
+     */
+    public double getEloDifference() {
+        return -400 * Math.log10(1 / getScore() - 1);
+    }
+
+    /**
+     * The main method
+     * @param args The number of pairs, the time per move in milliseconds,
+     * the number of threads of MonteCarloSearch, the number of opening plies
+     * and the seed
+     */
+    public static void main(String args[]) {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int openingPlies = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+
+        MonteCarloSearch mcts = new MonteCarloSearch(threads, MonteCarloSearch.DEFAULT_CAPACITY);
+        Search search = new Search();
+        Level level = new Level(millis + " ms", 0, 0, millis);
+        Tournament tournament = new Tournament(mcts, search, level, openingPlies, seed);
+        System.out.printf("MonteCarloSearch (%d threads) against Search, %d ms per move%n", threads, millis);
+        tournament.play(pairs);
+        mcts.shutdown();
+        System.out.printf("MonteCarloSearch: +%d =%d -%d, score %.1f%%, Elo difference %+.0f%n",
+                tournament.getWins(), tournament.getDraws(), tournament.getLosses(),
+                100 * tournament.getScore(), tournament.getEloDifference());
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * This class implements a transposition table. It stores the results of
+ * earlier searches by the hash key of the position, so that a position that
+ * is reached again, through another sequence of moves or during another
+ * search, doesn't need to be searched again. The table has a fixed size and
+ * consists of primitive arrays only.
+ *
+ * Searches on several threads may share a table without locking. The key is
+ * stored xor-ed with the entry and the move, like in AnalysisCache, so a
+ * slot that another thread is writing at the same time doesn't match the key
+ * and is ignored, instead of mixing the result of one position with the key
+ * of another.
+ * @author Aswin van Woudenberg
+ */
+public class TranspositionTable {
+    /**
+     * The stored score is the exact score of the position.
+     */
+    public static final int EXACT = 0;
+    /**
+     * The stored score is a lower bound, i.e. the search failed high.
+     */
+    public static final int LOWER_BOUND = 1;
+    /**
+     * The stored score is an upper bound, i.e. the search failed low.
+     */
+    public static final int UPPER_BOUND = 2;
+    /**
+     * Returned by probe when the table holds no entry for a position.
+     */
+    public static final long NO_ENTRY = 0;
+
+    private static final long VALID = 1L << 32;
+
+    private long keys[];
+    private long entries[];
+    private long moves[];
+    private int mask;
+
+    /**
+     * The constructor
+     * @param sizeBits The base 2 logarithm of the number of entries.
+     */
+    public TranspositionTable(int sizeBits) {
+        keys = new long[1 << sizeBits];
+        entries = new long[1 << sizeBits];
+        moves = new long[1 << sizeBits];
+        mask = (1 << sizeBits) - 1;
+    }
+
+    /**
+     * This method looks up a position.
+     * @param key The hash key of the position
+     * @return The entry, which can be decoded with the depth, score and bound
+     * methods, or NO_ENTRY.
+     */
+    public long probe(long key) {
+        int i = (int)key & mask;
+        long entry = entries[i];
+        if ((keys[i] ^ entry ^ moves[i]) == key) {
+            return entry;
+        }
+        return NO_ENTRY;
+    }
+
+    /**
+     * This method looks up the best move found earlier for a position.
+     * @param key The hash key of the position
+     * @return The best move, or null if there is none.
+     */
+    public Move bestMove(long key) {
+        int i = (int)key & mask;
+        long move = moves[i];
+        if ((keys[i] ^ entries[i] ^ move) == key) {
+            return Move.unpack(move);
+        }
+        return null;
+    }
+
+    /**
+     * This method stores the result of a search. An entry for the same
+     * position is only replaced by a result of at least the same depth. An
+     * entry for another position is always replaced.
+     * @param key The hash key of the position
+     * @param depth The search depth
+     * @param score The score
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param best The best move, or null
+     */
+    public void store(long key, int depth, int score, int bound, Move best) {
+        int i = (int)key & mask;
+        long old = entries[i];
+        if ((keys[i] ^ old ^ moves[i]) == key && old != NO_ENTRY && depth(old) > depth) {
+            return;
+        }
+        long entry = entry(depth, score, bound);
+        long move = best == null ? 0 : best.pack();
+        entries[i] = entry;
+        moves[i] = move;
+        keys[i] = key ^ entry ^ move;
+    }
+
+    /**
+     * This method removes all entries.
+     */
+    public void clear() {
+        for (int i=0; i<keys.length; i++) {
+            keys[i] = 0;
+            entries[i] = NO_ENTRY;
+            moves[i] = 0;
+        }
+    }
+
+    /**
+     * This method packs the depth, score and bound into an entry.
+     * @param depth The search depth
+     * @param score The score
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @return The entry
+     */
+    public static long entry(int depth, int score, int bound) {
+        return VALID | ((long)(depth & 0xFF) << 24) | ((long)bound << 16) | ((score + 0x8000) & 0xFFFF);
+    }
+
+    /**
+     * This method returns the search depth of an entry.
+     * @param entry The entry returned by probe
+     * @return The search depth
+     */
+    public static int depth(long entry) {
+        return (int)(entry >>> 24) & 0xFF;
+    }
+
+    /**
+     * This method returns the score of an entry.
+     * @param entry The entry returned by probe
+     * @return The score
+     */
+    public static int score(long entry) {
+        return (int)(entry & 0xFFFF) - 0x8000;
+    }
+
+    /**
+     * This method returns the kind of bound of an entry.
+     * @param entry The entry returned by probe
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int bound(long entry) {
+        return (int)(entry >>> 16) & 0x3;
+    }
+}
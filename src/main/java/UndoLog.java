@@ -0,0 +1,128 @@
+/**
+ * This class records the moves of a game so they can be undone and redone.
+ * Instead of a copy of the board, every move takes two longs: the move
+ * sequence as returned by Move.getPath, which holds moves of any length, and
+ * a second long holding which captured pieces were kings and whether the
+ * move promoted a pawn. That is all that is needed to restore the board.
+ * @author Aswin van Woudenberg
+ */
+public class UndoLog {
+    private static final long PROMOTED = 1;
+
+    private long entries[];
+    private int size;
+    private int redoSize;
+
+    /**
+     * The constructor
+     */
+    public UndoLog() {
+        entries = new long[64];
+    }
+
+    /**
+     * This method records a move. It must be called before the move is
+     * executed. Moves that were undone can no longer be redone, unless the
+     * move is the same as the next move to redo.
+     * @param board The board state before the move
+     * @param move The move
+     */
+    public void push(Board board, Move move) {
+        long packed = move.getPath();
+        if (size < redoSize && entries[2*size] == packed) {
+            size++;
+            return;
+        }
+        long info = 0;
+        int last = move.finalSquare();
+        if (board.squareAt(move.squareAt(0)).isPawn() && Board.isKingRow(last)) {
+            info |= PROMOTED;
+        }
+        if (move.includesJump()) {
+            for (int i=1; i<move.length(); i++) {
+                int r = (move.squareAt(i)+move.squareAt(i-1)) / 2;
+                if (board.squareAt(r).isKing()) {
+                    info |= 2L << (i-1);
+                }
+            }
+        }
+        if (2*size+1 >= entries.length) {
+            long grown[] = new long[entries.length*2];
+            System.arraycopy(entries, 0, grown, 0, entries.length);
+            entries = grown;
+        }
+        entries[2*size] = packed;
+        entries[2*size+1] = info;
+        size++;
+        redoSize = size;
+    }
+
+    /**
+     * This method undoes the last move.
+     * @param board The board state after the move, which is restored to the
+     * state before the move.
+     * @return The move that was undone, or null if there are no moves.
+     */
+    public Move undo(Board board) {
+        if (size == 0) {
+            return null;
+        }
+        size--;
+        Move move = Move.fromPath(entries[2*size]);
+        long info = entries[2*size+1];
+        board.undoMove(move, (info & PROMOTED) != 0, info >>> 1);
+        return move;
+    }
+
+    /**
+     * This method returns the next move to redo. The caller executes it.
+     * @return The move, or null if there is nothing to redo.
+     */
+    public Move redo() {
+        if (size == redoSize) {
+            return null;
+        }
+        return Move.fromPath(entries[2*size++]);
+    }
+
+    /**
+     * This method returns true if there are no moves to undo.
+     * @return A boolean indicating whether the log is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * This method returns true if there are moves to redo.
+     * @return A boolean indicating whether a move can be redone.
+     */
+    public boolean canRedo() {
+        return size < redoSize;
+    }
+
+    /**
+     * This method returns the number of moves that can be undone.
+     * @return The number of moves
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This method returns a move that can be undone.
+     * @param index The index of the move, 0 being the first move of the game
+     * @return The move
+     */
+    public Move moveAt(int index) {
+        return Move.fromPath(entries[2*index]);
+    }
+
+    /**
+     * This method removes all moves.
+     */
+    public void clear() {
+        size = 0;
+        redoSize = 0;
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.Vector;
 
 /**
  * This class defines various useful functions
@@ -28,6 +29,88 @@ public class Util {
         return n;
     }
     
+    /**
+     * This method converts a square in standard checkers notation to the internal
+     * representation. It is the inverse of squareIndexToNotation.
+     * @param n The square according to standard checkers notation, ranging from 1 to 32.
+     * @return The internal representation of the square.
+     */
+    public static int notationToSquareIndex(int n) {
+        return 45 - n - (n-1)/8;
+    }
+    
+    /**
+     * This method looks up a move in standard checkers notation among the 
+     * possible moves. Both the short notation of Move.toString, like 11-15 or 
+     * 15-24, and notations with every square of a multiple jump, like 
+     * 15x24x31, are accepted.
+     * @param possibleMoves The possible moves
+     * @param notation The move in standard checkers notation
+     * @return The move, or null if none of the possible moves matches.
+     */
+    public static Move findMove(Vector<Move> possibleMoves, String notation) {
+        String parts[] = notation.trim().split("[-x]");
+        int squares[] = new int[parts.length];
+        try {
+            for (int i=0; i<parts.length; i++) {
+                squares[i] = Integer.parseInt(parts[i]);
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        return findMove(possibleMoves, squares, squares.length);
+    }
+    
+    /**
+     * This method looks up a move among the possible moves, given the squares 
+     * of the move in standard checkers notation. When there are two squares, 
+     * only the first and final square of the move have to match.
+     * @param possibleMoves The possible moves
+     * @param squares The squares of the move in standard checkers notation
+     * @param length The number of squares
+     * @return The move, or null if none of the possible moves matches.
+     */
+    public static Move findMove(Vector<Move> possibleMoves, int squares[], int length) {
+        if (length < 2) {
+            return null;
+        }
+        for (Move m : possibleMoves) {
+            if (length == 2) {
+                if (squareIndexToNotation(m.squareAt(0)) == squares[0] && 
+                        squareIndexToNotation(m.finalSquare()) == squares[1]) {
+                    return m;
+                }
+            } else if (m.length() == length) {
+                boolean match = true;
+                for (int i=0; i<length && match; i++) {
+                    match = squareIndexToNotation(m.squareAt(i)) == squares[i];
+                }
+                if (match) {
+                    return m;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * This method returns the notation of a move with every square, like 
+     * 11-15 for a step and 15x24x31 for a multiple jump. Unlike the short 
+     * notation of Move.toString, it is never ambiguous.
+     * @param m The move
+     * @return The move in standard checkers notation
+     */
+    public static String moveToNotation(Move m) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<m.length(); i++) {
+            if (i > 0) {
+                sb.append(m.includesJump() ? 'x' : '-');
+            }
+            sb.append(squareIndexToNotation(m.squareAt(i)));
+        }
+        return sb.toString();
+    }
+    
     /**
      * Print the checkerboard.
      * @param board The board to be printed.
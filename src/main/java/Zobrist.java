@@ -0,0 +1,128 @@
+import java.util.Random;
+
+/**
+ * This class computes Zobrist hash keys for board positions. Every piece on
+ * every square has a random 64 bit number assigned to it. The key of a
+ * position is the exclusive or of the numbers of all pieces on the board,
+ * combined with a number for the player who's to move. The random numbers are
+ * generated from a fixed seed, so keys are the same every time the program
+ * runs.
+ *
+ * Only the numbers of the black pieces are random. The number of a white
+ * piece is that of the black piece on the mirrored square (see Symmetry)
+ * with its halves swapped. Swapping halves commutes with the exclusive or,
+ * so the pieces of the mirror image of a position have the key of the
+ * pieces of the position with its halves swapped. This gives the canonical
+ * key of a position from its ordinary key without looking at the board.
+ * @author Aswin van Woudenberg
+ */
+public class Zobrist {
+    private static final long PIECE_KEYS[][] = new long[55][4];
+    private static final long WHITE_TO_MOVE;
+
+    static {
+        Random random = new Random(0x436865636B657273L);
+        for (int i=0; i<55; i++) {
+            PIECE_KEYS[i][1] = random.nextLong();
+            PIECE_KEYS[i][3] = random.nextLong();
+        }
+        for (int i=0; i<55; i++) {
+            PIECE_KEYS[i][0] = Long.rotateLeft(PIECE_KEYS[Symmetry.mirror(i)][1], 32);
+            PIECE_KEYS[i][2] = Long.rotateLeft(PIECE_KEYS[Symmetry.mirror(i)][3], 32);
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    /**
+     * This class contains only static methods. Thus, the caller should
+     * be prevented from constructing objects of this class, by declaring this
+     * private constructor.
+     */
+    private Zobrist() {
+        // prevents even the native class from calling constuctor.
+        throw new AssertionError();
+    }
+
+    /**
+     * This method returns the random number for a piece on a square.
+     * @param index The square
+     * @param sq The piece on the square
+     * @return The random number, or 0 if the square holds no piece.
+     */
+    public static long pieceKey(int index, Square sq) {
+        switch (sq) {
+            case WHITE_KING: return PIECE_KEYS[index][0];
+            case BLACK_KING: return PIECE_KEYS[index][1];
+            case WHITE_PAWN: return PIECE_KEYS[index][2];
+            case BLACK_PAWN: return PIECE_KEYS[index][3];
+            default: return 0;
+        }
+    }
+
+    /**
+     * This method computes the hash key of a position.
+     * @param board The board state
+     * @param pc The PlayerColor who's to move
+     * @return The hash key
+     */
+    public static long hashKey(Board board, PlayerColor pc) {
+        long key = pc==PlayerColor.WHITE ? WHITE_TO_MOVE : 0;
+        for (int i=10; i<45; i++) {
+            key ^= pieceKey(i, board.squareAt(i));
+        }
+        return key;
+    }
+
+    /**
+     * This method computes the key of the canonical form of a position from
+     * its hash key. A position and its mirror image have the same canonical
+     * key.
+     * @param key The hash key of the position
+     * @param pc The PlayerColor who's to move
+     * @return The canonical key
+     */
+    public static long canonicalKey(long key, PlayerColor pc) {
+        return Symmetry.isCanonical(pc) ? key : Long.rotateLeft(key ^ WHITE_TO_MOVE, 32);
+    }
+
+    /**
+     * This method computes the canonical key of a position.
+     * @param board The board state
+     * @param pc The PlayerColor who's to move
+     * @return The canonical key
+     */
+    public static long canonicalKey(Board board, PlayerColor pc) {
+        return canonicalKey(hashKey(board, pc), pc);
+    }
+
+    /**
+     * This method computes how the hash key changes when a move is executed,
+     * including the change of the player who's to move. The key of the new
+     * position is the exclusive or of the old key and this number, which is
+     * much cheaper than computing it again.
+     * @param board The board state before the move
+     * @param move The move
+     * @return The number to combine with the old key
+     */
+    public static long moveKey(Board board, Move move) {
+        int start = move.squareAt(0);
+        int last = move.finalSquare();
+        Square sq = board.squareAt(start);
+        long key = WHITE_TO_MOVE ^ pieceKey(start, sq);
+        if (Board.isKingRow(last)) {
+            if (sq == Square.BLACK_PAWN) {
+                sq = Square.BLACK_KING;
+            } else if (sq == Square.WHITE_PAWN) {
+                sq = Square.WHITE_KING;
+            }
+        }
+        key ^= pieceKey(last, sq);
+        if (move.includesJump()) {
+            for (int i=1; i<move.length(); i++) {
+                int r = (move.squareAt(i)+move.squareAt(i-1)) / 2;
+                key ^= pieceKey(r, board.squareAt(r));
+            }
+        }
+        return key;
+    }
+}